@@ -0,0 +1,152 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.gephi.data.attributes.api.*;
+import org.gephi.graph.api.*;
+
+/**
+ * Copies per-node or per-edge result arrays into node or edge columns in one
+ * pass, once the computation is over and the graph lock released. <p> Every
+ * row is visited once for all the columns. Values are boxed as the
+ * <code>Double</code> or <code>Integer</code> the columns are declared with,
+ * zeros share one box. Each
+ * <code>setValue</code> raises an attribute event; in quiet mode a cell that
+ * already holds the value is left alone, so a run whose results did not move
+ * raises none.
+ *
+ * @author Umberto Griffo
+ */
+class AttributeWriteBack {
+
+    private static final Double ZERO = 0.0;
+    private static final Integer INT_ZERO = 0;
+    private final Node[] nodes;
+    private final Edge[] edges;
+    private final List<AttributeColumn> columns = new ArrayList<AttributeColumn>();
+    private final List<double[]> doubleValues = new ArrayList<double[]>();
+    private final List<float[]> floatValues = new ArrayList<float[]>();
+    private final List<int[]> intValues = new ArrayList<int[]>();
+    private boolean quiet;
+    private int written;
+    private int skipped;
+
+    /**
+     * @param nodes the rows, value <code>i</code> of each column goes to
+     * <code>nodes[i]</code>
+     */
+    AttributeWriteBack(Node[] nodes) {
+        this.nodes = nodes;
+        edges = null;
+    }
+
+    /**
+     * @param edges the rows, value <code>i</code> of each column goes to
+     * <code>edges[i]</code>
+     */
+    AttributeWriteBack(Edge[] edges) {
+        nodes = null;
+        this.edges = edges;
+    }
+
+    void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    void addColumn(AttributeColumn column, double[] values) {
+        columns.add(column);
+        doubleValues.add(values);
+        floatValues.add(null);
+        intValues.add(null);
+    }
+
+    void addColumn(AttributeColumn column, float[] values) {
+        columns.add(column);
+        doubleValues.add(null);
+        floatValues.add(values);
+        intValues.add(null);
+    }
+
+    void addColumn(AttributeColumn column, int[] values) {
+        columns.add(column);
+        doubleValues.add(null);
+        floatValues.add(null);
+        intValues.add(values);
+    }
+
+    /**
+     * Writes the rows set in <code>processed</code>, all of them if null.
+     */
+    void write(BitSet processed) {
+        int count = columns.size();
+        AttributeColumn[] cols = columns.toArray(new AttributeColumn[count]);
+        double[][] doubles = doubleValues.toArray(new double[count][]);
+        float[][] floats = floatValues.toArray(new float[count][]);
+        int[][] ints = intValues.toArray(new int[count][]);
+        int rows = nodes != null ? nodes.length : edges.length;
+        written = 0;
+        skipped = 0;
+        for (int i = 0; i < rows; i++) {
+            if (processed != null && !processed.get(i)) {
+                continue;
+            }
+            AttributeRow row = (AttributeRow) (nodes != null ? nodes[i].getNodeData().getAttributes() : edges[i].getEdgeData().getAttributes());
+            for (int c = 0; c < count; c++) {
+                if (ints[c] != null) {
+                    int value = ints[c][i];
+                    if (quiet) {
+                        Object old = row.getValue(cols[c]);
+                        if (old instanceof Integer && ((Integer) old).intValue() == value) {
+                            skipped++;
+                            continue;
+                        }
+                    }
+                    row.setValue(cols[c], value == 0 ? INT_ZERO : Integer.valueOf(value));
+                    written++;
+                    continue;
+                }
+                double value = doubles[c] != null ? doubles[c][i] : floats[c][i];
+                if (quiet) {
+                    Object old = row.getValue(cols[c]);
+                    if (old instanceof Double && ((Double) old).doubleValue() == value) {
+                        skipped++;
+                        continue;
+                    }
+                }
+                row.setValue(cols[c], value == 0 ? ZERO : Double.valueOf(value));
+                written++;
+            }
+        }
+    }
+
+    /**
+     * Cells set by the last {@link #write(BitSet)}.
+     */
+    int getWritten() {
+        return written;
+    }
+
+    /**
+     * Cells left alone by the last {@link #write(BitSet)} because they already
+     * held the value.
+     */
+    int getSkipped() {
+        return skipped;
+    }
+}
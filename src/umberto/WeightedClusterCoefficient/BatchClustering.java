@@ -0,0 +1,739 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Computes the weighted clustering coefficient and strength of every node of
+ * an edge list file, outside of Gephi. <p> The computation is the one of
+ * {@link WeightedClusterCoefficient}: same snapshot, same kernels and same
+ * settings, but no NetBeans <code>Lookup</code> and no Gephi graph model, so it
+ * can run from a plain <code>java</code> command line or be used as a library:
+ * <pre>
+ * EdgeListReader reader = new EdgeListReader(false);
+ * BatchClustering batch = new BatchClustering();
+ * batch.compute(reader.read(new File("edges.txt")));
+ * batch.write(new File("edges.wcc.tsv"), reader.getLabels());
+ * </pre>
+ *
+ * @author Umberto Griffo
+ */
+public class BatchClustering {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * File suffix of the {@link MappedGraph} format on the command line.
+     */
+    public static final String BINARY_SUFFIX = ".wccg";
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private boolean degreeOrdered = true;
+    private boolean directedPatterns;
+    private final boolean[] definitions = new boolean[WeightedDefinitions.NAMES.length];
+    private boolean edgeTriangles;
+    private boolean approximate;
+    private int samplesPerNode = 64;
+    private long sampleBudget = 1000000;
+    private double targetError = 0.001;
+    private Histogram.Binning strenghtBinning = Histogram.Binning.LOGARITHMIC;
+    private Histogram.Binning ccBinning = Histogram.Binning.LINEAR;
+    private int binCount = Histogram.DEFAULT_BINS;
+    private int hubDegree = HubAdjacency.DEFAULT_MIN_DEGREE;
+    private int hubMemory = (int) (HubAdjacency.DEFAULT_MAX_BYTES >> 20);
+    private boolean instrumented;
+    private ClusteringMetrics metrics;
+    private GraphSnapshot snapshot;
+    private double[] nodeClustering;
+    private float[] nodeStrenght;
+    private double[][] patterns;
+    private double[][] definitionValues;
+    private EdgeTriangles edgeValues;
+    private ClusteringAccumulator distributions;
+    private SamplingKernel.Estimate averageEstimate;
+    private double avgClusteringCoeff;
+    private double avgStrenght;
+
+    /**
+     * Chooses the kernel matching the settings, the same way for the Gephi
+     * statistic and for the batch runner.
+     */
+    static ClusteringKernel createKernel(GraphSnapshot snapshot, int threadCount, boolean degreeOrdered,
+            boolean directedPatterns, boolean approximate, int samplesPerNode) {
+        if (approximate) {
+            return new SamplingKernel(snapshot, samplesPerNode, SamplingKernel.DEFAULT_SEED);
+        } else if (snapshot.isDirected() && directedPatterns) {
+            return new DirectedClusteringKernel(snapshot);
+        } else if (degreeOrdered) {
+            return new ForwardTriangleKernel(snapshot, threadCount > 1);
+        }
+        return new ClusteringKernel(snapshot);
+    }
+
+    /**
+     * Computes every node of the snapshot on the calling thread and on
+     * {@link #getThreadCount()} - 1 workers.
+     */
+    public void compute(GraphSnapshot snapshot) {
+        compute(snapshot, null);
+    }
+
+    /**
+     * Computes every node of the snapshot, <code>labels</code> names the
+     * nodes in the metrics, by index if null.
+     */
+    public void compute(GraphSnapshot snapshot, List<String> labels) {
+        this.snapshot = snapshot;
+        ClusteringKernel kernel = createKernel(snapshot, threadCount, degreeOrdered, directedPatterns, approximate,
+                SamplingKernel.samplesPerNode(sampleBudget, snapshot.getNodeCount(), samplesPerNode));
+        metrics = instrumented ? new ClusteringMetrics() : null;
+        if (instrumented) {
+            kernel.enableStatistics();
+        }
+        boolean anyDefinition = false;
+        for (boolean selected : definitions) {
+            anyDefinition |= selected;
+        }
+        if (anyDefinition && !snapshot.isDirected() && !approximate) {
+            kernel.enableDefinitions();
+        }
+        if (edgeTriangles && !snapshot.isDirected() && !approximate) {
+            kernel.enableEdgeTriangles(threadCount > 1);
+        }
+        if (hubDegree > 0) {
+            kernel.enableHubAdjacency(hubDegree, (long) hubMemory << 20);
+        }
+        ClusteringAccumulator prototype = new ClusteringAccumulator(
+                ClusteringRunner.strengthHistogram(snapshot, strenghtBinning, binCount),
+                new Histogram(ccBinning, binCount, 0, 1));
+        ClusteringRunner runner = new ClusteringRunner(kernel, threadCount, prototype);
+        distributions = runner.run(null);
+        nodeClustering = runner.getClustering();
+        nodeStrenght = runner.getStrength();
+        if (instrumented) {
+            metrics.collect(runner, kernel, threadCount);
+            int[] hubs = ClusteringMetrics.topHubs(kernel, ClusteringMetrics.TOP_HUBS);
+            String[] names = new String[hubs.length];
+            for (int k = 0; k < hubs.length; k++) {
+                names[k] = labels != null ? labels.get(hubs[k]) : String.valueOf(hubs[k]);
+            }
+            metrics.setHubs(kernel, hubs, names);
+        }
+        int n = Math.max(1, snapshot.getNodeCount());
+        avgClusteringCoeff = distributions.getTotalClustering() / n;
+        avgStrenght = distributions.getTotalStrength() / n;
+        patterns = null;
+        if (kernel instanceof DirectedClusteringKernel) {
+            patterns = new double[DirectedClusteringKernel.PATTERNS.length][];
+            for (int p = 0; p < patterns.length; p++) {
+                patterns[p] = ((DirectedClusteringKernel) kernel).getPattern(p);
+            }
+        }
+        definitionValues = new double[definitions.length][];
+        if (kernel.getDefinitions() != null) {
+            for (int d = 0; d < definitions.length; d++) {
+                definitionValues[d] = definitions[d] ? kernel.getDefinitions().getValues(d) : null;
+            }
+        }
+        edgeValues = kernel.getEdgeTriangles();
+        averageEstimate = null;
+        if (approximate) {
+            averageEstimate = ((SamplingKernel) kernel).estimateAverage(sampleBudget, targetError);
+            avgClusteringCoeff = averageEstimate.getValue();
+        }
+    }
+
+    /**
+     * Writes one tab separated line per node: id, strength, weighted
+     * clustering and, if computed, the Fagiolo coefficients. The columns are
+     * named like the Gephi ones.
+     *
+     * @param labels node ids in snapshot order, or null to use the indices
+     */
+    public void write(File file, List<String> labels) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8), 1 << 16);
+        try {
+            write(out, labels);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void write(Writer out, List<String> labels) throws IOException {
+        if (snapshot == null) {
+            throw new IllegalStateException("Nothing computed yet");
+        }
+        out.write("Id\tstrenght\tweightedclustering");
+        if (patterns != null) {
+            for (String name : DirectedClusteringKernel.PATTERNS) {
+                out.write("\tweightedclustering_" + name);
+            }
+        }
+        for (int d = 0; d < definitionValues.length; d++) {
+            if (definitionValues[d] != null) {
+                out.write("\tweightedclustering_" + WeightedDefinitions.NAMES[d]);
+            }
+        }
+        out.write('\n');
+        for (int i = 0; i < snapshot.getNodeCount(); i++) {
+            out.write(labels != null ? labels.get(i) : Integer.toString(i));
+            out.write('\t');
+            out.write(Float.toString(nodeStrenght[i]));
+            out.write('\t');
+            out.write(Double.toString(nodeClustering[i]));
+            if (patterns != null) {
+                for (double[] pattern : patterns) {
+                    out.write('\t');
+                    out.write(Double.toString(pattern[i]));
+                }
+            }
+            for (double[] values : definitionValues) {
+                if (values != null) {
+                    out.write('\t');
+                    out.write(Double.toString(values[i]));
+                }
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes one tab separated line per edge: the ids of its ends, its
+     * triangle count and its triangle intensity, see {@link EdgeTriangles}.
+     *
+     * @param labels node ids in snapshot order, or null to use the indices
+     * @throws IllegalStateException if the edge triangles have not been
+     * computed
+     */
+    public void writeEdges(File file, List<String> labels) throws IOException {
+        if (edgeValues == null) {
+            throw new IllegalStateException("No edge triangles computed");
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8), 1 << 16);
+        try {
+            out.write("Source\tTarget\tweightedclustering_triangles\tweightedclustering_intensity\n");
+            int[] offsets = snapshot.getOffsets();
+            int[] neighbors = snapshot.getNeighbors();
+            for (int u = 0; u < snapshot.getNodeCount(); u++) {
+                for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                    int v = neighbors[p];
+                    if (v < u) {
+                        continue;
+                    }
+                    int slot = edgeValues.slot(u, p);
+                    out.write(labels != null ? labels.get(u) : Integer.toString(u));
+                    out.write('\t');
+                    out.write(labels != null ? labels.get(v) : Integer.toString(v));
+                    out.write('\t');
+                    out.write(Integer.toString(edgeValues.getTriangles(slot)));
+                    out.write('\t');
+                    out.write(Double.toString(edgeValues.getIntensity(slot)));
+                    out.write('\n');
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the node values, the distributions and the settings to a
+     * directory, see {@link ResultExporter}.
+     *
+     * @param labels node ids in snapshot order, or null to use the indices
+     * @return the files written
+     */
+    public List<File> export(File directory, ResultExporter.Format format, boolean gzip, List<String> labels) throws IOException {
+        if (snapshot == null) {
+            throw new IllegalStateException("Nothing computed yet");
+        }
+        ResultExporter exporter = new ResultExporter(directory, format, gzip);
+        if (patterns != null) {
+            for (int p = 0; p < patterns.length; p++) {
+                exporter.addColumn("weightedclustering_" + DirectedClusteringKernel.PATTERNS[p], patterns[p]);
+            }
+        }
+        for (int d = 0; d < definitionValues.length; d++) {
+            if (definitionValues[d] != null) {
+                exporter.addColumn("weightedclustering_" + WeightedDefinitions.NAMES[d], definitionValues[d]);
+            }
+        }
+        exporter.setParameter("directed", snapshot.isDirected());
+        exporter.setParameter("nodes", snapshot.getNodeCount());
+        exporter.setParameter("threads", threadCount);
+        exporter.setParameter("degreeOrdered", degreeOrdered);
+        exporter.setParameter("directedPatterns", directedPatterns);
+        exporter.setParameter("approximate", approximate);
+        if (approximate) {
+            exporter.setParameter("samplesPerNode", SamplingKernel.samplesPerNode(sampleBudget, snapshot.getNodeCount(), samplesPerNode));
+        }
+        exporter.setParameter("strengthBinning", strenghtBinning);
+        exporter.setParameter("clusteringBinning", ccBinning);
+        exporter.setParameter("bins", binCount);
+        exporter.setParameter("averageClustering", avgClusteringCoeff);
+        exporter.setParameter("averageStrength", avgStrenght);
+        if (labels == null) {
+            labels = new ArrayList<String>(snapshot.getNodeCount());
+            for (int i = 0; i < snapshot.getNodeCount(); i++) {
+                labels.add(Integer.toString(i));
+            }
+        }
+        return exporter.export(labels, nodeStrenght, nodeClustering, distributions);
+    }
+
+    public GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public double[] getClustering() {
+        return nodeClustering;
+    }
+
+    public float[] getStrenght() {
+        return nodeStrenght;
+    }
+
+    /**
+     * Fagiolo coefficients per node, in {@link DirectedClusteringKernel#PATTERNS}
+     * order, or null if they have not been computed.
+     */
+    public double[][] getDirectedPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Per-node values of one of the other definitions, or null if it has not
+     * been computed.
+     *
+     * @param definition one of {@link WeightedDefinitions#ONNELA},
+     * {@link WeightedDefinitions#ZHANG}
+     */
+    public double[] getDefinition(int definition) {
+        return definitionValues != null ? definitionValues[definition] : null;
+    }
+
+    /**
+     * The triangles of the edges, or null if they have not been computed.
+     */
+    public EdgeTriangles getEdgeTriangles() {
+        return edgeValues;
+    }
+
+    public double getAverageWeightedClusteringCoefficient() {
+        return avgClusteringCoeff;
+    }
+
+    public double getAverageNodeStrenght() {
+        return avgStrenght;
+    }
+
+    /**
+     * Returns the sampled average with its confidence interval, or null if
+     * the last run was exact.
+     */
+    public SamplingKernel.Estimate getAverageEstimate() {
+        return averageEstimate;
+    }
+
+    /**
+     * Returns the timings and counters of the last computation, null if it
+     * was not instrumented.
+     */
+    public ClusteringMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Histogram getStrenghtDistribution() {
+        return distributions.getStrengthDistribution();
+    }
+
+    public Histogram getClusteringDistribution() {
+        return distributions.getClusteringDistribution();
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setDegreeOrdered(boolean degreeOrdered) {
+        this.degreeOrdered = degreeOrdered;
+    }
+
+    public boolean isDegreeOrdered() {
+        return degreeOrdered;
+    }
+
+    public void setDirectedPatterns(boolean directedPatterns) {
+        this.directedPatterns = directedPatterns;
+    }
+
+    public boolean isDirectedPatterns() {
+        return directedPatterns;
+    }
+
+    /**
+     * Selects one of the other definitions, computed on undirected graphs in
+     * exact mode.
+     */
+    public void setDefinitionSelected(int definition, boolean selected) {
+        definitions[definition] = selected;
+    }
+
+    public boolean isDefinitionSelected(int definition) {
+        return definitions[definition];
+    }
+
+    /**
+     * Also counts the triangles of every edge and their intensity, computed
+     * on undirected graphs in exact mode.
+     */
+    public void setEdgeTriangles(boolean edgeTriangles) {
+        this.edgeTriangles = edgeTriangles;
+    }
+
+    public boolean isEdgeTriangles() {
+        return edgeTriangles;
+    }
+
+    public void setApproximate(boolean approximate) {
+        this.approximate = approximate;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    /**
+     * Degree from which a neighbor list is indexed with a compressed bitmap,
+     * 0 for none.
+     */
+    public void setHubDegree(int hubDegree) {
+        this.hubDegree = Math.max(0, hubDegree);
+    }
+
+    public int getHubDegree() {
+        return hubDegree;
+    }
+
+    /**
+     * Memory allowed to the hub bitmaps, in megabytes.
+     */
+    public void setHubMemory(int megabytes) {
+        this.hubMemory = Math.max(0, megabytes);
+    }
+
+    public int getHubMemory() {
+        return hubMemory;
+    }
+
+    /**
+     * Most wedges sampled for a node estimate in approximate mode, see
+     * {@link SamplingKernel#samplesPerNode(long, int, int)}.
+     */
+    public void setSamplesPerNode(int samplesPerNode) {
+        this.samplesPerNode = Math.max(1, samplesPerNode);
+    }
+
+    public int getSamplesPerNode() {
+        return samplesPerNode;
+    }
+
+    /**
+     * Wedges sampled for the node estimates in all, and at most for the
+     * average, in approximate mode.
+     */
+    public void setSampleBudget(long sampleBudget) {
+        this.sampleBudget = Math.max(1, sampleBudget);
+    }
+
+    public long getSampleBudget() {
+        return sampleBudget;
+    }
+
+    public void setTargetError(double targetError) {
+        this.targetError = Math.max(0, targetError);
+    }
+
+    public double getTargetError() {
+        return targetError;
+    }
+
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    public boolean isInstrumented() {
+        return instrumented;
+    }
+
+    public void setStrenghtBinning(Histogram.Binning binning) {
+        this.strenghtBinning = binning;
+    }
+
+    public void setClusteringBinning(Histogram.Binning binning) {
+        this.ccBinning = binning;
+    }
+
+    public void setBinCount(int binCount) {
+        this.binCount = Math.max(1, binCount);
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: java -cp WeightedClusterCoefficient.jar " + BatchClustering.class.getName() + " [options] <edge list> [<output>]");
+        out.println("Computes the weighted clustering coefficient (Barrat et al.) and the strength of every node.");
+        out.println("The edge list has one 'source target [weight]' line per edge, the output is a tab separated");
+        out.println("file, <edge list>.wcc.tsv by default.");
+        out.println("Options:");
+        out.println("  -d, --directed        treat the edges as directed");
+        out.println("  -t, --threads <n>     number of threads (default: available processors)");
+        out.println("  --node-iterator       search the triangles from every node instead of listing each once");
+        out.println("  --patterns            also compute the Fagiolo cycle, middleman, in and out coefficients");
+        out.println("  --definitions <list>  also compute other undirected definitions in the same pass, a comma");
+        out.println("                        separated list of onnela, zhang");
+        out.println("  --edge-triangles <file>");
+        out.println("                        also write the triangle count and intensity of every edge of an");
+        out.println("                        undirected graph to a tab separated file");
+        out.println("  --hub-degree <n>      index the neighbor lists of at least n entries with compressed");
+        out.println("                        bitmaps, 0 for none (default " + HubAdjacency.DEFAULT_MIN_DEGREE + ")");
+        out.println("  --hub-memory <mb>     memory allowed to the hub bitmaps (default " + (HubAdjacency.DEFAULT_MAX_BYTES >> 20) + ")");
+        out.println("  --approximate         estimate the coefficients by wedge sampling");
+        out.println("  --samples <n>         most wedges sampled per node in approximate mode (default 64)");
+        out.println("  --budget <n>          wedges sampled for the node estimates, spread over the nodes with at");
+        out.println("                        least one each, and at most for the average (default 1000000)");
+        out.println("  --error <e>           stop sampling the average at this 95% half width (default 0.001)");
+        out.println("  --metrics             print the time of every phase, the work of the triangle search and");
+        out.println("                        the most expensive nodes");
+        out.println("  --export <dir>        also write the node values, both distributions and the settings to");
+        out.println("                        a directory");
+        out.println("  --format csv|binary   format of the exported node values (default csv)");
+        out.println("  --gzip                gzip the exported files");
+        out.println("  --convert <graph>     convert the edge list, whose node ids must be integers, to the binary");
+        out.println("                        graph format and exit");
+        out.println("  --shards <n>          compute a binary graph in n worker processes, each with the nodes of");
+        out.println("                        one shard and their ghost neighbors, sharing the threads");
+        out.println("  --shard-heap <mb>     maximum heap of every worker process");
+        out.println("An input ending in " + BINARY_SUFFIX + " is a binary graph: it is memory-mapped and computed out of core,");
+        out.println("the results are written to a binary file, <graph>.wcc.bin by default.");
+    }
+
+    /**
+     * Computes a binary graph out of core, the graph decides whether the
+     * edges are directed. With more than one shard the nodes are computed by
+     * worker processes, see {@link ShardedClustering}.
+     */
+    private static void runMapped(BatchClustering batch, File input, File output, int shards, int shardHeap) throws IOException {
+        long start = System.nanoTime();
+        MappedGraph graph = new MappedGraph(input);
+        try {
+            ClusteringAccumulator result;
+            ShardedClustering sharded = null;
+            if (shards > 1) {
+                sharded = new ShardedClustering(graph, shards, Math.max(1, batch.getThreadCount() / shards));
+                if (shardHeap > 0) {
+                    sharded.setJvmOptions(Arrays.asList("-Xmx" + shardHeap + "m"));
+                }
+                result = sharded.run(output, MappedClustering.defaultAccumulator(graph), null);
+            } else {
+                MappedClustering clustering = new MappedClustering(graph, batch.getThreadCount());
+                result = clustering.run(output, MappedClustering.defaultAccumulator(graph), null);
+            }
+            int n = Math.max(1, graph.getNodeCount());
+            System.out.println("Nodes: " + graph.getNodeCount() + (graph.isDirected() ? " (directed)" : " (undirected)"));
+            if (sharded != null) {
+                for (int k = 0; k < sharded.getShardCount(); k++) {
+                    int end = k + 1 < sharded.getShardCount() ? sharded.getShardStart(k + 1) : graph.getNodeCount();
+                    System.out.println("  shard " + k + ": " + (end - sharded.getShardStart(k)) + " nodes, "
+                            + sharded.getGhostCount(k) + " ghost neighbors");
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "Average Clustering Coefficient: %.6f", result.getTotalClustering() / n));
+            System.out.println(String.format(Locale.ROOT, "Average Strength: %.6f", result.getTotalStrength() / n));
+            System.out.println(String.format(Locale.ROOT, "Computed %d ms, written to %s",
+                    (System.nanoTime() - start) / 1000000, output));
+        } finally {
+            graph.close();
+        }
+    }
+
+    private static void printMetrics(ClusteringMetrics metrics) {
+        System.out.println("Kernel: " + metrics.getKernel() + ", " + metrics.getThreadCount() + " thread(s), "
+                + metrics.getEntryCount() + " neighbor entries");
+        for (String phase : metrics.getPhases()) {
+            System.out.println("  " + phase);
+        }
+        System.out.println("Neighbor entries scanned: " + metrics.getScannedEntries());
+        System.out.println("Closed neighbor pairs found: " + metrics.getClosedPairs());
+        if (metrics.getTriangles() >= 0) {
+            System.out.println("Triangles: " + metrics.getTriangles());
+        }
+        if (metrics.getHubBitmaps() > 0) {
+            System.out.println("Hub bitmaps: " + metrics.getHubBitmaps() + " rows, " + metrics.getHubBitmapBytes() + " bytes");
+        }
+        System.out.println("Most expensive nodes:");
+        for (String hub : metrics.getTopHubs()) {
+            System.out.println("  " + hub);
+        }
+    }
+
+    public static void main(String[] args) {
+        BatchClustering batch = new BatchClustering();
+        boolean directed = false;
+        String input = null;
+        String output = null;
+        String convert = null;
+        String edgeOutput = null;
+        int shards = 1;
+        int shardHeap = 0;
+        File export = null;
+        ResultExporter.Format format = ResultExporter.Format.CSV;
+        boolean gzip = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-h") || arg.equals("--help")) {
+                    usage(System.out);
+                    return;
+                } else if (arg.equals("-d") || arg.equals("--directed")) {
+                    directed = true;
+                } else if (arg.equals("-t") || arg.equals("--threads")) {
+                    batch.setThreadCount(Integer.parseInt(args[++i]));
+                } else if (arg.equals("--node-iterator")) {
+                    batch.setDegreeOrdered(false);
+                } else if (arg.equals("--patterns")) {
+                    batch.setDirectedPatterns(true);
+                } else if (arg.equals("--definitions")) {
+                    for (String name : args[++i].split(",")) {
+                        int d = Arrays.asList(WeightedDefinitions.NAMES).indexOf(name.trim().toLowerCase(Locale.ROOT));
+                        if (d < 0) {
+                            throw new IllegalArgumentException("Unknown definition " + name);
+                        }
+                        batch.setDefinitionSelected(d, true);
+                    }
+                } else if (arg.equals("--edge-triangles")) {
+                    edgeOutput = args[++i];
+                    batch.setEdgeTriangles(true);
+                } else if (arg.equals("--hub-degree")) {
+                    batch.setHubDegree(Integer.parseInt(args[++i]));
+                } else if (arg.equals("--hub-memory")) {
+                    batch.setHubMemory(Integer.parseInt(args[++i]));
+                } else if (arg.equals("--approximate")) {
+                    batch.setApproximate(true);
+                } else if (arg.equals("--samples")) {
+                    batch.setSamplesPerNode(Integer.parseInt(args[++i]));
+                } else if (arg.equals("--budget")) {
+                    batch.setSampleBudget(Long.parseLong(args[++i]));
+                } else if (arg.equals("--error")) {
+                    batch.setTargetError(Double.parseDouble(args[++i]));
+                } else if (arg.equals("--metrics")) {
+                    batch.setInstrumented(true);
+                } else if (arg.equals("--export")) {
+                    export = new File(args[++i]);
+                } else if (arg.equals("--format")) {
+                    format = ResultExporter.Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } else if (arg.equals("--gzip")) {
+                    gzip = true;
+                } else if (arg.equals("--shards")) {
+                    shards = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--shard-heap")) {
+                    shardHeap = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--convert")) {
+                    convert = args[++i];
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else if (input == null) {
+                    input = arg;
+                } else if (output == null) {
+                    output = arg;
+                } else {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                }
+            }
+            if (input == null) {
+                throw new IllegalArgumentException("Missing edge list");
+            }
+        } catch (RuntimeException ex) {
+            //bad number, missing option value or unknown argument
+            System.err.println(ex instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : ex.getMessage());
+            usage(System.err);
+            System.exit(2);
+            return;
+        }
+        try {
+            if (convert != null) {
+                long start = System.nanoTime();
+                int nodes = MappedGraphWriter.convert(new File(input), directed, new File(convert));
+                System.out.println(String.format(Locale.ROOT, "Converted %d nodes to %s in %d ms",
+                        nodes, convert, (System.nanoTime() - start) / 1000000));
+                return;
+            }
+            if (input.endsWith(BINARY_SUFFIX)) {
+                runMapped(batch, new File(input), new File(output != null ? output : input + ".wcc.bin"), shards, shardHeap);
+                return;
+            }
+            if (output == null) {
+                output = input + ".wcc.tsv";
+            }
+            long start = System.nanoTime();
+            EdgeListReader reader = new EdgeListReader(directed);
+            GraphSnapshot snapshot = reader.read(new File(input));
+            long read = System.nanoTime();
+            batch.compute(snapshot, reader.getLabels());
+            long computed = System.nanoTime();
+            batch.write(new File(output), reader.getLabels());
+            if (edgeOutput != null && batch.getEdgeTriangles() != null) {
+                batch.writeEdges(new File(edgeOutput), reader.getLabels());
+            }
+            long written = System.nanoTime();
+            if (export != null) {
+                batch.export(export, format, gzip, reader.getLabels());
+            }
+            long exported = System.nanoTime();
+            System.out.println("Nodes: " + snapshot.getNodeCount() + (directed ? " (directed)" : " (undirected)"));
+            System.out.println(String.format(Locale.ROOT, "Average Clustering Coefficient: %.6f", batch.getAverageWeightedClusteringCoefficient())
+                    + (batch.getAverageEstimate() != null
+                    ? String.format(Locale.ROOT, " +- %.6f (95%% confidence, %d sampled wedges)",
+                    batch.getAverageEstimate().getHalfWidth(), batch.getAverageEstimate().getSamples())
+                    : ""));
+            System.out.println(String.format(Locale.ROOT, "Average Strength: %.6f", batch.getAverageNodeStrenght()));
+            System.out.println(String.format(Locale.ROOT, "Read %d ms, computed %d ms, written %d ms to %s",
+                    (read - start) / 1000000, (computed - read) / 1000000, (written - computed) / 1000000, output));
+            if (export != null) {
+                System.out.println(String.format(Locale.ROOT, "Exported %d ms to %s", (exported - written) / 1000000, export));
+            }
+            if (batch.getMetrics() != null) {
+                printMetrics(batch.getMetrics());
+            }
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -43,9 +43,21 @@ package umberto.WeightedClusterCoefficient;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.gephi.utils.TempDirUtils;
 import org.gephi.utils.TempDirUtils.TempDir;
 import org.jfree.chart.ChartRenderingInfo;
@@ -65,6 +77,29 @@ import org.jfree.data.xy.XYSeries;
  * @author sebastien
  */
 public abstract class ChartUtils {
+
+    /**
+     * Points kept in the series of a chart, see
+     * {@link #createXYSeries(Map, String, int)}.
+     */
+    public static final int MAX_POINTS = 1000;
+    /**
+     * Longest wait of a report for its charts, see
+     * {@link #awaitChart(Future, long)}.
+     */
+    public static final long RENDER_TIMEOUT_SECONDS = 30;
+    private final static Logger LOGGER = Logger.getLogger("org.umberto.weighted_cluster_coefficient");
+    /**
+     * Renders the charts of the reports, two at a time.
+     */
+    private static final ExecutorService RENDERER = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Weighted clustering chart renderer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
     
     public static void decorateChart(JFreeChart chart) {
         XYPlot plot = (XYPlot) chart.getPlot();
@@ -130,14 +165,54 @@ public abstract class ChartUtils {
             final ChartRenderingInfo info = new ChartRenderingInfo(new StandardEntityCollection());
             TempDir tempDir = TempDirUtils.createTempDir();
             File file1 = tempDir.createFile(fileName);
-            imageFile = "<IMG SRC=\"file:" + file1.getAbsolutePath() + "\" " + "WIDTH=\"600\" HEIGHT=\"400\" BORDER=\"0\" USEMAP=\"#chart\"></IMG>";
             ChartUtilities.saveChartAsPNG(file1, chart, 600, 400, info);
+            imageFile = "<IMG SRC=\"file:" + file1.getAbsolutePath() + "\" " + "WIDTH=\"600\" HEIGHT=\"400\" BORDER=\"0\" USEMAP=\"#chart\"></IMG>";
         } catch (IOException e) {
-            System.out.println(e.toString());
+            LOGGER.log(Level.WARNING, "Cannot render " + fileName, e);
         }
         return imageFile;
     }
     
+    /**
+     * Renders a chart in the background, so that several charts render in
+     * parallel. The future gives the image tag of the chart once its image is
+     * written, an empty string if it could not be rendered, see
+     * {@link #awaitChart(Future, long)}.
+     */
+    public static Future<String> renderChartLater(final Callable<JFreeChart> chart, final String fileName) {
+        return RENDERER.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                try {
+                    return renderChart(chart.call(), fileName);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Cannot render " + fileName, e);
+                    return "";
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for a chart of {@link #renderChartLater(Callable, String)} until
+     * the deadline, a {@link System#nanoTime()} value, and returns its image
+     * tag. A chart still rendering at the deadline is logged and left out of
+     * the report as an empty string, so that no tag points to a missing
+     * image.
+     */
+    public static String awaitChart(Future<String> chart, long deadline) {
+        try {
+            return chart.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.log(Level.WARNING, "A chart is still rendering after {0} s, it is left out of the report", RENDER_TIMEOUT_SECONDS);
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Cannot render a chart", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "";
+    }
+    
     public static XYSeries createXYSeries(Map data, String name) {
         XYSeries series = new XYSeries(name);
         for (Iterator it = data.entrySet().iterator(); it.hasNext();) {
@@ -148,4 +223,41 @@ public abstract class ChartUtils {
         }
         return series;
     }
+
+    /**
+     * Same as {@link #createXYSeries(Map, String)} with at most
+     * <code>maxPoints</code> points. Above that the points are cut in
+     * consecutive groups and only the lowest and highest point of each group
+     * are kept, in order, so peaks and the overall shape survive.
+     */
+    public static XYSeries createXYSeries(Map data, String name, int maxPoints) {
+        if (data.size() <= maxPoints) {
+            return createXYSeries(data, name);
+        }
+        List<Map.Entry> points = new ArrayList<Map.Entry>(data.entrySet());
+        XYSeries series = new XYSeries(name);
+        int groups = Math.max(1, maxPoints / 2);
+        for (int g = 0; g < groups; g++) {
+            int from = (int) ((long) points.size() * g / groups);
+            int to = (int) ((long) points.size() * (g + 1) / groups);
+            int low = from;
+            int high = from;
+            for (int i = from + 1; i < to; i++) {
+                double y = ((Number) points.get(i).getValue()).doubleValue();
+                if (y < ((Number) points.get(low).getValue()).doubleValue()) {
+                    low = i;
+                }
+                if (y > ((Number) points.get(high).getValue()).doubleValue()) {
+                    high = i;
+                }
+            }
+            Map.Entry first = points.get(Math.min(low, high));
+            Map.Entry second = points.get(Math.max(low, high));
+            series.add((Number) first.getKey(), (Number) first.getValue());
+            if (second != first) {
+                series.add((Number) second.getKey(), (Number) second.getValue());
+            }
+        }
+        return series;
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+/**
+ * Running totals and distributions of the node strength and weighted
+ * clustering coefficient. Each worker fills its own accumulator, the
+ * accumulators are merged once all the nodes are done. Adding a node does not
+ * allocate.
+ *
+ * @author Umberto Griffo
+ */
+public class ClusteringAccumulator {
+
+    private double totalClustering;
+    private double totalStrength;
+    private int nodeCount;
+    private final Histogram strengthDistribution;
+    private final Histogram clusteringDistribution;
+
+    public ClusteringAccumulator(Histogram strengthDistribution, Histogram clusteringDistribution) {
+        this.strengthDistribution = strengthDistribution;
+        this.clusteringDistribution = clusteringDistribution;
+    }
+
+    /**
+     * Returns an empty accumulator with the same histogram bins.
+     */
+    public ClusteringAccumulator emptyCopy() {
+        return new ClusteringAccumulator(strengthDistribution.emptyCopy(), clusteringDistribution.emptyCopy());
+    }
+
+    public void add(float strength, float clustering) {
+        totalClustering += clustering;
+        totalStrength += strength;
+        nodeCount++;
+        strengthDistribution.add(strength);
+        clusteringDistribution.add(clustering);
+    }
+
+    public void merge(ClusteringAccumulator other) {
+        totalClustering += other.totalClustering;
+        totalStrength += other.totalStrength;
+        nodeCount += other.nodeCount;
+        strengthDistribution.merge(other.strengthDistribution);
+        clusteringDistribution.merge(other.clusteringDistribution);
+    }
+
+    public double getTotalClustering() {
+        return totalClustering;
+    }
+
+    public double getTotalStrength() {
+        return totalStrength;
+    }
+
+    /**
+     * Number of nodes added, directly or through merged accumulators.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public Histogram getStrengthDistribution() {
+        return strengthDistribution;
+    }
+
+    public Histogram getClusteringDistribution() {
+        return clusteringDistribution;
+    }
+}
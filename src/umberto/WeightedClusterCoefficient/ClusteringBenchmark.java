@@ -0,0 +1,436 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+/**
+ * Benchmarks the stages of the statistic on synthetic graphs from
+ * {@link GraphGenerator}, with fixed seeds, so runs can be compared over
+ * time. <p> Every stage runs a number of warmup iterations, then measured
+ * iterations timed one by one, giving the throughput, the latency
+ * percentiles and the bytes allocated per iteration. Allocation is read from
+ * the thread MXBean of HotSpot based JVMs and summed over the live threads,
+ * so with more than one thread the bytes of pool workers that already
+ * stopped are missed. <p> The stages are the parts of
+ * {@link WeightedClusterCoefficient#execute} that run without a Gephi graph:
+ * the snapshot built from an edge array, the clustering (one per kernel, a
+ * new kernel per iteration) and the histograms; then the chart rendering and
+ * {@link WeightedClusterCoefficient#getReport()} from given results, which
+ * are skipped when the JFreeChart or Gephi libraries are not on the class
+ * path. They are not a run of the statistic: the copy out of the Gephi graph
+ * and the write back of the attribute columns are not measured, the first
+ * costs more than the edge array build. Results can be
+ * saved to a CSV baseline and compared with a later run:
+ * <pre>
+ * java -cp ... umberto.WeightedClusterCoefficient.ClusteringBenchmark --save base.csv
+ * java -cp ... umberto.WeightedClusterCoefficient.ClusteringBenchmark --baseline base.csv
+ * </pre>
+ *
+ * @author Umberto Griffo
+ */
+public class ClusteringBenchmark {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private int warmup = 3;
+    private int iterations = 10;
+    private final List<Result> results = new ArrayList<Result>();
+    /**
+     * Keeps the stage results alive so the JIT cannot drop the work.
+     */
+    private volatile int sink;
+
+    /**
+     * Timings of one stage.
+     */
+    public static class Result {
+
+        private final String name;
+        private final long[] nanos;
+        private final long allocatedBytes;
+
+        Result(String name, long[] nanos, long allocatedBytes) {
+            this.name = name;
+            this.nanos = nanos.clone();
+            Arrays.sort(this.nanos);
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getMeanNanos() {
+            double total = 0;
+            for (long n : nanos) {
+                total += n;
+            }
+            return total / nanos.length;
+        }
+
+        /**
+         * Nearest rank percentile, <code>p</code> in [0, 100].
+         */
+        public long getPercentileNanos(double p) {
+            int rank = (int) Math.ceil(p / 100 * nanos.length);
+            return nanos[Math.max(0, Math.min(nanos.length - 1, rank - 1))];
+        }
+
+        public double getOperationsPerSecond() {
+            return 1e9 / getMeanNanos();
+        }
+
+        /**
+         * Bytes allocated per iteration, -1 if the JVM cannot tell.
+         */
+        public long getAllocatedBytesPerOperation() {
+            return allocatedBytes < 0 ? -1 : allocatedBytes / nanos.length;
+        }
+    }
+
+    public void setWarmup(int warmup) {
+        this.warmup = Math.max(0, warmup);
+    }
+
+    public void setIterations(int iterations) {
+        this.iterations = Math.max(1, iterations);
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * Runs the stage <code>warmup + iterations</code> times and records the
+     * measured iterations under the given name.
+     */
+    public Result measure(String name, Callable<?> stage) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            consume(stage.call());
+        }
+        long[] nanos = new long[iterations];
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            Object value = stage.call();
+            nanos[i] = System.nanoTime() - start;
+            consume(value);
+        }
+        long allocatedAfter = allocatedBytes();
+        Result result = new Result(name, nanos, allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore);
+        results.add(result);
+        return result;
+    }
+
+    private void consume(Object value) {
+        sink += value == null ? 0 : System.identityHashCode(value);
+    }
+
+    /**
+     * Bytes allocated so far by the live threads, -1 if not supported.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+        if (!hotspot.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        if (!hotspot.isThreadAllocatedMemoryEnabled()) {
+            hotspot.setThreadAllocatedMemoryEnabled(true);
+        }
+        long total = 0;
+        for (long bytes : hotspot.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Measures every stage on one graph.
+     *
+     * @param label prefix of the stage names, for instance
+     * <code>"er undirected"</code>
+     */
+    public void run(String label, final GraphSnapshot.Builder builder, final int threads) throws Exception {
+        final GraphSnapshot snapshot = builder.build();
+        final int n = snapshot.getNodeCount();
+        measure(label + " snapshot from edge array", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return builder.build();
+            }
+        });
+        final ClusteringAccumulator prototype = ClusteringRunner.defaultAccumulator(snapshot);
+        measure(label + " clustering node iterator", new Callable<Object>() {
+            @Override
+            public Object call() {
+                ClusteringRunner runner = new ClusteringRunner(new ClusteringKernel(snapshot), threads, prototype);
+                return runner.run(null);
+            }
+        });
+        measure(label + " clustering degree-ordered", new Callable<Object>() {
+            @Override
+            public Object call() {
+                ClusteringRunner runner = new ClusteringRunner(new ForwardTriangleKernel(snapshot, threads > 1), threads, prototype);
+                return runner.run(null);
+            }
+        });
+        if (snapshot.isDirected()) {
+            measure(label + " clustering fagiolo patterns", new Callable<Object>() {
+                @Override
+                public Object call() {
+                    ClusteringRunner runner = new ClusteringRunner(new DirectedClusteringKernel(snapshot), threads, prototype);
+                    return runner.run(null);
+                }
+            });
+        }
+        measure(label + " clustering sampled", new Callable<Object>() {
+            @Override
+            public Object call() {
+                ClusteringRunner runner = new ClusteringRunner(new SamplingKernel(snapshot, 64, SamplingKernel.DEFAULT_SEED), threads, prototype);
+                return runner.run(null);
+            }
+        });
+        ClusteringRunner runner = new ClusteringRunner(new ClusteringKernel(snapshot), threads, prototype);
+        final ClusteringAccumulator result = runner.run(null);
+        final double[] clustering = runner.getClustering();
+        final float[] strength = runner.getStrength();
+        measure(label + " histograms", new Callable<Object>() {
+            @Override
+            public Object call() {
+                ClusteringAccumulator accumulator = prototype.emptyCopy();
+                for (int i = 0; i < n; i++) {
+                    accumulator.add(strength[i], (float) clustering[i]);
+                }
+                accumulator.getStrengthDistribution().cumulativeDistribution();
+                return accumulator.getClusteringDistribution().distribution();
+            }
+        });
+        try {
+            measure(label + " chart", new Callable<Object>() {
+                @Override
+                public Object call() throws IOException {
+                    return Charts.render(result);
+                }
+            });
+        } catch (LinkageError ex) {
+            System.err.println(label + " chart skipped, JFreeChart is not on the class path");
+        }
+        try {
+            measure(label + " report from results", new Callable<Object>() {
+                @Override
+                public Object call() {
+                    WeightedClusterCoefficient statistic = new WeightedClusterCoefficient();
+                    statistic.setDirected(snapshot.isDirected());
+                    statistic.setResults(result, n);
+                    return statistic.getReport();
+                }
+            });
+        } catch (LinkageError ex) {
+            System.err.println(label + " report skipped, the Gephi libraries are not on the class path");
+        }
+    }
+
+    /**
+     * Prints one line per stage, with the change of the mean from the
+     * baseline if there is one.
+     */
+    public void print(PrintWriter out, Map<String, Double> baseline) {
+        out.println(String.format(Locale.ROOT, "%-48s %10s %10s %10s %10s %10s %10s %10s%s",
+                "stage", "ops/s", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "MB/op", baseline != null ? "   vs base" : ""));
+        for (Result r : results) {
+            String change = "";
+            if (baseline != null) {
+                Double base = baseline.get(r.getName());
+                change = base == null ? "        --" : String.format(Locale.ROOT, "   %+6.1f%%", 100 * (r.getMeanNanos() / base - 1));
+            }
+            long bytes = r.getAllocatedBytesPerOperation();
+            out.println(String.format(Locale.ROOT, "%-48s %10.2f %10.3f %10.3f %10.3f %10.3f %10.3f %10s%s",
+                    r.getName(), r.getOperationsPerSecond(), r.getMeanNanos() / 1e6,
+                    r.getPercentileNanos(50) / 1e6, r.getPercentileNanos(90) / 1e6, r.getPercentileNanos(99) / 1e6,
+                    r.getPercentileNanos(100) / 1e6,
+                    bytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.3f", bytes / 1e6), change));
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the results as a CSV baseline.
+     */
+    public void save(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8));
+        try {
+            out.println("stage,mean_ns,p50_ns,p90_ns,p99_ns,max_ns,bytes_per_op");
+            for (Result r : results) {
+                out.println(r.getName() + "," + (long) r.getMeanNanos() + "," + r.getPercentileNanos(50) + ","
+                        + r.getPercentileNanos(90) + "," + r.getPercentileNanos(99) + "," + r.getPercentileNanos(100) + ","
+                        + r.getAllocatedBytesPerOperation());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the mean time of every stage of a saved baseline.
+     */
+    public static Map<String, Double> loadBaseline(File file) throws IOException {
+        Map<String, Double> means = new HashMap<String, Double>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line = in.readLine();
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length > 1) {
+                    means.put(fields[0], Double.parseDouble(fields[1]));
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return means;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java -cp ... " + ClusteringBenchmark.class.getName() + " [options]");
+        System.out.println("  --graphs <list>       comma separated among er, ba, planted (default all)");
+        System.out.println("  --nodes <n>           nodes per graph (default 100000)");
+        System.out.println("  --degree <d>          average degree (default 10)");
+        System.out.println("  --seed <s>            generator seed (default 42)");
+        System.out.println("  --modes <list>        comma separated among undirected, directed (default both)");
+        System.out.println("  --threads <n>         threads of the clustering stages (default 1)");
+        System.out.println("  --warmup <n>          warmup iterations per stage (default 3)");
+        System.out.println("  --iterations <n>      measured iterations per stage (default 10)");
+        System.out.println("  --save <file>         save the results as a CSV baseline");
+        System.out.println("  --baseline <file>     compare the means with a saved baseline");
+    }
+
+    public static void main(String[] args) throws Exception {
+        ClusteringBenchmark benchmark = new ClusteringBenchmark();
+        List<String> graphs = Arrays.asList("er", "ba", "planted");
+        List<String> modes = Arrays.asList("undirected", "directed");
+        int nodes = 100000;
+        double degree = 10;
+        long seed = 42;
+        int threads = 1;
+        File save = null;
+        File baseline = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--graphs")) {
+                graphs = Arrays.asList(args[++i].split(","));
+            } else if (arg.equals("--nodes")) {
+                nodes = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--degree")) {
+                degree = Double.parseDouble(args[++i]);
+            } else if (arg.equals("--seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (arg.equals("--modes")) {
+                modes = Arrays.asList(args[++i].split(","));
+            } else if (arg.equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--warmup")) {
+                benchmark.setWarmup(Integer.parseInt(args[++i]));
+            } else if (arg.equals("--iterations")) {
+                benchmark.setIterations(Integer.parseInt(args[++i]));
+            } else if (arg.equals("--save")) {
+                save = new File(args[++i]);
+            } else if (arg.equals("--baseline")) {
+                baseline = new File(args[++i]);
+            } else {
+                usage();
+                return;
+            }
+        }
+        for (String graph : graphs) {
+            for (String mode : modes) {
+                boolean directed = mode.equals("directed");
+                GraphSnapshot.Builder builder;
+                if (graph.equals("er")) {
+                    builder = GraphGenerator.erdosRenyi(nodes, degree, directed, seed);
+                } else if (graph.equals("ba")) {
+                    builder = GraphGenerator.barabasiAlbert(nodes, (int) Math.max(1, Math.round(degree / 2)), directed, seed);
+                } else if (graph.equals("planted")) {
+                    builder = GraphGenerator.plantedCommunities(nodes, Math.max(2, nodes / 1000), degree, 0.8, directed, seed);
+                } else {
+                    throw new IllegalArgumentException("Unknown graph " + graph);
+                }
+                benchmark.run(graph + " " + mode, builder, threads);
+            }
+        }
+        benchmark.print(new PrintWriter(new OutputStreamWriter(System.out, UTF8)), baseline != null ? loadBaseline(baseline) : null);
+        if (save != null) {
+            benchmark.save(save);
+        }
+    }
+
+    /**
+     * The two charts of the report, drawn in memory. Kept apart so that the
+     * JFreeChart classes are only loaded when the chart stage runs.
+     */
+    private static class Charts {
+
+        static byte[] render(ClusteringAccumulator result) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            XYSeries strenghtSeries = ChartUtils.createXYSeries(result.getStrengthDistribution().cumulativeDistribution(), "Strength Distribution", ChartUtils.MAX_POINTS);
+            XYSeriesCollection strenghtData = new XYSeriesCollection();
+            strenghtData.addSeries(strenghtSeries);
+            JFreeChart strenghtChart = ChartFactory.createXYLineChart("Strenght Distribution", "Strength", "F(Strength)",
+                    strenghtData, PlotOrientation.VERTICAL, true, false, false);
+            ChartUtils.decorateChart(strenghtChart);
+            ChartUtils.scaleLogChart(strenghtChart, strenghtSeries, false);
+            ChartUtilities.writeChartAsPNG(out, strenghtChart, 600, 400);
+            XYSeries ccSeries = ChartUtils.createXYSeries(result.getClusteringDistribution().distribution(), "Weighted cluster coefficient Distribution", ChartUtils.MAX_POINTS);
+            XYSeriesCollection ccData = new XYSeriesCollection();
+            ccData.addSeries(ccSeries);
+            JFreeChart ccChart = ChartFactory.createXYLineChart("Weighted Cluster Coefficient Distribution", "Weighted Cluster Coefficient", "# Nodes",
+                    ccData, PlotOrientation.VERTICAL, true, false, false);
+            ChartUtils.decorateChart(ccChart);
+            ChartUtils.scaleChart(ccChart, ccSeries, false);
+            ChartUtilities.writeChartAsPNG(out, ccChart, 600, 400);
+            return out.toByteArray();
+        }
+    }
+}
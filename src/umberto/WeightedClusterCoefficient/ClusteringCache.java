@@ -0,0 +1,170 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.gephi.graph.api.*;
+
+/**
+ * Last results of the statistic, so that a run on a graph that has not changed
+ * returns at once. <p> A result is kept per graph model, with the
+ * {@link GraphStamp} of the snapshot it was computed on and the settings of
+ * the run. Structural changes move the graph versions; weight changes do not,
+ * so the stamp hashes the weights again on every lookup, one pass over the
+ * edges, which is still far cheaper than the computation. A lookup never
+ * depends on events delivered later. Graph models are weakly referenced, so the
+ * result of a closed workspace goes away with it, and the results are
+ * bounded in memory, least recently used first out.
+ *
+ * @author Umberto Griffo
+ */
+class ClusteringCache {
+
+    /**
+     * Default bound of the estimated memory of all the results.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final ClusteringCache DEFAULT = new ClusteringCache(DEFAULT_MAX_BYTES);
+    private final Map<GraphModel, Entry> entries = new WeakHashMap<GraphModel, Entry>();
+    private final long maxBytes;
+    private long clock;
+
+    ClusteringCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The cache shared by all the statistic instances.
+     */
+    static ClusteringCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * What a run leaves for {@link WeightedClusterCoefficient#getReport()}
+     * and its getters.
+     */
+    static class Result {
+
+        final int nodeCount;
+        final double[] clustering;
+        final double[][] patterns;
+        final double[][] definitions;
+        final ClusteringAccumulator distributions;
+        final double[] averagePatterns;
+        final double[] averageDefinitions;
+        final SamplingKernel.Estimate averageEstimate;
+
+        Result(int nodeCount, double[] clustering, double[][] patterns, double[][] definitions,
+                ClusteringAccumulator distributions, double[] averagePatterns, double[] averageDefinitions,
+                SamplingKernel.Estimate averageEstimate) {
+            this.nodeCount = nodeCount;
+            this.clustering = clustering;
+            this.patterns = patterns;
+            this.definitions = definitions;
+            this.averageDefinitions = averageDefinitions;
+            this.distributions = distributions;
+            this.averagePatterns = averagePatterns;
+            this.averageEstimate = averageEstimate;
+        }
+
+        long bytes() {
+            int bins = distributions.getStrengthDistribution().getBinCount()
+                    + distributions.getClusteringDistribution().getBinCount();
+            return 8L * clustering.length + bytes(patterns) + bytes(definitions) + 24L * bins + 256;
+        }
+
+        private static long bytes(double[][] columns) {
+            long bytes = 0;
+            if (columns != null) {
+                for (double[] values : columns) {
+                    bytes += values != null ? 8L * values.length : 0;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private static class Entry {
+
+        final GraphStamp stamp;
+        final String settings;
+        final Result result;
+        long lastUsed;
+
+        Entry(GraphStamp stamp, String settings, Result result) {
+            this.stamp = stamp;
+            this.settings = settings;
+            this.result = result;
+        }
+
+        boolean matches(HierarchicalGraph graph, String settings) {
+            return this.settings.equals(settings) && stamp.matches(graph);
+        }
+    }
+
+    /**
+     * Returns the result computed on the graph with the same settings, or
+     * null if the graph, its weights or the settings changed since. Must be
+     * called under read lock.
+     */
+    synchronized Result get(HierarchicalGraph graph, String settings) {
+        Entry entry = entries.get(graph.getGraphModel());
+        if (entry == null || !entry.matches(graph, settings)) {
+            return null;
+        }
+        entry.lastUsed = ++clock;
+        return entry.result;
+    }
+
+    /**
+     * Keeps the result of a complete run on the graph, replacing the previous
+     * one of its model. The stamp is the one of the snapshot the result was
+     * computed on, checked against the graph. Must be called under read lock.
+     */
+    synchronized void put(HierarchicalGraph graph, GraphStamp stamp, String settings, Result result) {
+        GraphModel model = graph.getGraphModel();
+        if (result.bytes() > maxBytes) {
+            entries.remove(model);
+            return;
+        }
+        Entry entry = new Entry(stamp, settings, result);
+        entry.lastUsed = ++clock;
+        entries.put(model, entry);
+        evict();
+    }
+
+    /**
+     * Drops the least recently used results until the others fit.
+     */
+    private void evict() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.result.bytes();
+        }
+        while (total > maxBytes) {
+            Map.Entry<GraphModel, Entry> oldest = null;
+            for (Map.Entry<GraphModel, Entry> e : entries.entrySet()) {
+                if (oldest == null || e.getValue().lastUsed < oldest.getValue().lastUsed) {
+                    oldest = e;
+                }
+            }
+            total -= oldest.getValue().result.bytes();
+            entries.remove(oldest.getKey());
+        }
+    }
+}
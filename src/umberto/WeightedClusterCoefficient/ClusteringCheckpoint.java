@@ -0,0 +1,323 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves the chunks a {@link ClusteringRunner} has finished to a file, so that
+ * a run that is cancelled, runs out of memory or dies with the session can be
+ * resumed by a later run on the same graph. <p> A chunk is saved once all its
+ * nodes are computed: their coefficients, their strengths and the extra
+ * columns added with {@link #addColumn(double[])}. The distributions of a
+ * chunk are not saved, the runner rebuilds them from its values in node
+ * order, which gives back the accumulator the chunk had. <p> The file is
+ * rewritten at most once per interval, to a part file moved over the last
+ * one, so a crash while writing leaves the previous checkpoint. The workers
+ * only mark their chunks: the file is written by one background writer,
+ * which takes the chunks marked so far, so that no worker waits for the disk.
+ * It names its
+ * graph by a fingerprint of the node ids, the edges, the weights and the
+ * settings: the file of another graph is ignored, then overwritten.
+ *
+ * @author Umberto Griffo
+ */
+class ClusteringCheckpoint {
+
+    static final String FILE_NAME = "weightedclustering.checkpoint";
+    private static final int MAGIC = 0x5743434B;
+    private static final int VERSION = 1;
+    private final static Logger LOGGER = Logger.getLogger("org.umberto.weighted_cluster_coefficient");
+    /**
+     * Writes the checkpoints in the background, one at a time.
+     */
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Weighted clustering checkpoint writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final File file;
+    private final long fingerprint;
+    private final long intervalMillis;
+    private final List<double[]> columns = new ArrayList<double[]>();
+    private double[] clustering;
+    private float[] strength;
+    private int chunkSize;
+    /**
+     * Chunks whose values are final, restored or computed.
+     */
+    private BitSet saved;
+    private int unsaved;
+    private long lastSave;
+    private boolean writing;
+    private boolean deleted;
+    private int restoredNodes;
+    /**
+     * Held while the file is written or deleted, never together with the
+     * chunk monitor.
+     */
+    private final Object fileLock = new Object();
+
+    /**
+     * @param intervalMillis least time between two writes while the runner
+     * works
+     */
+    ClusteringCheckpoint(File file, long fingerprint, long intervalMillis) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Hashes what the values of a run depend on: the node ids in snapshot
+     * order, the snapshot and the settings.
+     */
+    static long fingerprint(GraphSnapshot snapshot, List<String> ids, String settings) {
+        int n = snapshot.getNodeCount();
+        long hash = 31 * (snapshot.isDirected() ? 1231 : 1237) + n;
+        for (String id : ids) {
+            hash = 31 * hash + id.hashCode();
+        }
+        hash = hash(hash, snapshot.getOffsets(), n + 1);
+        hash = hash(hash, snapshot.getNeighbors(), snapshot.getOffsets()[n]);
+        float[] weights = snapshot.getWeights();
+        for (int p = 0; p < snapshot.getOffsets()[n]; p++) {
+            hash = 31 * hash + Float.floatToIntBits(weights[p]);
+        }
+        if (snapshot.isDirected()) {
+            hash = hash(hash, snapshot.getOutOffsets(), n + 1);
+            hash = hash(hash, snapshot.getOutNeighbors(), snapshot.getOutOffsets()[n]);
+        }
+        return 31 * hash + settings.hashCode();
+    }
+
+    private static long hash(long hash, int[] values, int length) {
+        for (int k = 0; k < length; k++) {
+            hash = 31 * hash + values[k];
+        }
+        return hash;
+    }
+
+    /**
+     * Adds a per-node column the kernel fills along with the coefficient, in
+     * the same order on every run.
+     */
+    void addColumn(double[] values) {
+        columns.add(values);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Called by {@link ClusteringRunner#setCheckpoint(ClusteringCheckpoint)}.
+     */
+    void bind(double[] clustering, float[] strength, int chunkSize, int chunks) {
+        this.clustering = clustering;
+        this.strength = strength;
+        this.chunkSize = chunkSize;
+        saved = new BitSet(chunks);
+        lastSave = System.currentTimeMillis();
+    }
+
+    /**
+     * Reads the file into the arrays of the runner if it holds a checkpoint
+     * of this graph. A file that cannot be read is logged and ignored, the
+     * chunks read before the failure stand.
+     *
+     * @return the number of nodes restored
+     */
+    synchronized int restore() {
+        restoredNodes = 0;
+        if (!file.isFile()) {
+            return 0;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fingerprint
+                        || in.readInt() != clustering.length || in.readInt() != chunkSize || in.readInt() != columns.size()) {
+                    LOGGER.log(Level.INFO, "{0} is the checkpoint of another graph or settings, starting over", file);
+                    return 0;
+                }
+                int chunks = in.readInt();
+                for (int k = 0; k < chunks; k++) {
+                    int chunk = in.readInt();
+                    int start = chunk * chunkSize;
+                    int end = Math.min(start + chunkSize, clustering.length);
+                    for (int node = start; node < end; node++) {
+                        strength[node] = in.readFloat();
+                        clustering[node] = in.readDouble();
+                        for (double[] column : columns) {
+                            column[node] = in.readDouble();
+                        }
+                    }
+                    saved.set(chunk);
+                    restoredNodes += end - start;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Cannot read the checkpoint " + file, ex);
+        }
+        return restoredNodes;
+    }
+
+    int getRestoredNodes() {
+        return restoredNodes;
+    }
+
+    synchronized boolean isSaved(int chunk) {
+        return saved.get(chunk);
+    }
+
+    /**
+     * Nodes whose values are final, restored or computed.
+     */
+    synchronized int getSavedNodes() {
+        int nodes = 0;
+        for (int chunk = saved.nextSetBit(0); chunk >= 0; chunk = saved.nextSetBit(chunk + 1)) {
+            nodes += Math.min(chunkSize, clustering.length - chunk * chunkSize);
+        }
+        return nodes;
+    }
+
+    /**
+     * Called by a worker once every node of a chunk is computed. Marks the
+     * chunk and, if the interval has passed and no write is pending, hands a
+     * write to the background writer.
+     */
+    synchronized void chunkDone(int chunk) {
+        saved.set(chunk);
+        unsaved++;
+        if (!writing && System.currentTimeMillis() - lastSave >= intervalMillis) {
+            writing = true;
+            WRITER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        save();
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.WARNING, "Cannot write the checkpoint " + file, ex);
+                    } finally {
+                        synchronized (ClusteringCheckpoint.this) {
+                            writing = false;
+                            lastSave = System.currentTimeMillis();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the chunks done so far unless the file already holds them all,
+     * after any write in progress.
+     */
+    void save() throws IOException {
+        synchronized (fileLock) {
+            BitSet chunks;
+            int taken;
+            //the values of a marked chunk no longer change, they are read outside the monitor
+            synchronized (this) {
+                if (unsaved == 0 || deleted) {
+                    return;
+                }
+                chunks = (BitSet) saved.clone();
+                taken = unsaved;
+                unsaved = 0;
+            }
+            try {
+                writeFile(chunks);
+            } catch (IOException ex) {
+                synchronized (this) {
+                    unsaved += taken;
+                }
+                throw ex;
+            }
+        }
+    }
+
+    private void writeFile(BitSet chunks) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File part = new File(file.getPath() + ".part");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(part), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(clustering.length);
+            out.writeInt(chunkSize);
+            out.writeInt(columns.size());
+            out.writeInt(chunks.cardinality());
+            for (int chunk = chunks.nextSetBit(0); chunk >= 0; chunk = chunks.nextSetBit(chunk + 1)) {
+                out.writeInt(chunk);
+                int start = chunk * chunkSize;
+                int end = Math.min(start + chunkSize, clustering.length);
+                for (int node = start; node < end; node++) {
+                    out.writeFloat(strength[node]);
+                    out.writeDouble(clustering[node]);
+                    for (double[] column : columns) {
+                        out.writeDouble(column[node]);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the file once the run it was saving is complete, after any
+     * write in progress; no write follows.
+     */
+    void delete() {
+        synchronized (this) {
+            deleted = true;
+        }
+        synchronized (fileLock) {
+            if (file.isFile() && !file.delete()) {
+                LOGGER.log(Level.WARNING, "Cannot delete the checkpoint {0}", file);
+            }
+        }
+    }
+}
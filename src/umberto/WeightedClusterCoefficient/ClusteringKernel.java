@@ -0,0 +1,511 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-node weighted clustering coefficient (Barrat et al.) computed on a
+ * {@link GraphSnapshot}. <p> Triangles around a node <code>i</code> are found
+ * by merging the sorted neighbor list of <code>i</code> with the sorted
+ * neighbor list of each of its neighbors, so the work for a node is
+ * proportional to the length of the lists involved and no graph lookup is
+ * needed. <p> The work of a node can be split over ranges of its neighbor
+ * list, see {@link #sum(int, int, int, double[])}, so that a hub does not
+ * hold a thread for minutes.
+ *
+ * @author Umberto Griffo
+ */
+public class ClusteringKernel {
+
+    private final GraphSnapshot snapshot;
+    /**
+     * Neighbor entries scanned and closed neighbor pairs found per node, null
+     * unless {@link #enableStatistics()} has been called.
+     */
+    private AtomicLongArray scanned;
+    private AtomicLongArray closed;
+    /**
+     * The other definitions and the cube roots of the normalized weights of
+     * the snapshot, null unless {@link #enableDefinitions()} has been called.
+     */
+    private WeightedDefinitions definitions;
+    private float[] roots;
+    /**
+     * Bitmaps of the largest rows of the neighbor and out-neighbor arrays,
+     * null unless {@link #enableHubAdjacency(int, long)} has been called.
+     */
+    private HubAdjacency rowHubs;
+    private HubAdjacency outHubs;
+    /**
+     * Triangles of every edge, null unless
+     * {@link #enableEdgeTriangles(boolean)} has been called.
+     */
+    private EdgeTriangles edgeTriangles;
+    private final ThreadLocal<double[]> definitionSums = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[3];
+        }
+    };
+    private final ThreadLocal<Intersection> intersections = new ThreadLocal<Intersection>() {
+        @Override
+        protected Intersection initialValue() {
+            return new Intersection();
+        }
+    };
+
+    public ClusteringKernel(GraphSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Starts counting the work done for every node, see
+     * {@link #getScanned(int)}. Costs two longs per node.
+     */
+    public void enableStatistics() {
+        scanned = new AtomicLongArray(snapshot.getNodeCount());
+        closed = new AtomicLongArray(snapshot.getNodeCount());
+    }
+
+    public boolean hasStatistics() {
+        return scanned != null;
+    }
+
+    /**
+     * Also computes the Onnela and Zhang-Horvath coefficients of every node in
+     * the same pass, see {@link WeightedDefinitions}. Undirected
+     * snapshots only.
+     *
+     * @throws IllegalArgumentException if the snapshot is directed
+     */
+    public void enableDefinitions() {
+        definitions = new WeightedDefinitions(snapshot);
+        roots = definitions.roots(snapshot.getWeights());
+    }
+
+    /**
+     * Also counts the triangles of every edge and adds up their intensities
+     * in the same pass, see {@link EdgeTriangles}. A closed pair
+     * <code>(j,h)</code> found from a node adds its triangle to the edge
+     * <code>(j,h)</code> only, so each edge gets each of its triangles once,
+     * from the opposite corner. Undirected snapshots only.
+     *
+     * @param concurrent true if nodes, or ranges of a node, are computed on
+     * several threads
+     * @throws IllegalArgumentException if the snapshot is directed
+     */
+    public void enableEdgeTriangles(boolean concurrent) {
+        edgeTriangles = new EdgeTriangles(snapshot, concurrent);
+    }
+
+    /**
+     * Returns the triangles of the edges, null unless
+     * {@link #enableEdgeTriangles(boolean)} has been called.
+     */
+    public EdgeTriangles getEdgeTriangles() {
+        return edgeTriangles;
+    }
+
+    /**
+     * Indexes the rows of at least <code>minDegree</code> entries with
+     * compressed bitmaps, largest first and within <code>maxBytes</code>, so
+     * the triangle checks around hubs become lookups, see
+     * {@link HubAdjacency}. The other rows stay sorted arrays.
+     */
+    public void enableHubAdjacency(int minDegree, long maxBytes) {
+        rowHubs = new HubAdjacency(snapshot.getOffsets(), snapshot.getNeighbors(), minDegree, maxBytes);
+        outHubs = rowHubs;
+        if (snapshot.isDirected()) {
+            outHubs = new HubAdjacency(snapshot.getOutOffsets(), snapshot.getOutNeighbors(), minDegree,
+                    maxBytes - rowHubs.getBytes());
+        }
+    }
+
+    /**
+     * Number of rows indexed with bitmaps.
+     */
+    public int getHubCount() {
+        if (rowHubs == null) {
+            return 0;
+        }
+        return rowHubs.getCount() + (outHubs != rowHubs ? outHubs.getCount() : 0);
+    }
+
+    /**
+     * Bytes used by the bitmaps of the hubs.
+     */
+    public long getHubBytes() {
+        if (rowHubs == null) {
+            return 0;
+        }
+        return rowHubs.getBytes() + (outHubs != rowHubs ? outHubs.getBytes() : 0);
+    }
+
+    /**
+     * The bitmap of the row of a node in the neighbor array, null if the
+     * row is a sorted array.
+     */
+    protected final HubAdjacency.Bitmap rowHub(int node) {
+        return rowHubs != null ? rowHubs.get(node) : null;
+    }
+
+    /**
+     * The bitmap of the row of a node in the out-neighbor array, null if the
+     * row is a sorted array.
+     */
+    protected final HubAdjacency.Bitmap outHub(int node) {
+        return outHubs != null ? outHubs.get(node) : null;
+    }
+
+    /**
+     * Returns true if <code>h</code> is a neighbor of <code>j</code>, an
+     * out-neighbor when directed.
+     */
+    protected final boolean isLinked(int j, int h) {
+        HubAdjacency.Bitmap hub = outHub(j);
+        if (hub != null) {
+            return hub.position(h) >= 0;
+        }
+        if (snapshot.isDirected()) {
+            int[] outOffsets = snapshot.getOutOffsets();
+            return Arrays.binarySearch(snapshot.getOutNeighbors(), outOffsets[j], outOffsets[j + 1], h) >= 0;
+        }
+        int[] offsets = snapshot.getOffsets();
+        return Arrays.binarySearch(snapshot.getNeighbors(), offsets[j], offsets[j + 1], h) >= 0;
+    }
+
+    /**
+     * Returns the other definitions, null unless
+     * {@link #enableDefinitions()} has been called.
+     */
+    public WeightedDefinitions getDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * Adds the work done for a node, the ranges of a split node may be
+     * recorded concurrently.
+     */
+    protected final void record(int node, long scannedEntries, long closedPairs) {
+        if (scanned != null) {
+            scanned.addAndGet(node, scannedEntries);
+            closed.addAndGet(node, closedPairs);
+        }
+    }
+
+    /**
+     * Neighbor list entries read while searching the triangles of the node,
+     * the cost of the node.
+     */
+    public long getScanned(int node) {
+        return scanned != null ? scanned.get(node) : 0;
+    }
+
+    /**
+     * Closed neighbor pairs found while working on the node.
+     */
+    public long getClosed(int node) {
+        return closed != null ? closed.get(node) : 0;
+    }
+
+    /**
+     * Number of triangles found, or -1 if the kernel cannot tell. The node
+     * iterator finds an undirected triangle once from each corner; directed
+     * closed triads do not map to triangles.
+     */
+    public long getTriangleCount() {
+        if (closed == null || snapshot.isDirected()) {
+            return -1;
+        }
+        long total = 0;
+        for (int node = 0; node < closed.length(); node++) {
+            total += closed.get(node);
+        }
+        return total / 3;
+    }
+
+    public GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns true if {@link #prepare(int)} must be called for every node
+     * before any {@link #clustering(int)} call.
+     */
+    public boolean hasPreparation() {
+        return false;
+    }
+
+    /**
+     * Does the work of a node that must be done before any coefficient can be
+     * computed. May be called concurrently for different nodes.
+     */
+    public void prepare(int node) {
+    }
+
+    /**
+     * Does the preparation work of the neighbors at positions
+     * <code>from</code> to <code>to - 1</code> of the row of the node, see
+     * {@link #getRowLength(int, boolean)}. Ranges of the same node may be
+     * prepared concurrently.
+     */
+    public void prepare(int node, int from, int to) {
+    }
+
+    /**
+     * Returns true if the work of a node in the given pass can be split over
+     * ranges of its row.
+     */
+    public boolean isSplittable(boolean prepare) {
+        return !prepare;
+    }
+
+    /**
+     * Length of the list the work of the node goes through in the given pass,
+     * 0 if the work does not go through a list. It is the unit of the ranges
+     * and of the progress.
+     */
+    public int getRowLength(int node, boolean prepare) {
+        if (prepare) {
+            return 0;
+        }
+        int[] offsets = snapshot.getOffsets();
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * Estimated number of neighbor entries scanned for the node in the given
+     * pass: every neighbor merges the row of the node with its own list.
+     */
+    public long getCost(int node, boolean prepare) {
+        if (prepare) {
+            return 0;
+        }
+        int length = getRowLength(node, prepare);
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        int[] lists = snapshot.isDirected() ? snapshot.getOutOffsets() : offsets;
+        long cost = (long) length * length;
+        for (int p = offsets[node]; p < offsets[node + 1]; p++) {
+            int j = neighbors[p];
+            cost += lists[j + 1] - lists[j];
+        }
+        return cost;
+    }
+
+    /**
+     * Number of values {@link #sum(int, int, int, double[])} adds up for a
+     * node.
+     */
+    public int getSumCount() {
+        return definitions != null ? 3 : 1;
+    }
+
+    /**
+     * Adds to <code>sums</code> the contribution of the neighbors at positions
+     * <code>from</code> to <code>to - 1</code> of the row of the node. The
+     * sums of all the ranges give the coefficient through
+     * {@link #clustering(int, double[])}. Ranges of the same node may be
+     * summed concurrently, in different arrays. With the other definitions
+     * the Barrat sum is followed by the sums of
+     * {@link WeightedDefinitions#set(int, double, double)}.
+     */
+    public void sum(int node, int from, int to, double[] sums) {
+        if (definitions != null) {
+            definitionSums(node, from, to, sums);
+            return;
+        }
+        sums[0] += triangleWeight(node, from, to);
+    }
+
+    /**
+     * Returns the coefficient of the node from the sums of all its ranges.
+     */
+    public double clustering(int node, double[] sums) {
+        if (definitions != null) {
+            definitions.set(node, sums[1], sums[2]);
+        }
+        return coefficient(node, sums[0]);
+    }
+
+    /**
+     * Returns the weighted clustering coefficient of the node.
+     * <code>C(i) = 1 / (s(i) (k(i) - 1)) * sum (w(i,j) + w(i,h)) / 2 * a(j,h)</code>
+     * over ordered neighbor pairs, which for undirected graphs is the same as
+     * <code>2 / (s(i) (k(i) - 1))</code> times the sum over closed
+     * unordered pairs.
+     */
+    public double clustering(int node) {
+        if (definitions != null) {
+            double[] sums = definitionSums.get();
+            sums[0] = 0;
+            sums[1] = 0;
+            sums[2] = 0;
+            definitionSums(node, 0, getRowLength(node, false), sums);
+            return clustering(node, sums);
+        }
+        return coefficient(node, triangleWeight(node));
+    }
+
+    /**
+     * Barrat normalization of a triangle weight sum.
+     */
+    protected final double coefficient(int node, double triangleWeight) {
+        int degree = snapshot.getDegree(node);
+        //if a node have degree < 2 means that this node can't form a triangle.
+        if (degree < 2) {
+            return 0;
+        }
+        float strength = snapshot.getStrength(node);
+        if (snapshot.isDirected()) {
+            return (1 / (strength * (degree - 1.0))) * triangleWeight;
+        }
+        return (2 / (strength * (degree - 1.0))) * triangleWeight;
+    }
+
+    /**
+     * Returns the sum of <code>(w(i,j) + w(i,h)) / 2</code> over the
+     * triangles the node belongs to. Undirected: each closed unordered
+     * neighbor pair counts once. Directed: each edge between two neighbors
+     * counts once, so a reciprocated pair counts twice.
+     */
+    public double triangleWeight(int node) {
+        return triangleWeight(node, 0, getRowLength(node, false));
+    }
+
+    /**
+     * Part of {@link #triangleWeight(int)} found from the neighbors at
+     * positions <code>from</code> to <code>to - 1</code> of the row of the
+     * node.
+     */
+    protected double triangleWeight(int node, int from, int to) {
+        if (snapshot.isDirected()) {
+            return directedTriangleWeight(node, from, to);
+        }
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        float[] weights = snapshot.getWeights();
+        int end = offsets[node + 1];
+        double sum = 0;
+        long scannedEntries = 0;
+        long closedPairs = 0;
+        Intersection intersection = intersection();
+        HubAdjacency.Bitmap hub = rowHub(node);
+        for (int p = offsets[node] + from; p < offsets[node] + to; p++) {
+            int j = neighbors[p];
+            //only look at h > j so every unordered pair is seen once
+            int count = intersection.intersect(neighbors, p + 1, end, hub, neighbors, offsets[j], offsets[j + 1], rowHub(j));
+            sum += intersection.halfSum(weights, weights[p], count);
+            if (edgeTriangles != null) {
+                addEdgeTriangles(j, weights, weights[p], intersection, count);
+            }
+            closedPairs += count;
+            scannedEntries += intersection.scanned;
+        }
+        record(node, scannedEntries, closedPairs);
+        return sum;
+    }
+
+    /**
+     * {@link #triangleWeight(int, int, int)} of an undirected node, also
+     * adding up the geometric means and the products of the triangle
+     * weights.
+     */
+    private void definitionSums(int node, int from, int to, double[] sums) {
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        float[] weights = snapshot.getWeights();
+        int end = offsets[node + 1];
+        double barrat = 0;
+        double geometric = 0;
+        double products = 0;
+        long scannedEntries = 0;
+        long closedPairs = 0;
+        Intersection intersection = intersection();
+        HubAdjacency.Bitmap hub = rowHub(node);
+        for (int p = offsets[node] + from; p < offsets[node] + to; p++) {
+            int j = neighbors[p];
+            float wij = weights[p];
+            float rij = roots[p];
+            int count = intersection.intersect(neighbors, p + 1, end, hub, neighbors, offsets[j], offsets[j + 1], rowHub(j));
+            int[] left = intersection.left;
+            int[] right = intersection.right;
+            for (int k = 0; k < count; k++) {
+                int a = left[k];
+                int b = right[k];
+                geometric += (double) rij * roots[a] * roots[b];
+                products += (double) wij * weights[a] * weights[b];
+            }
+            if (edgeTriangles != null) {
+                addEdgeTriangles(j, weights, wij, intersection, count);
+            }
+            barrat += intersection.halfSum(weights, wij, count);
+            closedPairs += count;
+            scannedEntries += intersection.scanned;
+        }
+        record(node, scannedEntries, closedPairs);
+        sums[0] += barrat;
+        sums[1] += geometric;
+        sums[2] += products;
+    }
+
+    /**
+     * Adds the triangles of the last intersection to the edges from
+     * <code>j</code>, the right positions are higher neighbors of
+     * <code>j</code>.
+     */
+    private void addEdgeTriangles(int j, float[] weights, float wij, Intersection intersection, int count) {
+        int[] left = intersection.left;
+        int[] right = intersection.right;
+        for (int k = 0; k < count; k++) {
+            edgeTriangles.add(edgeTriangles.slot(j, right[k]), edgeTriangles.intensity(wij, weights[left[k]], weights[right[k]]));
+        }
+    }
+
+    /**
+     * The {@link Intersection} of the calling thread.
+     */
+    protected final Intersection intersection() {
+        return intersections.get();
+    }
+
+    private double directedTriangleWeight(int node, int from, int to) {
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        float[] weights = snapshot.getWeights();
+        int[] outOffsets = snapshot.getOutOffsets();
+        int[] outNeighbors = snapshot.getOutNeighbors();
+        int start = offsets[node];
+        int end = offsets[node + 1];
+        double sum = 0;
+        long scannedEntries = 0;
+        long closedPairs = 0;
+        Intersection intersection = intersection();
+        HubAdjacency.Bitmap hub = rowHub(node);
+        for (int p = start + from; p < start + to; p++) {
+            int j = neighbors[p];
+            //every edge j->h with h neighbor of node closes a triad
+            int count = intersection.intersect(neighbors, start, end, hub, outNeighbors, outOffsets[j], outOffsets[j + 1], outHub(j));
+            sum += intersection.halfSum(weights, weights[p], count);
+            closedPairs += count;
+            scannedEntries += intersection.scanned;
+        }
+        record(node, scannedEntries, closedPairs);
+        return sum;
+    }
+}
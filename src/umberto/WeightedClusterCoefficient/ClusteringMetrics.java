@@ -0,0 +1,349 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Where the time of a run goes: wall time and allocation per phase, the work
+ * of the triangle search and the nodes that cost the most. <p> Phases are
+ * timed with <code>System.nanoTime()</code> and the per thread allocation
+ * counter of the JVM, a few calls per phase. The per node counters are kept
+ * by the kernel, see {@link ClusteringKernel#enableStatistics()}, and cost two
+ * longs per node, so the metrics can stay on. The last run is published
+ * through JMX, see {@link #publish()}.
+ *
+ * @author Umberto Griffo
+ */
+public class ClusteringMetrics implements ClusteringMetricsMBean {
+
+    public static final String OBJECT_NAME = "umberto.WeightedClusterCoefficient:type=ClusteringMetrics";
+    public static final String CACHE = "result cache";
+    public static final String SNAPSHOT = "snapshot and strengths";
+    public static final String REORDER = "node reordering";
+    public static final String PREPARE = "triangle listing";
+    public static final String CLUSTERING = "clustering";
+    public static final String CHANGE_CHECK = "change check";
+    public static final String WRITE = "attribute write";
+    public static final String DISTRIBUTIONS = "report distributions";
+    public static final String EXPORT = "export";
+    public static final String CHARTS = "report charts";
+    /**
+     * Number of hubs kept, most expensive first.
+     */
+    public static final int TOP_HUBS = 10;
+    private final static Logger LOGGER = Logger.getLogger("org.umberto.weighted_cluster_coefficient");
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION = allocationSupported();
+    /**
+     * Wall nanoseconds and allocated bytes per phase, in execution order.
+     */
+    private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+    private String kernel = "";
+    private int nodeCount;
+    private long entryCount;
+    private int threadCount;
+    private long scanned;
+    private long closed;
+    private long triangles = -1;
+    private int hubBitmaps;
+    private long hubBytes;
+    private String[] hubs = new String[0];
+
+    private static boolean allocationSupported() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return false;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) THREADS;
+        try {
+            if (hotspot.isThreadAllocatedMemorySupported() && !hotspot.isThreadAllocatedMemoryEnabled()) {
+                hotspot.setThreadAllocatedMemoryEnabled(true);
+            }
+            return hotspot.isThreadAllocatedMemoryEnabled();
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        } catch (SecurityException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread, 0 if the JVM cannot tell.
+     */
+    public static long threadAllocatedBytes() {
+        if (!ALLOCATION) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * A phase being timed on the calling thread.
+     */
+    public class Phase {
+
+        private final String name;
+        private final long start = System.nanoTime();
+        private final long allocated = threadAllocatedBytes();
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        public void end() {
+            record(name, System.nanoTime() - start, threadAllocatedBytes() - allocated);
+        }
+    }
+
+    public Phase start(String phase) {
+        return new Phase(phase);
+    }
+
+    /**
+     * Sets the time and allocation of a phase, added at the end of the list
+     * the first time, replaced in place when the phase runs again.
+     */
+    public synchronized void record(String phase, long nanos, long bytes) {
+        phases.put(phase, new long[]{nanos, bytes});
+    }
+
+    /**
+     * Takes the pass times of the runner and the counters of its kernel.
+     */
+    public synchronized void collect(ClusteringRunner runner, ClusteringKernel kernel, int threads) {
+        GraphSnapshot snapshot = kernel.getSnapshot();
+        this.kernel = kernel.getClass().getSimpleName();
+        nodeCount = snapshot.getNodeCount();
+        entryCount = snapshot.getEntryCount();
+        threadCount = threads;
+        if (kernel.hasPreparation()) {
+            record(PREPARE, runner.getPrepareNanos(), runner.getPrepareAllocatedBytes());
+        }
+        record(CLUSTERING, runner.getClusteringNanos(), runner.getClusteringAllocatedBytes());
+        scanned = 0;
+        closed = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            scanned += kernel.getScanned(i);
+            closed += kernel.getClosed(i);
+        }
+        triangles = kernel.getTriangleCount();
+        hubBitmaps = kernel.getHubCount();
+        hubBytes = kernel.getHubBytes();
+    }
+
+    /**
+     * Returns the nodes with the most scanned entries, most expensive first.
+     */
+    public static int[] topHubs(ClusteringKernel kernel, int count) {
+        int n = kernel.getSnapshot().getNodeCount();
+        int[] top = new int[Math.min(count, n)];
+        int size = 0;
+        //insertion into a small sorted array, most nodes fail the first test
+        for (int i = 0; i < n; i++) {
+            long cost = kernel.getScanned(i);
+            if (cost == 0 || (size == top.length && cost <= kernel.getScanned(top[size - 1]))) {
+                continue;
+            }
+            int p = size < top.length ? size++ : size - 1;
+            while (p > 0 && kernel.getScanned(top[p - 1]) < cost) {
+                top[p] = top[p - 1];
+                p--;
+            }
+            top[p] = i;
+        }
+        int[] result = new int[size];
+        System.arraycopy(top, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * Keeps the hubs of the kernel, <code>labels[i]</code> naming node
+     * <code>i</code> of the snapshot.
+     */
+    public synchronized void setHubs(ClusteringKernel kernel, int[] nodes, String[] labels) {
+        GraphSnapshot snapshot = kernel.getSnapshot();
+        hubs = new String[nodes.length];
+        for (int k = 0; k < nodes.length; k++) {
+            int i = nodes[k];
+            hubs[k] = labels[k] + ": " + kernel.getScanned(i) + " entries scanned, degree " + snapshot.getDegree(i);
+        }
+    }
+
+    /**
+     * Registers these metrics as the JMX view of the last run, replacing the
+     * previous ones. Failures are logged, never thrown.
+     */
+    public void publish() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            synchronized (ClusteringMetrics.class) {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+            }
+        } catch (JMException ex) {
+            LOGGER.log(Level.FINE, "Cannot publish the clustering metrics", ex);
+        } catch (SecurityException ex) {
+            LOGGER.log(Level.FINE, "Cannot publish the clustering metrics", ex);
+        }
+    }
+
+    @Override
+    public synchronized String getKernel() {
+        return kernel;
+    }
+
+    @Override
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public synchronized long getEntryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public synchronized int getThreadCount() {
+        return threadCount;
+    }
+
+    @Override
+    public synchronized double getTotalMillis() {
+        long total = 0;
+        for (long[] values : phases.values()) {
+            total += values[0];
+        }
+        return total / 1e6;
+    }
+
+    @Override
+    public synchronized String[] getPhases() {
+        NumberFormat f = new DecimalFormat("#0.000");
+        List<String> lines = new ArrayList<String>(phases.size());
+        for (Map.Entry<String, long[]> e : phases.entrySet()) {
+            lines.add(e.getKey() + ": " + f.format(e.getValue()[0] / 1e6) + " ms"
+                    + (ALLOCATION ? ", " + f.format(e.getValue()[1] / 1e6) + " MB" : ""));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    public synchronized double getPhaseMillis(String phase) {
+        long[] values = phases.get(phase);
+        return values != null ? values[0] / 1e6 : 0;
+    }
+
+    @Override
+    public synchronized long getScannedEntries() {
+        return scanned;
+    }
+
+    @Override
+    public synchronized long getClosedPairs() {
+        return closed;
+    }
+
+    @Override
+    public synchronized long getTriangles() {
+        return triangles;
+    }
+
+    @Override
+    public synchronized int getHubBitmaps() {
+        return hubBitmaps;
+    }
+
+    @Override
+    public synchronized long getHubBitmapBytes() {
+        return hubBytes;
+    }
+
+    @Override
+    public synchronized long getAllocatedBytes() {
+        if (!ALLOCATION) {
+            return -1;
+        }
+        long total = 0;
+        for (long[] values : phases.values()) {
+            total += values[1];
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized String[] getTopHubs() {
+        return hubs.clone();
+    }
+
+    /**
+     * The "Performance" section of the report.
+     */
+    public synchronized String toHtml() {
+        NumberFormat f = new DecimalFormat("#0.000");
+        double total = getTotalMillis();
+        StringBuilder html = new StringBuilder("<h2> Performance: </h2>");
+        html.append("<table border=\"0\" cellpadding=\"2\"><tr><th align=\"left\">Phase</th><th>ms</th><th>%</th>")
+                .append(ALLOCATION ? "<th>MB allocated</th>" : "").append("</tr>");
+        for (Map.Entry<String, long[]> e : phases.entrySet()) {
+            double millis = e.getValue()[0] / 1e6;
+            html.append("<tr><td>").append(e.getKey()).append("</td><td align=\"right\">").append(f.format(millis))
+                    .append("</td><td align=\"right\">").append(new DecimalFormat("#0.0").format(total > 0 ? 100 * millis / total : 0))
+                    .append("</td>");
+            if (ALLOCATION) {
+                html.append("<td align=\"right\">").append(f.format(e.getValue()[1] / 1e6)).append("</td>");
+            }
+            html.append("</tr>");
+        }
+        html.append("</table>");
+        if (kernel.isEmpty()) {
+            return html.toString();
+        }
+        html.append("Kernel: ").append(kernel).append(", ").append(threadCount).append(" thread(s), ")
+                .append(nodeCount).append(" nodes, ").append(entryCount).append(" neighbor entries<br />");
+        html.append("Neighbor entries scanned: ").append(scanned).append("<br />");
+        html.append("Closed neighbor pairs found: ").append(closed).append("<br />");
+        if (triangles >= 0) {
+            html.append("Triangles: ").append(triangles).append("<br />");
+        }
+        html.append("Edge lookups: 0, neighbors are read from a sorted snapshot of the graph<br />");
+        if (hubBitmaps > 0) {
+            html.append("Hub bitmaps: ").append(hubBitmaps).append(" rows, ").append(f.format(hubBytes / 1e6)).append(" MB<br />");
+        }
+        if (hubs.length > 0) {
+            html.append("Most expensive nodes:<br /><ol>");
+            for (String hub : hubs) {
+                html.append("<li>").append(hub).append("</li>");
+            }
+            html.append("</ol>");
+        }
+        return html.toString();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+/**
+ * JMX view of the {@link ClusteringMetrics} of the last run, registered as
+ * {@link ClusteringMetrics#OBJECT_NAME}.
+ *
+ * @author Umberto Griffo
+ */
+public interface ClusteringMetricsMBean {
+
+    String getKernel();
+
+    int getNodeCount();
+
+    long getEntryCount();
+
+    int getThreadCount();
+
+    /**
+     * Sum of the wall times of all the phases.
+     */
+    double getTotalMillis();
+
+    /**
+     * One "name: time, allocation" line per phase, in execution order.
+     */
+    String[] getPhases();
+
+    /**
+     * Wall time of a phase, 0 if it did not run.
+     */
+    double getPhaseMillis(String phase);
+
+    long getScannedEntries();
+
+    long getClosedPairs();
+
+    /**
+     * Triangles found, -1 if the kernel cannot tell.
+     */
+    long getTriangles();
+
+    /**
+     * Rows indexed with compressed bitmaps, see
+     * {@link ClusteringKernel#enableHubAdjacency(int, long)}.
+     */
+    int getHubBitmaps();
+
+    long getHubBitmapBytes();
+
+    /**
+     * Bytes allocated over all the phases, -1 if the JVM cannot tell.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * The most expensive nodes, one "label: scanned entries (degree)" line
+     * each, most expensive first.
+     */
+    String[] getTopHubs();
+}
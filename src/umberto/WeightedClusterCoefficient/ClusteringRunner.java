@@ -0,0 +1,474 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a {@link ClusteringKernel} over every node of its snapshot, on the
+ * calling thread or on a fork-join pool. <p> Nodes are split in a fixed number
+ * of contiguous chunks, each with its own {@link ClusteringAccumulator}. The
+ * chunk accumulators are merged in chunk order, so the result does not depend
+ * on the number of threads. If the kernel needs a preparation pass, it runs
+ * over all the nodes first, with the same chunks. The listener is always
+ * called from the thread that called {@link #run(Listener)}. <p> A node whose
+ * estimated cost is above {@link #STEP_COST} is a hub: its row is cut in
+ * steps of about that cost, grouped in up to {@link #HUB_RANGES} ranges that
+ * run as separate tasks. Progress is reported and cancellation checked after
+ * every step, so neither waits for a whole hub. The ranges depend only on
+ * the cost and are summed in order, so a hub gets the same value whatever
+ * the number of threads. <p> With a {@link ClusteringCheckpoint} every
+ * finished chunk is handed to the checkpoint, and the chunks it restored are
+ * not computed again: their accumulators are rebuilt from the restored
+ * values.
+ *
+ * @author Umberto Griffo
+ */
+public class ClusteringRunner {
+
+    /**
+     * Number of chunks the nodes are split in.
+     */
+    public static final int CHUNKS = 256;
+    /**
+     * How often the calling thread reports progress while workers run.
+     */
+    private static final long POLL_MILLIS = 100;
+    /**
+     * Estimated neighbor entries scanned between two checks of cancellation,
+     * about a millisecond of work.
+     */
+    public static final long STEP_COST = 1 << 20;
+    /**
+     * Maximum number of tasks a hub is split in.
+     */
+    public static final int HUB_RANGES = 64;
+
+    /**
+     * Receives the units of work done so far, see {@link #getTotalWork()}.
+     */
+    public interface Listener {
+
+        void progress(int processedWork);
+    }
+    private final ClusteringKernel kernel;
+    private final int threads;
+    private final ClusteringAccumulator prototype;
+    private final double[] clustering;
+    private final float[] strength;
+    /**
+     * First node past the last one processed, per chunk.
+     */
+    private final int[] reached;
+    private final int chunkSize;
+    private final AtomicLong processed = new AtomicLong();
+    /**
+     * Work units are shifted right by this much when the total does not fit
+     * an int.
+     */
+    private int workShift = -1;
+    private final AtomicLong prepareAllocated = new AtomicLong();
+    private final AtomicLong clusteringAllocated = new AtomicLong();
+    private long prepareNanos;
+    private long clusteringNanos;
+    private ClusteringCheckpoint checkpoint;
+    private volatile boolean cancel;
+
+    public ClusteringRunner(ClusteringKernel kernel, int threads) {
+        this(kernel, threads, defaultAccumulator(kernel.getSnapshot()));
+    }
+
+    /**
+     * @param prototype empty accumulator whose histogram bins are used by
+     * every chunk
+     */
+    public ClusteringRunner(ClusteringKernel kernel, int threads, ClusteringAccumulator prototype) {
+        this(kernel, threads, prototype, kernel.getSnapshot().getNodeCount());
+    }
+
+    /**
+     * Computes only the nodes <code>[0, nodeCount)</code> of the snapshot,
+     * the others are only read as neighbors, see {@link NeighborhoodSnapshot}.
+     *
+     * @throws IllegalArgumentException if the kernel has a preparation pass,
+     * which needs every node
+     */
+    public ClusteringRunner(ClusteringKernel kernel, int threads, ClusteringAccumulator prototype, int nodeCount) {
+        this.kernel = kernel;
+        this.prototype = prototype;
+        this.threads = Math.max(1, threads);
+        int n = Math.min(nodeCount, kernel.getSnapshot().getNodeCount());
+        if (n < kernel.getSnapshot().getNodeCount() && kernel.hasPreparation()) {
+            throw new IllegalArgumentException(kernel.getClass().getSimpleName() + " cannot compute part of the nodes");
+        }
+        this.clustering = new double[n];
+        this.strength = new float[n];
+        this.chunkSize = Math.max(1, (n + CHUNKS - 1) / CHUNKS);
+        this.reached = new int[(n + chunkSize - 1) / chunkSize];
+    }
+
+    /**
+     * Saves the finished chunks to the checkpoint and skips those it restores,
+     * see {@link ClusteringCheckpoint#restore()}. Must be called before
+     * {@link #run(Listener)}.
+     *
+     * @throws IllegalArgumentException if the kernel has a preparation pass,
+     * whose sums span the chunks
+     */
+    void setCheckpoint(ClusteringCheckpoint checkpoint) {
+        if (kernel.hasPreparation()) {
+            throw new IllegalArgumentException(kernel.getClass().getSimpleName() + " cannot resume from a checkpoint");
+        }
+        this.checkpoint = checkpoint;
+        checkpoint.bind(clustering, strength, chunkSize, reached.length);
+    }
+
+    /**
+     * Returns an accumulator with logarithmic strength bins over the range of
+     * the snapshot strengths and linear clustering bins over [0, 1].
+     */
+    public static ClusteringAccumulator defaultAccumulator(GraphSnapshot snapshot) {
+        return new ClusteringAccumulator(
+                strengthHistogram(snapshot, Histogram.Binning.LOGARITHMIC, Histogram.DEFAULT_BINS),
+                new Histogram(Histogram.Binning.LINEAR, Histogram.DEFAULT_BINS, 0, 1));
+    }
+
+    /**
+     * Returns an empty histogram covering the strengths of the snapshot, from
+     * the smallest positive one (or 0 if linear) to the largest.
+     */
+    public static Histogram strengthHistogram(GraphSnapshot snapshot, Histogram.Binning binning, int bins) {
+        return strengthHistogram(snapshot, snapshot.getNodeCount(), binning, bins);
+    }
+
+    /**
+     * Same as {@link #strengthHistogram(GraphSnapshot, Histogram.Binning, int)}
+     * over the nodes <code>[0, nodeCount)</code>.
+     */
+    public static Histogram strengthHistogram(GraphSnapshot snapshot, int nodeCount, Histogram.Binning binning, int bins) {
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            float s = snapshot.getStrength(i);
+            if (s > 0) {
+                min = Math.min(min, s);
+            }
+            max = Math.max(max, s);
+        }
+        if (binning == Histogram.Binning.LINEAR || min > max) {
+            min = 0;
+        }
+        return new Histogram(binning, bins, min, max);
+    }
+
+    /**
+     * Returns the units of work reported through the listener: one per node
+     * and one per row entry (neighbor pair list) of every pass, see
+     * {@link ClusteringKernel#getRowLength(int, boolean)}.
+     */
+    public int getTotalWork() {
+        return (int) (totalWork() >> workShift());
+    }
+
+    private long totalWork() {
+        long total = 0;
+        for (int node = 0; node < clustering.length; node++) {
+            total += 1 + kernel.getRowLength(node, false);
+            if (kernel.hasPreparation()) {
+                total += 1 + kernel.getRowLength(node, true);
+            }
+        }
+        return total;
+    }
+
+    private int workShift() {
+        if (workShift < 0) {
+            long total = totalWork();
+            int shift = 0;
+            while (total >> shift > Integer.MAX_VALUE) {
+                shift++;
+            }
+            workShift = shift;
+        }
+        return workShift;
+    }
+
+    public ClusteringAccumulator run(Listener listener) {
+        if (listener != null) {
+            workShift();
+        }
+        int chunks = reached.length;
+        ClusteringAccumulator[] partials = new ClusteringAccumulator[chunks];
+        if (kernel.hasPreparation()) {
+            runPass(true, partials, listener);
+        }
+        if (!cancel) {
+            runPass(false, partials, listener);
+        }
+        ClusteringAccumulator total = prototype.emptyCopy();
+        for (ClusteringAccumulator partial : partials) {
+            if (partial != null) {
+                total.merge(partial);
+            }
+        }
+        return total;
+    }
+
+    private void runPass(boolean prepare, ClusteringAccumulator[] partials, Listener listener) {
+        long start = System.nanoTime();
+        if (threads == 1) {
+            for (int c = 0; c < partials.length && !cancel; c++) {
+                partials[c] = runChunk(c, prepare, listener);
+            }
+        } else {
+            runParallel(prepare, partials, listener);
+        }
+        if (prepare) {
+            prepareNanos = System.nanoTime() - start;
+        } else {
+            clusteringNanos = System.nanoTime() - start;
+        }
+    }
+
+    private void runParallel(final boolean prepare, final ClusteringAccumulator[] partials, Listener listener) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>(partials.length);
+        for (int c = 0; c < partials.length; c++) {
+            final int chunk = c;
+            futures.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    partials[chunk] = runChunk(chunk, prepare, null);
+                }
+            }));
+        }
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (listener != null) {
+                    listener.progress((int) (processed.get() >> workShift));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            cancel = true;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        if (listener != null) {
+            listener.progress((int) (processed.get() >> workShift));
+        }
+    }
+
+    private ClusteringAccumulator runChunk(int chunk, boolean prepare, Listener listener) {
+        long allocatedBefore = ClusteringMetrics.threadAllocatedBytes();
+        try {
+            return runChunk(chunk, prepare, listener, chunk * chunkSize);
+        } finally {
+            (prepare ? prepareAllocated : clusteringAllocated).addAndGet(ClusteringMetrics.threadAllocatedBytes() - allocatedBefore);
+        }
+    }
+
+    private ClusteringAccumulator runChunk(int chunk, boolean prepare, Listener listener, int start) {
+        int end = Math.min(start + chunkSize, clustering.length);
+        if (prepare) {
+            for (int node = start; node < end && !cancel; node++) {
+                if (isHub(node, true)) {
+                    runHub(node, true, listener);
+                } else {
+                    kernel.prepare(node);
+                    progress(1 + kernel.getRowLength(node, true), listener);
+                }
+            }
+            return null;
+        }
+        ClusteringAccumulator accumulator = prototype.emptyCopy();
+        if (checkpoint != null && checkpoint.isSaved(chunk)) {
+            long units = 0;
+            for (int node = start; node < end; node++) {
+                accumulator.add(strength[node], (float) clustering[node]);
+                units += 1 + kernel.getRowLength(node, false);
+            }
+            reached[chunk] = end;
+            progress(units, listener);
+            return accumulator;
+        }
+        GraphSnapshot snapshot = kernel.getSnapshot();
+        reached[chunk] = start;
+        for (int node = start; node < end && !cancel; node++) {
+            double value;
+            if (isHub(node, false)) {
+                value = runHub(node, false, listener);
+                if (cancel) {
+                    break;
+                }
+            } else {
+                value = kernel.clustering(node);
+                progress(1 + kernel.getRowLength(node, false), listener);
+            }
+            float s = snapshot.getStrength(node);
+            float cc = (float) value;
+            strength[node] = s;
+            clustering[node] = cc;
+            accumulator.add(s, cc);
+            reached[chunk] = node + 1;
+        }
+        if (checkpoint != null && reached[chunk] == end) {
+            checkpoint.chunkDone(chunk);
+        }
+        return accumulator;
+    }
+
+    private boolean isHub(int node, boolean prepare) {
+        return kernel.isSplittable(prepare) && kernel.getRowLength(node, prepare) > 1
+                && kernel.getCost(node, prepare) > STEP_COST;
+    }
+
+    /**
+     * Runs a hub in steps of about {@link #STEP_COST}, forking its ranges when
+     * called from a worker of the pool. Returns the coefficient, or NaN in
+     * the preparation pass or if cancelled.
+     */
+    private double runHub(final int node, final boolean prepare, final Listener listener) {
+        int length = kernel.getRowLength(node, prepare);
+        long cost = kernel.getCost(node, prepare);
+        int steps = (int) Math.min(length, (cost + STEP_COST - 1) / STEP_COST);
+        final int step = (length + steps - 1) / steps;
+        steps = (length + step - 1) / step;
+        int stepsPerRange = (steps + HUB_RANGES - 1) / HUB_RANGES;
+        int ranges = (steps + stepsPerRange - 1) / stepsPerRange;
+        final int rangeLength = stepsPerRange * step;
+        final double[][] sums = new double[ranges][kernel.getSumCount()];
+        if (threads > 1 && ForkJoinTask.inForkJoinPool()) {
+            List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(ranges);
+            for (int r = 0; r < ranges; r++) {
+                final int range = r;
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        runRange(node, prepare, range * rangeLength, rangeLength, step, sums[range], listener);
+                    }
+                });
+            }
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            for (int r = 0; r < ranges && !cancel; r++) {
+                runRange(node, prepare, r * rangeLength, rangeLength, step, sums[r], listener);
+            }
+        }
+        if (cancel) {
+            return Double.NaN;
+        }
+        progress(1, listener);
+        if (prepare) {
+            return Double.NaN;
+        }
+        double[] total = sums[0];
+        for (int r = 1; r < ranges; r++) {
+            for (int k = 0; k < total.length; k++) {
+                total[k] += sums[r][k];
+            }
+        }
+        return kernel.clustering(node, total);
+    }
+
+    private void runRange(int node, boolean prepare, int from, int rangeLength, int step, double[] sums, Listener listener) {
+        int to = Math.min(from + rangeLength, kernel.getRowLength(node, prepare));
+        for (int p = from; p < to && !cancel; p += step) {
+            int stepEnd = Math.min(p + step, to);
+            if (prepare) {
+                kernel.prepare(node, p, stepEnd);
+            } else {
+                kernel.sum(node, p, stepEnd, sums);
+            }
+            progress(stepEnd - p, listener);
+        }
+    }
+
+    private void progress(long units, Listener listener) {
+        long done = processed.addAndGet(units);
+        if (listener != null) {
+            listener.progress((int) (done >> workShift));
+        }
+    }
+
+    public void cancel() {
+        cancel = true;
+    }
+
+    /**
+     * Wall time of the preparation pass of the last run, 0 if the kernel has
+     * none.
+     */
+    public long getPrepareNanos() {
+        return prepareNanos;
+    }
+
+    /**
+     * Wall time of the clustering pass of the last run.
+     */
+    public long getClusteringNanos() {
+        return clusteringNanos;
+    }
+
+    /**
+     * Bytes allocated by the threads during the preparation pass, 0 if the JVM
+     * cannot tell.
+     */
+    public long getPrepareAllocatedBytes() {
+        return prepareAllocated.get();
+    }
+
+    /**
+     * Bytes allocated by the threads during the clustering pass, 0 if the JVM
+     * cannot tell.
+     */
+    public long getClusteringAllocatedBytes() {
+        return clusteringAllocated.get();
+    }
+
+    public boolean isCancelled() {
+        return cancel;
+    }
+
+    /**
+     * Returns true if the node has been processed by the last run.
+     */
+    public boolean isProcessed(int node) {
+        int chunk = node / chunkSize;
+        return node < reached[chunk];
+    }
+
+    public double[] getClustering() {
+        return clustering;
+    }
+
+    public float[] getStrength() {
+        return strength;
+    }
+}
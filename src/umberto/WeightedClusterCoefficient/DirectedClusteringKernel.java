@@ -0,0 +1,247 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Arrays;
+
+/**
+ * Directed {@link ClusteringKernel} that also computes the four directed
+ * weighted clustering coefficients of Fagiolo (cycle, middleman, in and out)
+ * from the same pass. <p> For every neighbor <code>j</code> of a node
+ * <code>i</code>, the out-list of <code>j</code> is merged once with the
+ * neighbor list of <code>i</code>. Every common node <code>h</code> is a
+ * closed triad and is classified with the directions of the
+ * <code>(i,j)</code> and <code>(i,h)</code> pairs. Fagiolo weights are
+ * <code>(w / max w)^(1/3)</code>, and a missing edge has weight 0. <p>
+ * Reference: G. Fagiolo (2007). "Clustering in complex directed networks".
+ * Physical Review E 76, 026107.
+ *
+ * @author Umberto Griffo
+ */
+public class DirectedClusteringKernel extends ClusteringKernel {
+
+    public static final int CYCLE = 0;
+    public static final int MIDDLEMAN = 1;
+    public static final int IN = 2;
+    public static final int OUT = 3;
+    public static final String[] PATTERNS = {"cycle", "middleman", "in", "out"};
+    /**
+     * Fagiolo weights of the out and in adjacency of the snapshot.
+     */
+    private final float[] outRoots;
+    private final float[] inRoots;
+    private final double[][] patterns;
+    private final ThreadLocal<Row> rows = new ThreadLocal<Row>() {
+        @Override
+        protected Row initialValue() {
+            return new Row();
+        }
+    };
+
+    public DirectedClusteringKernel(GraphSnapshot snapshot) {
+        super(snapshot);
+        if (!snapshot.isDirected()) {
+            throw new IllegalArgumentException("Directed snapshot expected");
+        }
+        float max = 0;
+        for (float w : snapshot.getOutWeights()) {
+            max = Math.max(max, w);
+        }
+        if (max <= 0) {
+            max = 1;
+        }
+        outRoots = roots(snapshot.getOutWeights(), max);
+        inRoots = roots(snapshot.getInWeights(), max);
+        patterns = new double[PATTERNS.length][snapshot.getNodeCount()];
+    }
+
+    private static float[] roots(float[] weights, float max) {
+        float[] roots = new float[weights.length];
+        for (int p = 0; p < weights.length; p++) {
+            roots[p] = (float) Math.cbrt(weights[p] / max);
+        }
+        return roots;
+    }
+
+    /**
+     * Returns the per-node values of a pattern, filled as nodes are
+     * processed.
+     *
+     * @param pattern one of {@link #CYCLE}, {@link #MIDDLEMAN}, {@link #IN},
+     * {@link #OUT}
+     */
+    public double[] getPattern(int pattern) {
+        return patterns[pattern];
+    }
+
+    @Override
+    public int getSumCount() {
+        return 1 + PATTERNS.length;
+    }
+
+    @Override
+    public double triangleWeight(int node) {
+        double[] sums = rows.get().sums;
+        Arrays.fill(sums, 0);
+        sum(node, 0, getRowLength(node, false), sums);
+        return setPatterns(node, sums);
+    }
+
+    @Override
+    public double clustering(int node, double[] sums) {
+        return coefficient(node, setPatterns(node, sums));
+    }
+
+    /**
+     * Adds the Barrat sum, then the cycle, middleman, in and out sums.
+     */
+    @Override
+    public void sum(int node, int from, int to, double[] sums) {
+        GraphSnapshot snapshot = getSnapshot();
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        float[] weights = snapshot.getWeights();
+        int[] outOffsets = snapshot.getOutOffsets();
+        int[] outNeighbors = snapshot.getOutNeighbors();
+        int start = offsets[node];
+        int end = offsets[node + 1];
+        Row row = rows.get();
+        row.load(snapshot, node, outRoots, inRoots);
+        float[] rOut = row.out;
+        float[] rIn = row.in;
+
+        double barrat = 0;
+        double cycle = 0;
+        double middleman = 0;
+        double in = 0;
+        double out = 0;
+        long scannedEntries = 0;
+        long closedPairs = 0;
+        Intersection intersection = intersection();
+        HubAdjacency.Bitmap hub = rowHub(node);
+        for (int p = start + from; p < start + to; p++) {
+            int j = neighbors[p];
+            float wij = weights[p];
+            float ij = rOut[p - start];
+            float ji = rIn[p - start];
+            int count = intersection.intersect(neighbors, start, end, hub, outNeighbors, outOffsets[j], outOffsets[j + 1], outHub(j));
+            int[] left = intersection.left;
+            int[] right = intersection.right;
+            for (int k = 0; k < count; k++) {
+                //closed triad i-j, j->h, i-h
+                int a = left[k] - start;
+                float jh = outRoots[right[k]];
+                float ih = rOut[a];
+                float hi = rIn[a];
+                cycle += ij * jh * hi;
+                out += ij * jh * ih;
+                in += ji * jh * hi;
+                middleman += ji * jh * ih;
+            }
+            barrat += intersection.halfSum(weights, wij, count);
+            closedPairs += count;
+            scannedEntries += intersection.scanned;
+        }
+        record(node, scannedEntries, closedPairs);
+        sums[0] += barrat;
+        sums[1 + CYCLE] += cycle;
+        sums[1 + MIDDLEMAN] += middleman;
+        sums[1 + IN] += in;
+        sums[1 + OUT] += out;
+    }
+
+    /**
+     * Normalizes the pattern sums of the node and returns its Barrat sum.
+     */
+    private double setPatterns(int node, double[] sums) {
+        GraphSnapshot snapshot = getSnapshot();
+        int reciprocated = rows.get().load(snapshot, node, outRoots, inRoots);
+        int[] outOffsets = snapshot.getOutOffsets();
+        int dOut = outOffsets[node + 1] - outOffsets[node];
+        int[] inOffsets = snapshot.getInOffsets();
+        int dIn = inOffsets[node + 1] - inOffsets[node];
+        patterns[CYCLE][node] = ratio(sums[1 + CYCLE], (double) dIn * dOut - reciprocated);
+        patterns[MIDDLEMAN][node] = ratio(sums[1 + MIDDLEMAN], (double) dIn * dOut - reciprocated);
+        patterns[IN][node] = ratio(sums[1 + IN], (double) dIn * (dIn - 1));
+        patterns[OUT][node] = ratio(sums[1 + OUT], (double) dOut * (dOut - 1));
+        return sums[0];
+    }
+
+    private static double ratio(double value, double denominator) {
+        return denominator > 0 ? value / denominator : 0;
+    }
+
+    /**
+     * Out and in Fagiolo weights of a node aligned with its union row, reused
+     * by a thread from node to node.
+     */
+    private static class Row {
+
+        float[] out = new float[16];
+        float[] in = new float[16];
+        double[] sums = new double[1 + PATTERNS.length];
+        int node = -1;
+        int reciprocated;
+
+        /**
+         * Fills the row of the node, unless already loaded by the previous
+         * range, and returns the number of reciprocated neighbors.
+         */
+        int load(GraphSnapshot snapshot, int node, float[] outRoots, float[] inRoots) {
+            if (node == this.node) {
+                return reciprocated;
+            }
+            int[] offsets = snapshot.getOffsets();
+            int[] neighbors = snapshot.getNeighbors();
+            int length = offsets[node + 1] - offsets[node];
+            if (out.length < length) {
+                out = new float[Math.max(length, out.length * 2)];
+                in = new float[out.length];
+            }
+            int[] outOffsets = snapshot.getOutOffsets();
+            int[] outNeighbors = snapshot.getOutNeighbors();
+            int[] inOffsets = snapshot.getInOffsets();
+            int[] inNeighbors = snapshot.getInNeighbors();
+            int o = outOffsets[node];
+            int oEnd = outOffsets[node + 1];
+            int i = inOffsets[node];
+            int iEnd = inOffsets[node + 1];
+            int reciprocated = 0;
+            for (int k = 0; k < length; k++) {
+                int h = neighbors[offsets[node] + k];
+                boolean both = true;
+                if (o < oEnd && outNeighbors[o] == h) {
+                    out[k] = outRoots[o++];
+                } else {
+                    out[k] = 0;
+                    both = false;
+                }
+                if (i < iEnd && inNeighbors[i] == h) {
+                    in[k] = inRoots[i++];
+                } else {
+                    in[k] = 0;
+                    both = false;
+                }
+                if (both) {
+                    reciprocated++;
+                }
+            }
+            this.node = node;
+            this.reciprocated = reciprocated;
+            return reciprocated;
+        }
+    }
+}
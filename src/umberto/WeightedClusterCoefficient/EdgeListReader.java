@@ -0,0 +1,224 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a weighted edge list into a {@link GraphSnapshot}, without the Gephi
+ * graph model. <p> Every line is <code>source target [weight]</code>, the
+ * fields separated by spaces, tabs, commas or semicolons. A missing weight is
+ * 1. Empty lines and lines starting with <code>#</code> or <code>%</code> are
+ * skipped, so is a first line that is a header: one whose weight is not a
+ * number, or one of two fields that are not numbers followed by a line whose
+ * ids are numbers (<code>source target</code> over numeric ids). A first
+ * line of two names followed by names is an edge, there is no telling it
+ * from a header. Node ids are any string; node <code>i</code> of the
+ * snapshot is the <code>i</code>-th id met in the file, see
+ * {@link #getLabels()}. Files ending in <code>.gz</code> are decompressed on
+ * the fly.
+ *
+ * @author Umberto Griffo
+ */
+public class EdgeListReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final boolean directed;
+    private final List<String> labels = new ArrayList<String>();
+    private final Map<String, Integer> indices = new HashMap<String, Integer>();
+
+    /**
+     * @param directed if false every line is an undirected edge
+     */
+    public EdgeListReader(boolean directed) {
+        this.directed = directed;
+    }
+
+    /**
+     * Receives the edges of a file in file order.
+     */
+    interface Visitor {
+
+        void edge(String source, String target, float weight, int lineNumber) throws IOException;
+    }
+
+    public GraphSnapshot read(File file) throws IOException {
+        Reader reader = open(file);
+        try {
+            return read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads every line of the reader, which is not closed.
+     */
+    public GraphSnapshot read(Reader reader) throws IOException {
+        labels.clear();
+        indices.clear();
+        final GraphSnapshot.Builder builder = new GraphSnapshot.Builder(0, directed, 1 << 16);
+        scan(reader, new Visitor() {
+            @Override
+            public void edge(String source, String target, float weight, int lineNumber) {
+                int s = index(source);
+                int t = index(target);
+                builder.ensureNodeCount(labels.size());
+                builder.addEdge(s, t, weight);
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Opens the file for reading, decompressing it if it ends in
+     * <code>.gz</code>.
+     */
+    static Reader open(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            if (file.getName().endsWith(".gz")) {
+                in = new GZIPInputStream(in, 1 << 16);
+            }
+            return new InputStreamReader(in, UTF8);
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Parses every line of the reader and passes the edges to the visitor.
+     */
+    static void scan(Reader reader, Visitor visitor) throws IOException {
+        BufferedReader lines = new BufferedReader(reader, 1 << 16);
+        String[] fields = new String[3];
+        boolean first = true;
+        //a first line of two names, a header if the ids that follow are numbers
+        String[] held = null;
+        int heldLineNumber = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            int count = split(line, fields);
+            if (count == 0) {
+                continue;
+            }
+            if (count < 2) {
+                throw new IOException("Line " + lineNumber + ": expected 'source target [weight]' but was '" + line + "'");
+            }
+            float weight = 1;
+            if (count > 2) {
+                try {
+                    weight = Float.parseFloat(fields[2]);
+                } catch (NumberFormatException ex) {
+                    if (first) {
+                        //header line
+                        first = false;
+                        continue;
+                    }
+                    throw new IOException("Line " + lineNumber + ": invalid weight '" + fields[2] + "'");
+                }
+            } else if (first && !isNumber(fields[0]) && !isNumber(fields[1])) {
+                first = false;
+                held = new String[]{fields[0], fields[1]};
+                heldLineNumber = lineNumber;
+                continue;
+            }
+            first = false;
+            if (held != null) {
+                if (!isNumber(fields[0]) || !isNumber(fields[1])) {
+                    visitor.edge(held[0], held[1], 1, heldLineNumber);
+                }
+                held = null;
+            }
+            visitor.edge(fields[0], fields[1], weight, lineNumber);
+        }
+        if (held != null) {
+            visitor.edge(held[0], held[1], 1, heldLineNumber);
+        }
+    }
+
+    /**
+     * Node ids of the last file read, in snapshot order.
+     */
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    private int index(String label) {
+        Integer index = indices.get(label);
+        if (index == null) {
+            index = labels.size();
+            indices.put(label, index);
+            labels.add(label);
+        }
+        return index;
+    }
+
+    /**
+     * Splits the line in at most <code>fields.length</code> fields and
+     * returns how many were found, 0 for a blank or comment line.
+     */
+    private static int split(String line, String[] fields) {
+        int count = 0;
+        int length = line.length();
+        int p = 0;
+        while (p < length && count < fields.length) {
+            while (p < length && isSeparator(line.charAt(p))) {
+                p++;
+            }
+            if (p == length) {
+                break;
+            }
+            if (count == 0 && (line.charAt(p) == '#' || line.charAt(p) == '%')) {
+                return 0;
+            }
+            int start = p;
+            while (p < length && !isSeparator(line.charAt(p))) {
+                p++;
+            }
+            fields[count++] = line.substring(start, p);
+        }
+        return count;
+    }
+
+    private static boolean isNumber(String field) {
+        try {
+            Double.parseDouble(field);
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == ',' || c == ';';
+    }
+}
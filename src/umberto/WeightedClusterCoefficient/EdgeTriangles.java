@@ -0,0 +1,149 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-edge triangle participation, filled by an undirected kernel in its
+ * triangle pass, see {@link ClusteringKernel#enableEdgeTriangles(boolean)}.
+ * For an edge <code>(u,v)</code>: the number of triangles it closes, and its
+ * triangle intensity <code>sum (ŵ(u,v) ŵ(u,h) ŵ(v,h))^(1/3)</code> over those
+ * triangles, with <code>ŵ = w / max w</code> (Onnela et al.). <p> An edge has
+ * one slot, the entry of the row of its lower index end: the entries of a row
+ * holding a higher index neighbor are the end of the row, so the slot of an
+ * entry is its position past that point plus the slots of the rows before.
+ * <p> When the kernel runs on several threads the slots are updated with
+ * atomic increments and compare-and-set, the intensities can then differ
+ * from a serial run in the last bits.
+ *
+ * @author Umberto Griffo
+ */
+public class EdgeTriangles {
+
+    private final GraphSnapshot snapshot;
+    private final float maxWeight;
+    /**
+     * First position of each row holding a higher index neighbor.
+     */
+    private final int[] upper;
+    /**
+     * First slot of each row.
+     */
+    private final int[] slots;
+    private final int[] counts;
+    private final double[] intensities;
+    private final AtomicIntegerArray concurrentCounts;
+    private final AtomicLongArray concurrentIntensities;
+
+    EdgeTriangles(GraphSnapshot snapshot, boolean concurrent) {
+        if (snapshot.isDirected()) {
+            throw new IllegalArgumentException("Undirected snapshot expected");
+        }
+        this.snapshot = snapshot;
+        int n = snapshot.getNodeCount();
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        float max = 0;
+        for (float w : snapshot.getWeights()) {
+            max = Math.max(max, w);
+        }
+        maxWeight = max > 0 ? max : 1;
+        upper = new int[n];
+        slots = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            //the rows hold no self loop, the insertion point of u is its first higher neighbor
+            upper[u] = -Arrays.binarySearch(neighbors, offsets[u], offsets[u + 1], u) - 1;
+            slots[u + 1] = slots[u] + offsets[u + 1] - upper[u];
+        }
+        if (concurrent) {
+            counts = null;
+            intensities = null;
+            concurrentCounts = new AtomicIntegerArray(slots[n]);
+            concurrentIntensities = new AtomicLongArray(slots[n]);
+        } else {
+            counts = new int[slots[n]];
+            intensities = new double[slots[n]];
+            concurrentCounts = null;
+            concurrentIntensities = null;
+        }
+    }
+
+    /**
+     * Number of edges, one slot each.
+     */
+    public int getEdgeCount() {
+        return slots[slots.length - 1];
+    }
+
+    /**
+     * Slot of the entry at <code>position</code> of the row of
+     * <code>node</code>, which must hold a higher index neighbor.
+     */
+    int slot(int node, int position) {
+        return slots[node] + position - upper[node];
+    }
+
+    /**
+     * Slot of the edge between two nodes, -1 if they are not linked.
+     */
+    public int find(int u, int v) {
+        int low = Math.min(u, v);
+        int high = Math.max(u, v);
+        int[] offsets = snapshot.getOffsets();
+        int p = Arrays.binarySearch(snapshot.getNeighbors(), upper[low], offsets[low + 1], high);
+        return p >= 0 ? slot(low, p) : -1;
+    }
+
+    /**
+     * Intensity of the triangle of the given raw weights.
+     */
+    double intensity(float a, float b, float c) {
+        return Math.cbrt((double) a * b * c) / maxWeight;
+    }
+
+    /**
+     * Adds one triangle of the given intensity to the edge of a slot.
+     */
+    void add(int slot, double intensity) {
+        if (counts != null) {
+            counts[slot]++;
+            intensities[slot] += intensity;
+            return;
+        }
+        concurrentCounts.incrementAndGet(slot);
+        long current;
+        do {
+            current = concurrentIntensities.get(slot);
+        } while (!concurrentIntensities.compareAndSet(slot, current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + intensity)));
+    }
+
+    /**
+     * Number of triangles closed by the edge of a slot.
+     */
+    public int getTriangles(int slot) {
+        return counts != null ? counts[slot] : concurrentCounts.get(slot);
+    }
+
+    /**
+     * Sum of the intensities of the triangles closed by the edge of a slot.
+     */
+    public double getIntensity(int slot) {
+        return intensities != null ? intensities[slot] : Double.longBitsToDouble(concurrentIntensities.get(slot));
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link ClusteringKernel} that lists every triangle exactly once with the
+ * forward (compact-forward) method. <p> Nodes are ranked by degree, and each
+ * edge is oriented from the lower to the higher ranked end. A triangle is
+ * found only from its lowest ranked corner, by intersecting the oriented
+ * lists of that corner and of its middle corner, and its weighted
+ * contribution is added to all three corners. The work is
+ * <code>O(m^1.5)</code> instead of <code>O(sum d^2)</code>. <p>
+ * {@link #prepare(int)} enumerates the triangles whose lowest corner is the
+ * node. When the kernel is concurrent the corner sums are updated with
+ * compare-and-set, so the sums can differ from a serial run in the last bits.
+ *
+ * @author Umberto Griffo
+ */
+public class ForwardTriangleKernel extends ClusteringKernel {
+
+    /**
+     * Oriented adjacency, rows sorted by node index.
+     */
+    private final int[] offsets;
+    private final int[] neighbors;
+    /**
+     * Weight of the pair seen from the row node and from the neighbor.
+     */
+    private final float[] weights;
+    private final float[] backWeights;
+    /**
+     * Number of edges between the pair: 1 if undirected, 1 or 2 if directed.
+     */
+    private final byte[] links;
+    private final boolean concurrent;
+    private final double[] sums;
+    private final AtomicLongArray concurrentSums;
+    /**
+     * Cube roots of the normalized oriented weights and the sums of the other
+     * definitions, null unless {@link #enableDefinitions()} has been called.
+     */
+    private float[] roots;
+    private double[] geometricSums;
+    private double[] productSums;
+    private AtomicLongArray concurrentGeometricSums;
+    private AtomicLongArray concurrentProductSums;
+    /**
+     * Edge slot of every oriented entry, null unless
+     * {@link #enableEdgeTriangles(boolean)} has been called.
+     */
+    private int[] edgeSlots;
+
+    public ForwardTriangleKernel(GraphSnapshot snapshot, boolean concurrent) {
+        super(snapshot);
+        int n = snapshot.getNodeCount();
+        int[] uOffsets = snapshot.getOffsets();
+        int[] uNeighbors = snapshot.getNeighbors();
+        float[] uWeights = snapshot.getWeights();
+        int[] rank = rank(n, uOffsets);
+
+        offsets = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            int forward = 0;
+            for (int p = uOffsets[u]; p < uOffsets[u + 1]; p++) {
+                if (rank[uNeighbors[p]] > rank[u]) {
+                    forward++;
+                }
+            }
+            offsets[u + 1] = offsets[u] + forward;
+        }
+        neighbors = new int[offsets[n]];
+        weights = new float[offsets[n]];
+        boolean directed = snapshot.isDirected();
+        backWeights = directed ? new float[offsets[n]] : weights;
+        links = new byte[offsets[n]];
+        int write = 0;
+        for (int u = 0; u < n; u++) {
+            for (int p = uOffsets[u]; p < uOffsets[u + 1]; p++) {
+                int v = uNeighbors[p];
+                if (rank[v] > rank[u]) {
+                    neighbors[write] = v;
+                    weights[write] = uWeights[p];
+                    if (directed) {
+                        int back = Arrays.binarySearch(uNeighbors, uOffsets[v], uOffsets[v + 1], u);
+                        backWeights[write] = uWeights[back];
+                        links[write] = (byte) (countLink(snapshot, u, v) + countLink(snapshot, v, u));
+                    } else {
+                        links[write] = 1;
+                    }
+                    write++;
+                }
+            }
+        }
+        this.concurrent = concurrent;
+        if (concurrent) {
+            sums = null;
+            concurrentSums = new AtomicLongArray(n);
+        } else {
+            sums = new double[n];
+            concurrentSums = null;
+        }
+    }
+
+    /**
+     * Ranks the nodes by increasing degree, ties broken by index.
+     */
+    private static int[] rank(int n, int[] offsets) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) (offsets[i + 1] - offsets[i]) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] rank = new int[n];
+        for (int r = 0; r < n; r++) {
+            rank[(int) keys[r]] = r;
+        }
+        return rank;
+    }
+
+    private static int countLink(GraphSnapshot snapshot, int source, int target) {
+        int[] outOffsets = snapshot.getOutOffsets();
+        return Arrays.binarySearch(snapshot.getOutNeighbors(), outOffsets[source], outOffsets[source + 1], target) >= 0 ? 1 : 0;
+    }
+
+    /**
+     * Nothing to index: every oriented list is bounded by the square root of
+     * twice the edge count, hubs keep only their edges to higher ranked
+     * nodes.
+     */
+    @Override
+    public void enableHubAdjacency(int minDegree, long maxBytes) {
+    }
+
+    /**
+     * Each triangle also adds the geometric mean of its normalized weights and
+     * the product of its weights to its three corners.
+     */
+    @Override
+    public void enableDefinitions() {
+        super.enableDefinitions();
+        int n = getSnapshot().getNodeCount();
+        roots = getDefinitions().roots(weights);
+        if (concurrent) {
+            concurrentGeometricSums = new AtomicLongArray(n);
+            concurrentProductSums = new AtomicLongArray(n);
+        } else {
+            geometricSums = new double[n];
+            productSums = new double[n];
+        }
+    }
+
+    /**
+     * Each triangle is added to its three edges when it is listed.
+     */
+    @Override
+    public void enableEdgeTriangles(boolean concurrent) {
+        super.enableEdgeTriangles(concurrent);
+        EdgeTriangles edgeTriangles = getEdgeTriangles();
+        int n = getSnapshot().getNodeCount();
+        edgeSlots = new int[offsets[n]];
+        for (int u = 0; u < n; u++) {
+            for (int pv = offsets[u]; pv < offsets[u + 1]; pv++) {
+                edgeSlots[pv] = edgeTriangles.find(u, neighbors[pv]);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasPreparation() {
+        return true;
+    }
+
+    /**
+     * Only the triangle listing is split, the clustering pass is a division
+     * per node.
+     */
+    @Override
+    public boolean isSplittable(boolean prepare) {
+        return prepare;
+    }
+
+    @Override
+    public int getRowLength(int node, boolean prepare) {
+        return prepare ? offsets[node + 1] - offsets[node] : 0;
+    }
+
+    /**
+     * Every oriented neighbor merges the oriented row of the node with its
+     * own oriented list.
+     */
+    @Override
+    public long getCost(int node, boolean prepare) {
+        if (!prepare) {
+            return 1;
+        }
+        long length = offsets[node + 1] - offsets[node];
+        long cost = length * length;
+        for (int pv = offsets[node]; pv < offsets[node + 1]; pv++) {
+            int v = neighbors[pv];
+            cost += offsets[v + 1] - offsets[v];
+        }
+        return cost;
+    }
+
+    @Override
+    public void prepare(int u) {
+        prepare(u, 0, offsets[u + 1] - offsets[u]);
+    }
+
+    @Override
+    public void prepare(int u, int from, int to) {
+        int end = offsets[u + 1];
+        long scannedEntries = 0;
+        long triangles = 0;
+        Intersection intersection = intersection();
+        EdgeTriangles edgeTriangles = getEdgeTriangles();
+        for (int pv = offsets[u] + from; pv < offsets[u] + to; pv++) {
+            int v = neighbors[pv];
+            int count = intersection.intersect(neighbors, offsets[u], end, neighbors, offsets[v], offsets[v + 1]);
+            int[] left = intersection.left;
+            int[] right = intersection.right;
+            for (int k = 0; k < count; k++) {
+                int px = left[k];
+                int qx = right[k];
+                int x = neighbors[px];
+                add(sums, concurrentSums, u, links[qx] * (weights[pv] + weights[px]) / 2.0);
+                add(sums, concurrentSums, v, links[px] * (backWeights[pv] + weights[qx]) / 2.0);
+                add(sums, concurrentSums, x, links[pv] * (backWeights[px] + backWeights[qx]) / 2.0);
+                if (edgeTriangles != null) {
+                    double intensity = edgeTriangles.intensity(weights[pv], weights[px], weights[qx]);
+                    edgeTriangles.add(edgeSlots[pv], intensity);
+                    edgeTriangles.add(edgeSlots[px], intensity);
+                    edgeTriangles.add(edgeSlots[qx], intensity);
+                }
+                if (roots != null) {
+                    double geometric = (double) roots[pv] * roots[px] * roots[qx];
+                    double product = (double) weights[pv] * weights[px] * weights[qx];
+                    add(geometricSums, concurrentGeometricSums, u, geometric);
+                    add(geometricSums, concurrentGeometricSums, v, geometric);
+                    add(geometricSums, concurrentGeometricSums, x, geometric);
+                    add(productSums, concurrentProductSums, u, product);
+                    add(productSums, concurrentProductSums, v, product);
+                    add(productSums, concurrentProductSums, x, product);
+                }
+            }
+            triangles += count;
+            scannedEntries += intersection.scanned;
+        }
+        record(u, scannedEntries, triangles);
+    }
+
+    /**
+     * Each triangle is listed once, from its lowest ranked corner.
+     */
+    @Override
+    public long getTriangleCount() {
+        if (!hasStatistics()) {
+            return -1;
+        }
+        long total = 0;
+        for (int node = 0; node < getSnapshot().getNodeCount(); node++) {
+            total += getClosed(node);
+        }
+        return total;
+    }
+
+    private static void add(double[] sums, AtomicLongArray concurrentSums, int node, double value) {
+        if (sums != null) {
+            sums[node] += value;
+            return;
+        }
+        long current;
+        do {
+            current = concurrentSums.get(node);
+        } while (!concurrentSums.compareAndSet(node, current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value)));
+    }
+
+    private static double get(double[] sums, AtomicLongArray concurrentSums, int node) {
+        return sums != null ? sums[node] : Double.longBitsToDouble(concurrentSums.get(node));
+    }
+
+    @Override
+    public double triangleWeight(int node) {
+        return get(sums, concurrentSums, node);
+    }
+
+    @Override
+    public double clustering(int node) {
+        if (roots != null) {
+            getDefinitions().set(node, get(geometricSums, concurrentGeometricSums, node),
+                    get(productSums, concurrentProductSums, node));
+        }
+        return coefficient(node, triangleWeight(node));
+    }
+}
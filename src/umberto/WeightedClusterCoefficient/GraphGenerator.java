@@ -0,0 +1,139 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic weighted graphs for benchmarks and checks. The same arguments and
+ * seed always give the same graph. Each generator returns the
+ * {@link GraphSnapshot.Builder} holding the edges, so the snapshot can be
+ * built as many times as needed. Weights are drawn from a log-normal law with
+ * median 1, so strengths spread over orders of magnitude as in real weighted
+ * networks.
+ *
+ * @author Umberto Griffo
+ */
+public class GraphGenerator {
+
+    private GraphGenerator() {
+    }
+
+    /**
+     * Erdős–Rényi graph with <code>n * averageDegree / 2</code> edges between
+     * uniformly drawn node pairs, no self loops.
+     */
+    public static GraphSnapshot.Builder erdosRenyi(int n, double averageDegree, boolean directed, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long edges = (long) (n * averageDegree / 2);
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder(n, directed, (int) Math.min(Integer.MAX_VALUE - 8, edges));
+        if (n < 2) {
+            return builder;
+        }
+        for (long e = 0; e < edges; e++) {
+            int source = random.nextInt(n);
+            int target = random.nextInt(n - 1);
+            if (target >= source) {
+                target++;
+            }
+            builder.addEdge(source, target, weight(random));
+        }
+        return builder;
+    }
+
+    /**
+     * Barabási–Albert preferential attachment graph: every new node links to
+     * <code>m</code> earlier nodes drawn proportionally to their degree, so a
+     * few hubs get most of the edges. When directed, edges go from the new
+     * node to the earlier ones.
+     */
+    public static GraphSnapshot.Builder barabasiAlbert(int n, int m, boolean directed, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        m = Math.max(1, m);
+        long edges = (long) Math.max(0, n - m) * m;
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder(n, directed, (int) Math.min(Integer.MAX_VALUE - 8, edges));
+        //every edge end, picking one uniformly is picking a node proportionally to its degree
+        int[] ends = new int[(int) Math.min(Integer.MAX_VALUE - 8, 2 * edges + m)];
+        int endCount = 0;
+        for (int i = 0; i < Math.min(m, n); i++) {
+            ends[endCount++] = i;
+        }
+        for (int i = m; i < n; i++) {
+            int available = endCount;
+            for (int k = 0; k < m; k++) {
+                int target = ends[random.nextInt(available)];
+                builder.addEdge(i, target, weight(random));
+                ends[endCount++] = target;
+                ends[endCount++] = i;
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Planted partition graph: nodes are split in <code>communities</code>
+     * groups of consecutive nodes, each edge stays inside the group of its
+     * source with probability <code>mixing</code> and has a heavier weight
+     * there.
+     */
+    public static GraphSnapshot.Builder plantedCommunities(int n, int communities, double averageDegree, double mixing,
+            boolean directed, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        communities = Math.max(1, Math.min(communities, n));
+        int size = (n + communities - 1) / communities;
+        long edges = (long) (n * averageDegree / 2);
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder(n, directed, (int) Math.min(Integer.MAX_VALUE - 8, edges));
+        if (n < 2) {
+            return builder;
+        }
+        for (long e = 0; e < edges; e++) {
+            int source = random.nextInt(n);
+            int target;
+            float weight;
+            if (random.nextDouble() < mixing) {
+                int start = source / size * size;
+                int groupSize = Math.min(size, n - start);
+                if (groupSize < 2) {
+                    continue;
+                }
+                target = start + random.nextInt(groupSize - 1);
+                if (target >= source) {
+                    target++;
+                }
+                weight = 4 * weight(random);
+            } else {
+                target = random.nextInt(n - 1);
+                if (target >= source) {
+                    target++;
+                }
+                weight = weight(random);
+            }
+            builder.addEdge(source, target, weight);
+        }
+        return builder;
+    }
+
+    /**
+     * Log-normal weight with median 1.
+     */
+    private static float weight(SplittableRandom random) {
+        //Box-Muller, one value is enough
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        double gaussian = Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+        return (float) Math.exp(gaussian);
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Arrays;
+
+/**
+ * Compact, read-only copy of a weighted graph in CSR (compressed sparse row)
+ * form. <p> Nodes are identified by their index in <code>[0, nodeCount)</code>.
+ * For every node the neighbors are stored sorted by index, next to the weight
+ * of the connecting edge, so triangles can be found by merging two sorted
+ * lists instead of probing the graph. <p> In directed mode the snapshot keeps
+ * the out- and in-adjacency as well as their union; the union weight of a pair
+ * is the weight of the outgoing edge when it exists, the weight of the
+ * incoming edge otherwise.
+ *
+ * @see ClusteringKernel
+ * @author Umberto Griffo
+ */
+public class GraphSnapshot {
+
+    private final boolean directed;
+    private final int nodeCount;
+    /**
+     * Undirected adjacency (or union of in and out adjacency if directed).
+     */
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final float[] weights;
+    /**
+     * Out and in adjacency, only filled in directed mode.
+     */
+    private final int[] outOffsets;
+    private final int[] outNeighbors;
+    private final float[] outWeights;
+    private final int[] inOffsets;
+    private final int[] inNeighbors;
+    private final float[] inWeights;
+    private final int[] degree;
+    private final float[] strength;
+
+    private GraphSnapshot(boolean directed, int nodeCount, int[] offsets, int[] neighbors, float[] weights,
+            int[] outOffsets, int[] outNeighbors, float[] outWeights,
+            int[] inOffsets, int[] inNeighbors, float[] inWeights,
+            int[] degree, float[] strength) {
+        this.directed = directed;
+        this.nodeCount = nodeCount;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.weights = weights;
+        this.outOffsets = outOffsets;
+        this.outNeighbors = outNeighbors;
+        this.outWeights = outWeights;
+        this.inOffsets = inOffsets;
+        this.inNeighbors = inNeighbors;
+        this.inWeights = inWeights;
+        this.degree = degree;
+        this.strength = strength;
+    }
+
+    public boolean isDirected() {
+        return directed;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of stored (undirected or union) adjacency entries.
+     */
+    public int getEntryCount() {
+        return offsets[nodeCount];
+    }
+
+    /**
+     * Degree of the node as Gephi counts it: in + out in directed mode, and a
+     * self loop counts twice.
+     */
+    public int getDegree(int node) {
+        return degree[node];
+    }
+
+    /**
+     * Sum of the weights of the edges incident to the node (in + out in
+     * directed mode).
+     */
+    public float getStrength(int node) {
+        return strength[node];
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getNeighbors() {
+        return neighbors;
+    }
+
+    public float[] getWeights() {
+        return weights;
+    }
+
+    public int[] getOutOffsets() {
+        return outOffsets;
+    }
+
+    public int[] getOutNeighbors() {
+        return outNeighbors;
+    }
+
+    public float[] getOutWeights() {
+        return outWeights;
+    }
+
+    public int[] getInOffsets() {
+        return inOffsets;
+    }
+
+    public int[] getInNeighbors() {
+        return inNeighbors;
+    }
+
+    public float[] getInWeights() {
+        return inWeights;
+    }
+
+    /**
+     * Returns the same graph with its nodes in another order: node
+     * <code>i</code> of the copy is node <code>order[i]</code> of this one.
+     * The rows are sorted again by the new indices, so the sums over a row
+     * can differ in the last bits. <p> The rows are moved, then sorted by
+     * transposing them, in linear time: the undirected adjacency is its own
+     * transpose, the directed out and in adjacencies are each other's.
+     *
+     * @see NodeReordering
+     */
+    public GraphSnapshot relabel(int[] order) {
+        int[] rank = new int[nodeCount];
+        int[] newDegree = new int[nodeCount];
+        float[] newStrength = new float[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            rank[order[i]] = i;
+            newDegree[i] = degree[order[i]];
+            newStrength[i] = strength[order[i]];
+        }
+        if (!directed) {
+            Adjacency adj = new Adjacency(offsets, neighbors, weights).relabel(order, rank).transpose();
+            return new GraphSnapshot(false, nodeCount, adj.offsets, adj.neighbors, adj.weights,
+                    null, null, null, null, null, null, newDegree, newStrength);
+        }
+        Adjacency out = new Adjacency(inOffsets, inNeighbors, inWeights).relabel(order, rank).transpose();
+        Adjacency in = new Adjacency(outOffsets, outNeighbors, outWeights).relabel(order, rank).transpose();
+        Adjacency union = out.union(in);
+        return new GraphSnapshot(true, nodeCount, union.offsets, union.neighbors, union.weights,
+                out.offsets, out.neighbors, out.weights, in.offsets, in.neighbors, in.weights, newDegree, newStrength);
+    }
+
+    /**
+     * Collects the edges of a graph and turns them into a
+     * {@link GraphSnapshot}. Duplicate edges between the same (ordered, if
+     * directed) pair keep the weight of the first one added.
+     */
+    public static class Builder {
+
+        private final boolean directed;
+        private int nodeCount;
+        private int edgeCount;
+        private int[] sources;
+        private int[] targets;
+        private float[] edgeWeights;
+
+        public Builder(int nodeCount, boolean directed) {
+            this(nodeCount, directed, 16);
+        }
+
+        public Builder(int nodeCount, boolean directed, int expectedEdges) {
+            this.nodeCount = nodeCount;
+            this.directed = directed;
+            int capacity = Math.max(expectedEdges, 16);
+            sources = new int[capacity];
+            targets = new int[capacity];
+            edgeWeights = new float[capacity];
+        }
+
+        /**
+         * Grows the node count to at least <code>count</code>, for callers
+         * that discover the nodes while adding the edges.
+         */
+        public Builder ensureNodeCount(int count) {
+            nodeCount = Math.max(nodeCount, count);
+            return this;
+        }
+
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        public int getEdgeCount() {
+            return edgeCount;
+        }
+
+        public Builder addEdge(int source, int target, float weight) {
+            if (source < 0 || source >= nodeCount || target < 0 || target >= nodeCount) {
+                throw new IllegalArgumentException("Edge " + source + "->" + target + " out of range [0, " + nodeCount + ")");
+            }
+            if (edgeCount == sources.length) {
+                int capacity = sources.length + (sources.length >> 1);
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                edgeWeights = Arrays.copyOf(edgeWeights, capacity);
+            }
+            sources[edgeCount] = source;
+            targets[edgeCount] = target;
+            edgeWeights[edgeCount] = weight;
+            edgeCount++;
+            return this;
+        }
+
+        public GraphSnapshot build() {
+            int[] degree = new int[nodeCount];
+            float[] strength = new float[nodeCount];
+            //Self loops never close a triangle, they only count in degree and strength
+            for (int e = 0; e < edgeCount; e++) {
+                if (sources[e] == targets[e]) {
+                    degree[sources[e]] += 2;
+                    strength[sources[e]] += directed ? 2 * edgeWeights[e] : edgeWeights[e];
+                }
+            }
+            if (!directed) {
+                Adjacency adj = Adjacency.of(nodeCount, edgeCount, sources, targets, edgeWeights, true);
+                for (int i = 0; i < nodeCount; i++) {
+                    degree[i] += adj.offsets[i + 1] - adj.offsets[i];
+                    for (int p = adj.offsets[i]; p < adj.offsets[i + 1]; p++) {
+                        strength[i] += adj.weights[p];
+                    }
+                }
+                return new GraphSnapshot(false, nodeCount, adj.offsets, adj.neighbors, adj.weights,
+                        null, null, null, null, null, null, degree, strength);
+            }
+            Adjacency out = Adjacency.of(nodeCount, edgeCount, sources, targets, edgeWeights, false);
+            Adjacency in = out.transpose();
+            for (int i = 0; i < nodeCount; i++) {
+                degree[i] += (out.offsets[i + 1] - out.offsets[i]) + (in.offsets[i + 1] - in.offsets[i]);
+                for (int p = out.offsets[i]; p < out.offsets[i + 1]; p++) {
+                    strength[i] += out.weights[p];
+                }
+                for (int p = in.offsets[i]; p < in.offsets[i + 1]; p++) {
+                    strength[i] += in.weights[p];
+                }
+            }
+            Adjacency union = out.union(in);
+            return new GraphSnapshot(true, nodeCount, union.offsets, union.neighbors, union.weights,
+                    out.offsets, out.neighbors, out.weights, in.offsets, in.neighbors, in.weights, degree, strength);
+        }
+    }
+
+    /**
+     * Sorted, duplicate free CSR adjacency used while building a snapshot.
+     */
+    private static class Adjacency {
+
+        final int[] offsets;
+        final int[] neighbors;
+        final float[] weights;
+
+        Adjacency(int[] offsets, int[] neighbors, float[] weights) {
+            this.offsets = offsets;
+            this.neighbors = neighbors;
+            this.weights = weights;
+        }
+
+        static Adjacency of(int nodeCount, int edgeCount, int[] sources, int[] targets, float[] edgeWeights, boolean symmetric) {
+            int[] offsets = new int[nodeCount + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                if (sources[e] == targets[e]) {
+                    continue;
+                }
+                offsets[sources[e] + 1]++;
+                if (symmetric) {
+                    offsets[targets[e] + 1]++;
+                }
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] neighbors = new int[offsets[nodeCount]];
+            float[] weights = new float[offsets[nodeCount]];
+            int[] fill = Arrays.copyOf(offsets, nodeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                if (sources[e] == targets[e]) {
+                    continue;
+                }
+                neighbors[fill[sources[e]]] = targets[e];
+                weights[fill[sources[e]]++] = edgeWeights[e];
+                if (symmetric) {
+                    neighbors[fill[targets[e]]] = sources[e];
+                    weights[fill[targets[e]]++] = edgeWeights[e];
+                }
+            }
+            return sortAndCompact(nodeCount, offsets, neighbors, weights);
+        }
+
+        /**
+         * Sorts every row by neighbor index, keeping insertion order among
+         * duplicates, then drops the duplicates.
+         */
+        static Adjacency sortAndCompact(int nodeCount, int[] offsets, int[] neighbors, float[] weights) {
+            int maxRow = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                maxRow = Math.max(maxRow, offsets[i + 1] - offsets[i]);
+            }
+            long[] keys = new long[maxRow];
+            float[] rowWeights = new float[maxRow];
+            int[] compactOffsets = new int[nodeCount + 1];
+            int write = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                int start = offsets[i];
+                int length = offsets[i + 1] - start;
+                for (int k = 0; k < length; k++) {
+                    keys[k] = ((long) neighbors[start + k] << 32) | k;
+                    rowWeights[k] = weights[start + k];
+                }
+                Arrays.sort(keys, 0, length);
+                compactOffsets[i] = write;
+                int last = -1;
+                for (int k = 0; k < length; k++) {
+                    int neighbor = (int) (keys[k] >>> 32);
+                    if (neighbor == last) {
+                        continue;
+                    }
+                    last = neighbor;
+                    neighbors[write] = neighbor;
+                    weights[write++] = rowWeights[(int) keys[k]];
+                }
+            }
+            compactOffsets[nodeCount] = write;
+            return new Adjacency(compactOffsets, Arrays.copyOf(neighbors, write), Arrays.copyOf(weights, write));
+        }
+
+        /**
+         * Moves row <code>order[i]</code> to row <code>i</code> and renames
+         * every neighbor by its rank, the rows are left unsorted.
+         */
+        Adjacency relabel(int[] order, int[] rank) {
+            int nodeCount = offsets.length - 1;
+            int[] rOffsets = new int[nodeCount + 1];
+            for (int i = 0; i < nodeCount; i++) {
+                rOffsets[i + 1] = rOffsets[i] + offsets[order[i] + 1] - offsets[order[i]];
+            }
+            int[] rNeighbors = new int[neighbors.length];
+            float[] rWeights = new float[neighbors.length];
+            for (int i = 0; i < nodeCount; i++) {
+                int write = rOffsets[i];
+                for (int p = offsets[order[i]]; p < offsets[order[i] + 1]; p++) {
+                    rNeighbors[write] = rank[neighbors[p]];
+                    rWeights[write++] = weights[p];
+                }
+            }
+            return new Adjacency(rOffsets, rNeighbors, rWeights);
+        }
+
+        Adjacency transpose() {
+            int nodeCount = offsets.length - 1;
+            int[] tOffsets = new int[nodeCount + 1];
+            for (int p = 0; p < neighbors.length; p++) {
+                tOffsets[neighbors[p] + 1]++;
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                tOffsets[i + 1] += tOffsets[i];
+            }
+            int[] tNeighbors = new int[neighbors.length];
+            float[] tWeights = new float[neighbors.length];
+            int[] fill = Arrays.copyOf(tOffsets, nodeCount);
+            //Rows are visited in increasing order so the transposed rows come out sorted
+            for (int i = 0; i < nodeCount; i++) {
+                for (int p = offsets[i]; p < offsets[i + 1]; p++) {
+                    tNeighbors[fill[neighbors[p]]] = i;
+                    tWeights[fill[neighbors[p]]++] = weights[p];
+                }
+            }
+            return new Adjacency(tOffsets, tNeighbors, tWeights);
+        }
+
+        /**
+         * Merges this adjacency with another, preferring this one's weight
+         * when a neighbor appears in both.
+         */
+        Adjacency union(Adjacency other) {
+            int nodeCount = offsets.length - 1;
+            int[] uOffsets = new int[nodeCount + 1];
+            int[] uNeighbors = new int[neighbors.length + other.neighbors.length];
+            float[] uWeights = new float[uNeighbors.length];
+            int write = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                uOffsets[i] = write;
+                int a = offsets[i], aEnd = offsets[i + 1];
+                int b = other.offsets[i], bEnd = other.offsets[i + 1];
+                while (a < aEnd || b < bEnd) {
+                    if (b == bEnd || (a < aEnd && neighbors[a] <= other.neighbors[b])) {
+                        if (b < bEnd && neighbors[a] == other.neighbors[b]) {
+                            b++;
+                        }
+                        uNeighbors[write] = neighbors[a];
+                        uWeights[write++] = weights[a++];
+                    } else {
+                        uNeighbors[write] = other.neighbors[b];
+                        uWeights[write++] = other.weights[b++];
+                    }
+                }
+            }
+            uOffsets[nodeCount] = write;
+            return new Adjacency(uOffsets, Arrays.copyOf(uNeighbors, write), Arrays.copyOf(uWeights, write));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import org.gephi.graph.api.*;
+
+/**
+ * Tells whether a graph is still the one a {@link GraphSnapshot} was taken
+ * from, so the statistic can compute without holding the graph lock. <p>
+ * Structural changes move the node and edge versions of the graph. Weight
+ * changes do not, so the weights are hashed in edge order while the snapshot
+ * is built and hashed again by {@link #matches(HierarchicalGraph)}, one pass
+ * over the edges without allocation.
+ *
+ * @author Umberto Griffo
+ */
+class GraphStamp {
+
+    private final int viewId;
+    private final int nodeVersion;
+    private final int edgeVersion;
+    private long weights = 1;
+
+    /**
+     * Must be called under read lock, before the edges are read.
+     */
+    GraphStamp(HierarchicalGraph graph) {
+        viewId = graph.getView().getViewId();
+        nodeVersion = graph.getNodeVersion();
+        edgeVersion = graph.getEdgeVersion();
+    }
+
+    /**
+     * Adds the weight of the next edge of
+     * <code>getEdgesAndMetaEdges()</code>, or of the next edge of a partial
+     * snapshot.
+     */
+    void addWeight(float weight) {
+        weights = hash(weights, weight);
+    }
+
+    private static long hash(long hash, float weight) {
+        return 31 * hash + Float.floatToIntBits(weight);
+    }
+
+    /**
+     * Returns true if the graph has the nodes, edges and weights it had when
+     * the stamp was taken. Must be called under read lock.
+     */
+    boolean matches(HierarchicalGraph graph) {
+        if (viewId != graph.getView().getViewId()
+                || nodeVersion != graph.getNodeVersion()
+                || edgeVersion != graph.getEdgeVersion()) {
+            return false;
+        }
+        long current = 1;
+        for (Edge e : graph.getEdgesAndMetaEdges()) {
+            current = hash(current, e.getWeight());
+        }
+        return current == weights;
+    }
+
+    /**
+     * Same as {@link #matches(HierarchicalGraph)} for a snapshot of part of
+     * the graph, whose edges were added in the given order: only their
+     * weights are hashed again.
+     */
+    boolean matches(HierarchicalGraph graph, Edge[] edges) {
+        if (viewId != graph.getView().getViewId()
+                || nodeVersion != graph.getNodeVersion()
+                || edgeVersion != graph.getEdgeVersion()) {
+            return false;
+        }
+        long current = 1;
+        for (Edge e : edges) {
+            current = hash(current, e.getWeight());
+        }
+        return current == weights;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Fixed range histogram backed by a primitive array, with linear or
+ * logarithmic bins. <p> {@link #add(double)} does not allocate, so it can be
+ * called from the node loop. Values below the range fall in the first bin and
+ * values above it in the last one. With logarithmic bins, values &lt;= 0 are
+ * counted apart, see {@link #getNonPositiveCount()}. NaN values are ignored.
+ *
+ * @author Umberto Griffo
+ */
+public class Histogram {
+
+    public enum Binning {
+
+        LINEAR, LOGARITHMIC
+    }
+    public static final int DEFAULT_BINS = 100;
+    private final Binning binning;
+    private final double min;
+    private final double max;
+    private final long[] counts;
+    private final double scale;
+    private long nonPositive;
+    private long total;
+
+    /**
+     * @param min lower bound of the range; with logarithmic bins a value
+     * &lt;= 0 is replaced by <code>max * 1e-6</code>
+     * @param max upper bound of the range
+     */
+    public Histogram(Binning binning, int bins, double min, double max) {
+        if (bins < 1) {
+            throw new IllegalArgumentException("bins must be positive: " + bins);
+        }
+        this.binning = binning;
+        if (binning == Binning.LOGARITHMIC) {
+            if (max <= 0) {
+                max = 1;
+            }
+            if (min <= 0 || min > max) {
+                min = max * 1e-6;
+            }
+        } else if (min > max) {
+            min = max;
+        }
+        this.min = min;
+        this.max = max;
+        this.counts = new long[bins];
+        double width = binning == Binning.LOGARITHMIC ? Math.log(max / min) : max - min;
+        this.scale = width > 0 ? bins / width : 0;
+    }
+
+    /**
+     * Returns an empty histogram with the same bins.
+     */
+    public Histogram emptyCopy() {
+        return new Histogram(binning, counts.length, min, max);
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        total++;
+        int bin = bin(value);
+        if (bin < 0) {
+            nonPositive++;
+        } else {
+            counts[bin]++;
+        }
+    }
+
+    /**
+     * Takes back a value previously added.
+     */
+    public void remove(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        total--;
+        int bin = bin(value);
+        if (bin < 0) {
+            nonPositive--;
+        } else {
+            counts[bin]--;
+        }
+    }
+
+    /**
+     * Returns the bin of a value, -1 for a value &lt;= 0 with logarithmic
+     * bins.
+     */
+    private int bin(double value) {
+        double offset;
+        if (binning == Binning.LOGARITHMIC) {
+            if (value <= 0) {
+                return -1;
+            }
+            offset = Math.log(value / min);
+        } else {
+            offset = value - min;
+        }
+        int bin = (int) (offset * scale);
+        if (bin < 0 || offset < 0) {
+            bin = 0;
+        } else if (bin >= counts.length) {
+            bin = counts.length - 1;
+        }
+        return bin;
+    }
+
+    public void merge(Histogram other) {
+        if (other.counts.length != counts.length || other.binning != binning || other.min != min || other.max != max) {
+            throw new IllegalArgumentException("Histograms with different bins");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        nonPositive += other.nonPositive;
+        total += other.total;
+    }
+
+    public Binning getBinning() {
+        return binning;
+    }
+
+    public int getBinCount() {
+        return counts.length;
+    }
+
+    public long getCount(int bin) {
+        return counts[bin];
+    }
+
+    /**
+     * Values &lt;= 0 seen by a logarithmic histogram.
+     */
+    public long getNonPositiveCount() {
+        return nonPositive;
+    }
+
+    /**
+     * Number of values added, NaN excluded.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public double getBinStart(int bin) {
+        if (binning == Binning.LOGARITHMIC) {
+            return min * Math.pow(max / min, (double) bin / counts.length);
+        }
+        return min + (max - min) * bin / counts.length;
+    }
+
+    public double getBinEnd(int bin) {
+        return getBinStart(bin + 1);
+    }
+
+    /**
+     * Arithmetic center of a linear bin, geometric center of a logarithmic
+     * one.
+     */
+    public double getBinCenter(int bin) {
+        if (binning == Binning.LOGARITHMIC) {
+            return Math.sqrt(getBinStart(bin) * getBinEnd(bin));
+        }
+        return (getBinStart(bin) + getBinEnd(bin)) / 2;
+    }
+
+    /**
+     * Returns, for every bin, the fraction of values falling in that bin or
+     * in a later one, i.e. the fraction of values &gt;= the bin start. Computed
+     * with a single suffix sum.
+     */
+    public double[] cumulativeFractions() {
+        double[] fractions = new double[counts.length];
+        if (total == 0) {
+            return fractions;
+        }
+        long suffix = 0;
+        for (int i = counts.length - 1; i >= 0; i--) {
+            suffix += counts[i];
+            fractions[i] = (double) suffix / total;
+        }
+        return fractions;
+    }
+
+    /**
+     * Fraction of values &gt;= the start of every non empty bin, see
+     * {@link #cumulativeFractions()}.
+     */
+    public SortedMap<Double, Double> cumulativeDistribution() {
+        SortedMap<Double, Double> map = new TreeMap<Double, Double>();
+        double[] cumulated = cumulativeFractions();
+        for (int bin = 0; bin < cumulated.length; bin++) {
+            if (counts[bin] > 0) {
+                map.put(getBinStart(bin), cumulated[bin]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Count at the center of every non empty bin, the values &lt;= 0 of a
+     * logarithmic histogram at 0.
+     */
+    public SortedMap<Double, Long> distribution() {
+        SortedMap<Double, Long> map = new TreeMap<Double, Long>();
+        if (nonPositive > 0) {
+            map.put(0.0, nonPositive);
+        }
+        for (int bin = 0; bin < counts.length; bin++) {
+            if (counts[bin] > 0) {
+                map.put(getBinCenter(bin), counts[bin]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return binning + " " + min + ".." + max + " " + Arrays.toString(counts);
+    }
+}
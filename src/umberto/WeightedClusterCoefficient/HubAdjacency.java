@@ -0,0 +1,367 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Arrays;
+
+/**
+ * Compressed bitmaps of the rows of the highest degree nodes of a neighbor
+ * array, the other rows stay sorted arrays. <p> A row is cut, like a roaring
+ * bitmap, in containers of the neighbors sharing the same high 16 bits: up to
+ * {@link #ARRAY_LIMIT} entries a container is a sorted <code>char[]</code> of
+ * the low bits, above it a 65536 bit map with the number of entries before
+ * every word. Every lookup returns the position of the neighbor in the
+ * neighbor array, so the weights can be read as with a merge. <p> Rows are
+ * indexed in decreasing degree order while they fit the memory budget, the
+ * bytes used are reported in the run metrics.
+ *
+ * @author Umberto Griffo
+ */
+class HubAdjacency {
+
+    /**
+     * Degree from which a row is indexed by default.
+     */
+    static final int DEFAULT_MIN_DEGREE = 4096;
+    /**
+     * Memory budget of the bitmaps by default, in bytes.
+     */
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+    /**
+     * Entries above which a container is a bit map.
+     */
+    static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1024;
+    /**
+     * Intersection work of a bit map container, in merged entries.
+     */
+    private static final int BITMAP_COST = WORDS / 4;
+    private final int[] offsets;
+    private final int minDegree;
+    /**
+     * Open addressing table from node to bitmap.
+     */
+    private final int[] slots;
+    private final Bitmap[] bitmaps;
+    private int count;
+    private long bytes;
+
+    /**
+     * Indexes the rows of <code>neighbors</code> with at least
+     * <code>minDegree</code> entries, largest first, until
+     * <code>maxBytes</code> are used.
+     */
+    HubAdjacency(int[] offsets, int[] neighbors, int minDegree, long maxBytes) {
+        this.offsets = offsets;
+        this.minDegree = Math.max(1, minDegree);
+        int n = offsets.length - 1;
+        int candidates = 0;
+        for (int i = 0; i < n; i++) {
+            if (offsets[i + 1] - offsets[i] >= this.minDegree) {
+                candidates++;
+            }
+        }
+        int[] order = new int[candidates];
+        long[] keys = new long[candidates];
+        int c = 0;
+        for (int i = 0; i < n; i++) {
+            int degree = offsets[i + 1] - offsets[i];
+            if (degree >= this.minDegree) {
+                //decreasing degree, then increasing index
+                keys[c++] = ((long) (Integer.MAX_VALUE - degree) << 32) | i;
+            }
+        }
+        Arrays.sort(keys);
+        for (int k = 0; k < candidates; k++) {
+            order[k] = (int) keys[k];
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, candidates) * 2 - 1) * 2;
+        slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        bitmaps = new Bitmap[candidates];
+        bytes = 4L * capacity + 8L * candidates;
+        for (int node : order) {
+            long size = Bitmap.bytes(neighbors, offsets[node], offsets[node + 1]);
+            if (bytes + size > maxBytes) {
+                continue;
+            }
+            bitmaps[count] = new Bitmap(node, neighbors, offsets[node], offsets[node + 1]);
+            int s = slot(node);
+            slots[s] = count;
+            count++;
+            bytes += size;
+        }
+    }
+
+    private int slot(int node) {
+        int mask = slots.length - 1;
+        int hash = node * 0x9E3779B9;
+        int s = (hash ^ (hash >>> 16)) & mask;
+        while (slots[s] >= 0 && bitmaps[slots[s]].node != node) {
+            s = (s + 1) & mask;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the bitmap of the row of a node, null if the row is an array.
+     */
+    Bitmap get(int node) {
+        if (offsets[node + 1] - offsets[node] < minDegree || count == 0) {
+            return null;
+        }
+        int s = slots[slot(node)];
+        return s >= 0 ? bitmaps[s] : null;
+    }
+
+    /**
+     * Number of indexed rows.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Bytes used by the bitmaps and the table.
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * The bitmap of one row.
+     */
+    static final class Bitmap {
+
+        private final int node;
+        /**
+         * Position of the row in the neighbor array.
+         */
+        final int start;
+        private final char[] keys;
+        /**
+         * Entries of the row before each container.
+         */
+        private final int[] ranks;
+        private final char[][] arrays;
+        private final long[][] words;
+        /**
+         * Entries of a bit map container before each of its words.
+         */
+        private final char[][] wordRanks;
+        /**
+         * Work of an intersection with another bitmap, in merged entries.
+         */
+        final long cost;
+
+        private Bitmap(int node, int[] neighbors, int from, int to) {
+            this.node = node;
+            start = from;
+            int containers = containers(neighbors, from, to);
+            keys = new char[containers];
+            ranks = new int[containers];
+            arrays = new char[containers][];
+            words = new long[containers][];
+            wordRanks = new char[containers][];
+            long work = 0;
+            int c = 0;
+            int p = from;
+            while (p < to) {
+                int key = neighbors[p] >>> 16;
+                int end = p;
+                while (end < to && neighbors[end] >>> 16 == key) {
+                    end++;
+                }
+                keys[c] = (char) key;
+                ranks[c] = p - from;
+                if (end - p > ARRAY_LIMIT) {
+                    long[] w = new long[WORDS];
+                    for (int q = p; q < end; q++) {
+                        int low = neighbors[q] & 0xFFFF;
+                        w[low >>> 6] |= 1L << low;
+                    }
+                    char[] r = new char[WORDS];
+                    int before = 0;
+                    for (int k = 0; k < WORDS; k++) {
+                        r[k] = (char) before;
+                        before += Long.bitCount(w[k]);
+                    }
+                    words[c] = w;
+                    wordRanks[c] = r;
+                    work += BITMAP_COST;
+                } else {
+                    char[] a = new char[end - p];
+                    for (int q = p; q < end; q++) {
+                        a[q - p] = (char) neighbors[q];
+                    }
+                    arrays[c] = a;
+                    work += a.length;
+                }
+                c++;
+                p = end;
+            }
+            cost = work;
+        }
+
+        private static int containers(int[] neighbors, int from, int to) {
+            int containers = 0;
+            int last = -1;
+            for (int p = from; p < to; p++) {
+                int key = neighbors[p] >>> 16;
+                if (key != last) {
+                    containers++;
+                    last = key;
+                }
+            }
+            return containers;
+        }
+
+        /**
+         * Bytes of the bitmap of a row, without building it.
+         */
+        static long bytes(int[] neighbors, int from, int to) {
+            long size = 64;
+            int p = from;
+            while (p < to) {
+                int key = neighbors[p] >>> 16;
+                int end = p;
+                while (end < to && neighbors[end] >>> 16 == key) {
+                    end++;
+                }
+                //key, rank, three references and the container
+                size += 2 + 4 + 24;
+                size += end - p > ARRAY_LIMIT ? 16 + 8 * WORDS + 16 + 2 * WORDS : 16 + 2 * (end - p);
+                p = end;
+            }
+            return size;
+        }
+
+        /**
+         * Returns the position of <code>x</code> in the neighbor array, -1 if
+         * it is not in the row.
+         */
+        int position(int x) {
+            int c = Arrays.binarySearch(keys, (char) (x >>> 16));
+            if (c < 0) {
+                return -1;
+            }
+            int r = rank(c, x & 0xFFFF);
+            return r < 0 ? -1 : start + ranks[c] + r;
+        }
+
+        /**
+         * Entries of container <code>c</code> before <code>low</code>, -1 if
+         * it does not hold <code>low</code>.
+         */
+        private int rank(int c, int low) {
+            long[] w = words[c];
+            if (w == null) {
+                int r = Arrays.binarySearch(arrays[c], (char) low);
+                return r >= 0 ? r : -1;
+            }
+            long word = w[low >>> 6];
+            long bit = 1L << low;
+            if ((word & bit) == 0) {
+                return -1;
+            }
+            return wordRanks[c][low >>> 6] + Long.bitCount(word & (bit - 1));
+        }
+
+        /**
+         * Intersects the positions <code>[aFrom, aTo)</code> of this row with
+         * the positions <code>[bFrom, bTo)</code> of the row of
+         * <code>other</code>, container by container. Returns the number of
+         * common values, their positions go to <code>left</code> and
+         * <code>right</code>, sized for the shorter range.
+         */
+        int intersect(int aFrom, int aTo, Bitmap other, int bFrom, int bTo, int[] left, int[] right) {
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < keys.length && j < other.keys.length) {
+                if (keys[i] < other.keys[j]) {
+                    i++;
+                } else if (keys[i] > other.keys[j]) {
+                    j++;
+                } else {
+                    count = intersect(i, other, j, count, aFrom, aTo, bFrom, bTo, left, right);
+                    i++;
+                    j++;
+                }
+            }
+            return count;
+        }
+
+        private int intersect(int i, Bitmap other, int j, int count, int aFrom, int aTo, int bFrom, int bTo, int[] left, int[] right) {
+            int aBase = start + ranks[i];
+            int bBase = other.start + other.ranks[j];
+            char[] a = arrays[i];
+            char[] b = other.arrays[j];
+            if (a != null && b != null) {
+                int x = 0;
+                int y = 0;
+                while (x < a.length && y < b.length) {
+                    if (a[x] < b[y]) {
+                        x++;
+                    } else if (a[x] > b[y]) {
+                        y++;
+                    } else {
+                        count = add(aBase + x, bBase + y, count, aFrom, aTo, bFrom, bTo, left, right);
+                        x++;
+                        y++;
+                    }
+                }
+            } else if (a != null) {
+                for (int x = 0; x < a.length; x++) {
+                    int y = other.rank(j, a[x]);
+                    if (y >= 0) {
+                        count = add(aBase + x, bBase + y, count, aFrom, aTo, bFrom, bTo, left, right);
+                    }
+                }
+            } else if (b != null) {
+                for (int y = 0; y < b.length; y++) {
+                    int x = rank(i, b[y]);
+                    if (x >= 0) {
+                        count = add(aBase + x, bBase + y, count, aFrom, aTo, bFrom, bTo, left, right);
+                    }
+                }
+            } else {
+                long[] wa = words[i];
+                long[] wb = other.words[j];
+                for (int k = 0; k < WORDS; k++) {
+                    long common = wa[k] & wb[k];
+                    while (common != 0) {
+                        long bit = common & -common;
+                        int x = wordRanks[i][k] + Long.bitCount(wa[k] & (bit - 1));
+                        int y = other.wordRanks[j][k] + Long.bitCount(wb[k] & (bit - 1));
+                        count = add(aBase + x, bBase + y, count, aFrom, aTo, bFrom, bTo, left, right);
+                        common ^= bit;
+                    }
+                }
+            }
+            return count;
+        }
+
+        private static int add(int pa, int pb, int count, int aFrom, int aTo, int bFrom, int bTo, int[] left, int[] right) {
+            if (pa >= aFrom && pa < aTo && pb >= bFrom && pb < bTo) {
+                left[count] = pa;
+                right[count] = pb;
+                count++;
+            }
+            return count;
+        }
+    }
+}
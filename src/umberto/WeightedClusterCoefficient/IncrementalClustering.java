@@ -0,0 +1,627 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the weighted clustering coefficient of every node up to date while
+ * edges are added, removed or re-weighted, touching only the nodes a change
+ * can affect. <p> The model stores a mutable sorted adjacency and, per node,
+ * the strength, the degree and the triangle weight sum (see
+ * {@link ClusteringKernel#triangleWeight(int)}). In undirected mode a change
+ * to the pair <code>(u,v)</code> updates <code>u</code>, <code>v</code> and
+ * their common neighbors by difference. In directed mode the common neighbors
+ * are updated by difference and the sums of <code>u</code> and <code>v</code>
+ * are recomputed, because their union neighborhoods and weights change too.
+ * <p> Nodes whose values changed are remembered until
+ * {@link #drainChanged()} is called. A pair holds one weight, like a snapshot
+ * that keeps the first edge of a pair: a second edge on the same pair is
+ * ignored. The id of the graph edge a pair holds can be kept with it, see
+ * {@link #getEdgeId(int, int)}, so that the caller can tell it from its
+ * twins. Not thread safe, callers synchronize.
+ *
+ * @author Umberto Griffo
+ */
+public class IncrementalClustering {
+
+    private final boolean directed;
+    private int nodeCount;
+    private int activeCount;
+    private Row[] out;
+    /**
+     * Same rows as out when undirected.
+     */
+    private Row[] in;
+    private int[] selfLoops;
+    private float[] selfStrength;
+    private double[] triangles;
+    private float[] strength;
+    private double[] clustering;
+    private boolean[] removed;
+    private boolean[] changed;
+    private int[] changedList;
+    private int changedCount;
+    private double totalClustering;
+    private double totalStrength;
+    private final Histogram strengthDistribution;
+    private final Histogram clusteringDistribution;
+    /**
+     * Scratch union row used by the directed recomputation.
+     */
+    private int[] unionIds = new int[16];
+    private float[] unionWeights = new float[16];
+
+    /**
+     * Starts from the state of a snapshot.
+     *
+     * @param triangleWeights triangle weight sum of every node, as returned by
+     * {@link ClusteringKernel#triangleWeight(int)}
+     * @param distributions histograms to keep up to date, may be null
+     */
+    public IncrementalClustering(GraphSnapshot snapshot, double[] triangleWeights, ClusteringAccumulator distributions) {
+        this.directed = snapshot.isDirected();
+        this.nodeCount = snapshot.getNodeCount();
+        this.activeCount = nodeCount;
+        int capacity = Math.max(nodeCount, 16);
+        out = new Row[capacity];
+        in = directed ? new Row[capacity] : out;
+        selfLoops = new int[capacity];
+        selfStrength = new float[capacity];
+        triangles = Arrays.copyOf(triangleWeights, capacity);
+        strength = new float[capacity];
+        clustering = new double[capacity];
+        removed = new boolean[capacity];
+        changed = new boolean[capacity];
+        changedList = new int[capacity];
+        strengthDistribution = distributions != null ? distributions.getStrengthDistribution().emptyCopy() : null;
+        clusteringDistribution = distributions != null ? distributions.getClusteringDistribution().emptyCopy() : null;
+        int[] offsets = directed ? snapshot.getOutOffsets() : snapshot.getOffsets();
+        int[] neighbors = directed ? snapshot.getOutNeighbors() : snapshot.getNeighbors();
+        float[] weights = directed ? snapshot.getOutWeights() : snapshot.getWeights();
+        for (int i = 0; i < nodeCount; i++) {
+            out[i] = new Row(neighbors, weights, offsets[i], offsets[i + 1]);
+            if (directed) {
+                in[i] = new Row(snapshot.getInNeighbors(), snapshot.getInWeights(), snapshot.getInOffsets()[i], snapshot.getInOffsets()[i + 1]);
+            }
+            int rowDegree = directed ? out[i].size + in[i].size : out[i].size;
+            float rowStrength = directed ? out[i].sum() + in[i].sum() : out[i].sum();
+            selfLoops[i] = (snapshot.getDegree(i) - rowDegree) / 2;
+            selfStrength[i] = snapshot.getStrength(i) - rowStrength;
+            strength[i] = snapshot.getStrength(i);
+            clustering[i] = (float) coefficient(i);
+            record(i, 1);
+        }
+    }
+
+    public boolean isDirected() {
+        return directed;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Number of nodes not removed.
+     */
+    public int getActiveNodeCount() {
+        return activeCount;
+    }
+
+    public double getClustering(int node) {
+        return clustering[node];
+    }
+
+    public float getStrength(int node) {
+        return strength[node];
+    }
+
+    public int getDegree(int node) {
+        return directed ? out[node].size + in[node].size + 2 * selfLoops[node] : out[node].size + 2 * selfLoops[node];
+    }
+
+    public double getAverageClustering() {
+        return activeCount > 0 ? totalClustering / activeCount : 0;
+    }
+
+    public double getAverageStrength() {
+        return activeCount > 0 ? totalStrength / activeCount : 0;
+    }
+
+    public Histogram getStrengthDistribution() {
+        return strengthDistribution;
+    }
+
+    public Histogram getClusteringDistribution() {
+        return clusteringDistribution;
+    }
+
+    /**
+     * Adds an isolated node and returns its index.
+     */
+    public int addNode() {
+        if (nodeCount == out.length) {
+            grow();
+        }
+        int node = nodeCount++;
+        out[node] = new Row();
+        if (directed) {
+            in[node] = new Row();
+        }
+        activeCount++;
+        record(node, 1);
+        markChanged(node);
+        return node;
+    }
+
+    /**
+     * Removes all the edges of the node and excludes it from the averages.
+     */
+    public void removeNode(int node) {
+        if (removed[node]) {
+            return;
+        }
+        while (out[node].size > 0) {
+            removeEdge(node, out[node].ids[out[node].size - 1]);
+        }
+        while (directed && in[node].size > 0) {
+            removeEdge(in[node].ids[in[node].size - 1], node);
+        }
+        record(node, -1);
+        removed[node] = true;
+        activeCount--;
+        selfLoops[node] = 0;
+        selfStrength[node] = 0;
+    }
+
+    public void addEdge(int source, int target, float weight) {
+        addEdge(source, target, weight, -1);
+    }
+
+    /**
+     * Adds an edge and keeps the id of the graph edge it comes from, unless
+     * the pair already holds an edge.
+     */
+    public void addEdge(int source, int target, float weight, int edge) {
+        if (source == target) {
+            selfLoops[source]++;
+            selfStrength[source] += directed ? 2 * weight : weight;
+            refresh(source);
+            return;
+        }
+        if (out[source].indexOf(target) >= 0) {
+            return;
+        }
+        if (directed) {
+            //the common neighbors gain the triad closed by source->target
+            addCommon(source, target, 1);
+            out[source].insert(target, weight, edge);
+            in[target].insert(source, weight, edge);
+            triangles[source] = directedTriangles(source);
+            triangles[target] = directedTriangles(target);
+        } else {
+            addCommon(source, target, weight, 1);
+            out[source].insert(target, weight, edge);
+            out[target].insert(source, weight, edge);
+        }
+        refresh(source);
+        refresh(target);
+    }
+
+    /**
+     * Removes the edge between the two nodes, or one of the self loops if
+     * source equals target. A self loop is removed with the given weight.
+     */
+    public void removeEdge(int source, int target, float selfLoopWeight) {
+        if (source == target) {
+            if (selfLoops[source] > 0) {
+                selfLoops[source]--;
+                selfStrength[source] -= directed ? 2 * selfLoopWeight : selfLoopWeight;
+                refresh(source);
+            }
+            return;
+        }
+        removeEdge(source, target);
+    }
+
+    public void removeEdge(int source, int target) {
+        int p = out[source].indexOf(target);
+        if (p < 0 || source == target) {
+            return;
+        }
+        if (directed) {
+            addCommon(source, target, -1);
+            out[source].delete(target);
+            in[target].delete(source);
+            triangles[source] = directedTriangles(source);
+            triangles[target] = directedTriangles(target);
+        } else {
+            addCommon(source, target, out[source].weights[p], -1);
+            out[source].delete(target);
+            out[target].delete(source);
+        }
+        refresh(source);
+        refresh(target);
+    }
+
+    public void setWeight(int source, int target, float weight) {
+        int p = out[source].indexOf(target);
+        if (p < 0) {
+            return;
+        }
+        float old = out[source].weights[p];
+        if (old == weight) {
+            return;
+        }
+        out[source].weights[p] = weight;
+        if (directed) {
+            in[target].weights[in[target].indexOf(source)] = weight;
+            triangles[source] = directedTriangles(source);
+            triangles[target] = directedTriangles(target);
+        } else {
+            out[target].weights[out[target].indexOf(source)] = weight;
+            //only the pairs (target, h) of source and (source, h) of target change
+            int common = countCommon(source, target);
+            triangles[source] += common * (weight - old) / 2.0;
+            triangles[target] += common * (weight - old) / 2.0;
+        }
+        refresh(source);
+        refresh(target);
+    }
+
+    /**
+     * Returns true if the pair holds an edge, from source to target when
+     * directed.
+     */
+    public boolean hasEdge(int source, int target) {
+        return source != target && out[source].indexOf(target) >= 0;
+    }
+
+    /**
+     * Returns the id of the graph edge the pair holds, -1 if there is none or
+     * it is not known.
+     */
+    public int getEdgeId(int source, int target) {
+        int p = source != target ? out[source].indexOf(target) : -1;
+        return p >= 0 ? out[source].edges[p] : -1;
+    }
+
+    /**
+     * Sets the id of the graph edge the pair holds, for the pairs taken from
+     * the snapshot or when another edge of the pair takes the place of a
+     * removed one.
+     */
+    public void setEdgeId(int source, int target, int edge) {
+        int p = source != target ? out[source].indexOf(target) : -1;
+        if (p < 0) {
+            return;
+        }
+        out[source].edges[p] = edge;
+        if (directed) {
+            in[target].edges[in[target].indexOf(source)] = edge;
+        } else {
+            out[target].edges[out[target].indexOf(source)] = edge;
+        }
+    }
+
+    /**
+     * Returns the nodes whose strength or clustering changed since the last
+     * call, and forgets them.
+     */
+    public int[] drainChanged() {
+        int[] result = Arrays.copyOf(changedList, changedCount);
+        for (int i = 0; i < changedCount; i++) {
+            changed[changedList[i]] = false;
+        }
+        changedCount = 0;
+        return result;
+    }
+
+    /**
+     * Recomputes every coefficient from scratch on a new snapshot and returns
+     * the largest difference with the incrementally maintained values.
+     */
+    public double verify() {
+        GraphSnapshot snapshot = toSnapshot();
+        ClusteringKernel kernel = new ClusteringKernel(snapshot);
+        double deviation = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (!removed[i]) {
+                deviation = Math.max(deviation, Math.abs(kernel.clustering(i) - clustering[i]));
+                deviation = Math.max(deviation, Math.abs(snapshot.getStrength(i) - strength[i]));
+            }
+        }
+        return deviation;
+    }
+
+    /**
+     * Returns a snapshot of the current state, removed nodes stay as isolated
+     * nodes.
+     */
+    public GraphSnapshot toSnapshot() {
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder(nodeCount, directed);
+        for (int i = 0; i < nodeCount; i++) {
+            Row row = out[i];
+            for (int k = 0; k < row.size; k++) {
+                if (directed || i < row.ids[k]) {
+                    builder.addEdge(i, row.ids[k], row.weights[k]);
+                }
+            }
+            for (int l = 0; l < selfLoops[i]; l++) {
+                builder.addEdge(i, i, selfStrength[i] / selfLoops[i] / (directed ? 2 : 1));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Undirected: adds (or removes, sign -1) the triangles closed by the pair
+     * (u,v) of weight w to u, v and every common neighbor.
+     */
+    private void addCommon(int u, int v, float w, int sign) {
+        Row ru = out[u];
+        Row rv = out[v];
+        int a = 0;
+        int b = 0;
+        while (a < ru.size && b < rv.size) {
+            int x = ru.ids[a];
+            int y = rv.ids[b];
+            if (x < y) {
+                a++;
+            } else if (x > y) {
+                b++;
+            } else {
+                triangles[u] += sign * (w + ru.weights[a]) / 2.0;
+                triangles[v] += sign * (w + rv.weights[b]) / 2.0;
+                triangles[x] += sign * (ru.weights[a] + rv.weights[b]) / 2.0;
+                refresh(x);
+                a++;
+                b++;
+            }
+        }
+    }
+
+    private int countCommon(int u, int v) {
+        Row ru = out[u];
+        Row rv = out[v];
+        int common = 0;
+        int a = 0;
+        int b = 0;
+        while (a < ru.size && b < rv.size) {
+            if (ru.ids[a] < rv.ids[b]) {
+                a++;
+            } else if (ru.ids[a] > rv.ids[b]) {
+                b++;
+            } else {
+                common++;
+                a++;
+                b++;
+            }
+        }
+        return common;
+    }
+
+    /**
+     * Directed: adds (or removes, sign -1) the triad closed by the edge u->v
+     * to every node adjacent to both u and v.
+     */
+    private void addCommon(int u, int v, int sign) {
+        int length = loadUnion(u);
+        int[] ids = Arrays.copyOf(unionIds, length);
+        for (int k = 0; k < length; k++) {
+            int h = ids[k];
+            if (h == v || !isAdjacent(h, v)) {
+                continue;
+            }
+            triangles[h] += sign * (unionWeight(h, u) + unionWeight(h, v)) / 2.0;
+            refresh(h);
+        }
+    }
+
+    private boolean isAdjacent(int a, int b) {
+        return out[a].indexOf(b) >= 0 || in[a].indexOf(b) >= 0;
+    }
+
+    /**
+     * Weight of the pair seen from the node: the outgoing edge if any, the
+     * incoming one otherwise.
+     */
+    private float unionWeight(int node, int neighbor) {
+        int p = out[node].indexOf(neighbor);
+        return p >= 0 ? out[node].weights[p] : in[node].weights[in[node].indexOf(neighbor)];
+    }
+
+    /**
+     * Fills the scratch union row of the node and returns its length.
+     */
+    private int loadUnion(int node) {
+        Row ro = out[node];
+        Row ri = in[node];
+        if (unionIds.length < ro.size + ri.size) {
+            unionIds = new int[ro.size + ri.size];
+            unionWeights = new float[ro.size + ri.size];
+        }
+        int length = 0;
+        int a = 0;
+        int b = 0;
+        while (a < ro.size || b < ri.size) {
+            if (b == ri.size || (a < ro.size && ro.ids[a] <= ri.ids[b])) {
+                if (b < ri.size && ro.ids[a] == ri.ids[b]) {
+                    b++;
+                }
+                unionIds[length] = ro.ids[a];
+                unionWeights[length++] = ro.weights[a++];
+            } else {
+                unionIds[length] = ri.ids[b];
+                unionWeights[length++] = ri.weights[b++];
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Same sum as {@link ClusteringKernel#triangleWeight(int)} in directed
+     * mode, on the current adjacency.
+     */
+    private double directedTriangles(int node) {
+        int length = loadUnion(node);
+        double sum = 0;
+        for (int p = 0; p < length; p++) {
+            Row rj = out[unionIds[p]];
+            float wij = unionWeights[p];
+            int a = 0;
+            int b = 0;
+            while (a < length && b < rj.size) {
+                int x = unionIds[a];
+                int y = rj.ids[b];
+                if (x < y) {
+                    a++;
+                } else if (x > y) {
+                    b++;
+                } else {
+                    sum += (wij + unionWeights[a]) / 2;
+                    a++;
+                    b++;
+                }
+            }
+        }
+        return sum;
+    }
+
+    private double coefficient(int node) {
+        int degree = getDegree(node);
+        //if a node have degree < 2 means that this node can't form a triangle.
+        if (degree < 2) {
+            return 0;
+        }
+        return ((directed ? 1 : 2) / (strength[node] * (degree - 1.0))) * triangles[node];
+    }
+
+    /**
+     * Recomputes strength and clustering of the node and updates the totals.
+     */
+    private void refresh(int node) {
+        record(node, -1);
+        Row ro = out[node];
+        strength[node] = selfStrength[node] + ro.sum() + (directed ? in[node].sum() : 0);
+        clustering[node] = (float) coefficient(node);
+        record(node, 1);
+        markChanged(node);
+    }
+
+    private void record(int node, int sign) {
+        if (removed[node]) {
+            return;
+        }
+        totalClustering += sign * clustering[node];
+        totalStrength += sign * strength[node];
+        if (strengthDistribution != null) {
+            if (sign > 0) {
+                strengthDistribution.add(strength[node]);
+                clusteringDistribution.add(clustering[node]);
+            } else {
+                strengthDistribution.remove(strength[node]);
+                clusteringDistribution.remove(clustering[node]);
+            }
+        }
+    }
+
+    private void markChanged(int node) {
+        if (!changed[node]) {
+            changed[node] = true;
+            changedList[changedCount++] = node;
+        }
+    }
+
+    private void grow() {
+        int capacity = out.length * 2;
+        out = Arrays.copyOf(out, capacity);
+        in = directed ? Arrays.copyOf(in, capacity) : out;
+        selfLoops = Arrays.copyOf(selfLoops, capacity);
+        selfStrength = Arrays.copyOf(selfStrength, capacity);
+        triangles = Arrays.copyOf(triangles, capacity);
+        strength = Arrays.copyOf(strength, capacity);
+        clustering = Arrays.copyOf(clustering, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+        changed = Arrays.copyOf(changed, capacity);
+        changedList = Arrays.copyOf(changedList, capacity);
+    }
+
+    /**
+     * Sorted, growable neighbor list of one node.
+     */
+    private static class Row {
+
+        int[] ids;
+        float[] weights;
+        /**
+         * Id of the graph edge of every entry, -1 if not known.
+         */
+        int[] edges;
+        int size;
+
+        Row() {
+            ids = new int[4];
+            weights = new float[4];
+            edges = new int[4];
+        }
+
+        Row(int[] neighbors, float[] rowWeights, int start, int end) {
+            size = end - start;
+            ids = Arrays.copyOfRange(neighbors, start, start + Math.max(size, 4));
+            weights = Arrays.copyOfRange(rowWeights, start, start + Math.max(size, 4));
+            edges = new int[ids.length];
+            Arrays.fill(edges, -1);
+        }
+
+        int indexOf(int id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        void insert(int id, float weight, int edge) {
+            int p = -indexOf(id) - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+                edges = Arrays.copyOf(edges, size * 2);
+            }
+            System.arraycopy(ids, p, ids, p + 1, size - p);
+            System.arraycopy(weights, p, weights, p + 1, size - p);
+            System.arraycopy(edges, p, edges, p + 1, size - p);
+            ids[p] = id;
+            weights[p] = weight;
+            edges[p] = edge;
+            size++;
+        }
+
+        void delete(int id) {
+            int p = indexOf(id);
+            System.arraycopy(ids, p + 1, ids, p, size - p - 1);
+            System.arraycopy(weights, p + 1, weights, p, size - p - 1);
+            System.arraycopy(edges, p + 1, edges, p, size - p - 1);
+            size--;
+        }
+
+        float sum() {
+            float sum = 0;
+            for (int k = 0; k < size; k++) {
+                sum += weights[k];
+            }
+            return sum;
+        }
+    }
+}
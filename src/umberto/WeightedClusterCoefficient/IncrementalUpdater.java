@@ -0,0 +1,301 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gephi.data.attributes.api.*;
+import org.gephi.graph.api.*;
+
+/**
+ * Listens to graph and edge weight changes and forwards them to an
+ * {@link IncrementalClustering}, then writes the <code>weightedclustering</code>
+ * and <code>strenght</code> columns of the nodes that changed. <p> A pair of
+ * nodes may have several edges, such as a mutual pair the undirected view
+ * shows once. The snapshot kept the first, the model holds its id: the other
+ * edges of the pair are kept aside and their events ignored, until the edge
+ * the model holds is removed and the next one takes its place.
+ *
+ * @author Umberto Griffo
+ */
+class IncrementalUpdater implements GraphListener, AttributeListener {
+
+    private final WeightedClusterCoefficient statistic;
+    private final IncrementalClustering model;
+    private final GraphModel graphModel;
+    private final HierarchicalGraph graph;
+    private final GraphView view;
+    private final AttributeModel attributeModel;
+    private final AttributeColumn clusteringCol;
+    private final AttributeColumn strenghtCol;
+    private final Map<Node, Integer> indices;
+    private final List<Node> nodes;
+    /**
+     * Edges of the pairs that have more than one, besides the one the model
+     * holds, in graph order.
+     */
+    private final Map<Long, List<Edge>> twins = new HashMap<Long, List<Edge>>();
+
+    IncrementalUpdater(WeightedClusterCoefficient statistic, IncrementalClustering model, HierarchicalGraph hgraph,
+            AttributeModel attributeModel, AttributeColumn clusteringCol, AttributeColumn strenghtCol, Node[] nodes) {
+        this.statistic = statistic;
+        this.model = model;
+        this.graphModel = hgraph.getGraphModel();
+        this.graph = hgraph;
+        this.view = hgraph.getView();
+        this.attributeModel = attributeModel;
+        this.clusteringCol = clusteringCol;
+        this.strenghtCol = strenghtCol;
+        this.nodes = new ArrayList<Node>(nodes.length);
+        this.indices = new HashMap<Node, Integer>(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) {
+            this.nodes.add(nodes[i]);
+            indices.put(nodes[i], i);
+        }
+        //same edge order as the snapshot, the first edge of a pair is the one it kept
+        for (Edge edge : hgraph.getEdgesAndMetaEdges()) {
+            bind(edge);
+        }
+        if (!model.isDirected()) {
+            //the mutual edges the undirected view shows once
+            for (Edge edge : graphModel.getHierarchicalDirectedGraph(view).getEdgesAndMetaEdges()) {
+                bind(edge);
+            }
+        }
+    }
+
+    /**
+     * Records the edge as the one the model holds for its pair, or as a twin
+     * if the pair already has one. Called under read lock, before any change.
+     */
+    private void bind(Edge edge) {
+        Integer source = indices.get(edge.getSource());
+        Integer target = indices.get(edge.getTarget());
+        if (source == null || target == null || source.intValue() == target.intValue()) {
+            return;
+        }
+        int kept = model.getEdgeId(source, target);
+        if (kept == -1) {
+            model.setEdgeId(source, target, edge.getId());
+        } else if (kept != edge.getId()) {
+            addTwin(source, target, edge);
+        }
+    }
+
+    private long pair(int source, int target) {
+        if (!model.isDirected() && source > target) {
+            return (long) target << 32 | source;
+        }
+        return (long) source << 32 | target;
+    }
+
+    private void addTwin(int source, int target, Edge edge) {
+        long key = pair(source, target);
+        List<Edge> edges = twins.get(key);
+        if (edges == null) {
+            edges = new ArrayList<Edge>(1);
+            twins.put(key, edges);
+        }
+        if (!edges.contains(edge)) {
+            edges.add(edge);
+        }
+    }
+
+    /**
+     * Returns true if the edge is the one the model holds for its pair.
+     */
+    private boolean isKept(int source, int target, Edge edge) {
+        int kept = model.getEdgeId(source, target);
+        return kept == -1 || kept == edge.getId();
+    }
+
+    private void addEdge(int source, int target, Edge edge) {
+        if (source == target || !model.hasEdge(source, target)) {
+            model.addEdge(source, target, edge.getWeight(), edge.getId());
+        } else if (!isKept(source, target, edge)) {
+            addTwin(source, target, edge);
+        }
+    }
+
+    private void removeEdge(int source, int target, Edge edge) {
+        if (source == target) {
+            model.removeEdge(source, target, edge.getWeight());
+            return;
+        }
+        if (!model.hasEdge(source, target)) {
+            return;
+        }
+        long key = pair(source, target);
+        List<Edge> edges = twins.get(key);
+        if (!isKept(source, target, edge)) {
+            if (edges != null && edges.remove(edge) && edges.isEmpty()) {
+                twins.remove(key);
+            }
+            return;
+        }
+        if (edges == null) {
+            model.removeEdge(source, target);
+            return;
+        }
+        //the next edge of the pair takes the place of the removed one
+        Edge next = edges.remove(0);
+        if (edges.isEmpty()) {
+            twins.remove(key);
+        }
+        model.setWeight(source, target, next.getWeight());
+        model.setEdgeId(source, target, next.getId());
+    }
+
+    IncrementalClustering getModel() {
+        return model;
+    }
+
+    /**
+     * Recomputes the nodes from a snapshot of the graph as it is now, the way
+     * a full run would, and returns the largest difference with the values of
+     * the model. Callers synchronize on the model.
+     */
+    double verify() {
+        GraphSnapshot snapshot;
+        graph.readLock();
+        try {
+            GraphSnapshot.Builder builder = new GraphSnapshot.Builder(nodes.size(), model.isDirected(), graph.getEdgeCount());
+            for (Edge edge : graph.getEdgesAndMetaEdges()) {
+                Integer source = indices.get(edge.getSource());
+                Integer target = indices.get(edge.getTarget());
+                if (source != null && target != null) {
+                    builder.addEdge(source, target, edge.getWeight());
+                }
+            }
+            snapshot = builder.build();
+        } finally {
+            graph.readUnlock();
+        }
+        ClusteringKernel kernel = new ClusteringKernel(snapshot);
+        double deviation = 0;
+        for (int i : indices.values()) {
+            deviation = Math.max(deviation, Math.abs(kernel.clustering(i) - model.getClustering(i)));
+            deviation = Math.max(deviation, Math.abs(snapshot.getStrength(i) - model.getStrength(i)));
+        }
+        return deviation;
+    }
+
+    void start() {
+        graphModel.addGraphListener(this);
+        attributeModel.addAttributeListener(this);
+    }
+
+    void stop() {
+        graphModel.removeGraphListener(this);
+        attributeModel.removeAttributeListener(this);
+    }
+
+    @Override
+    public void graphChanged(GraphEvent event) {
+        if (event.getSource() != view) {
+            return;
+        }
+        if (event.is(GraphEvent.EventType.CLEAR_NODES, GraphEvent.EventType.CLEAR_EDGES)) {
+            //nothing left to update, a full run is needed
+            statistic.stopIncremental();
+            return;
+        }
+        GraphEventData data = event.getData();
+        if (data == null) {
+            return;
+        }
+        synchronized (model) {
+            if (event.is(GraphEvent.EventType.ADD_NODES_AND_EDGES)) {
+                if (data.addedNodes() != null) {
+                    for (Node node : data.addedNodes()) {
+                        if (!indices.containsKey(node)) {
+                            indices.put(node, model.addNode());
+                            nodes.add(node);
+                        }
+                    }
+                }
+                if (data.addedEdges() != null) {
+                    for (Edge edge : data.addedEdges()) {
+                        Integer source = indices.get(edge.getSource());
+                        Integer target = indices.get(edge.getTarget());
+                        if (source != null && target != null) {
+                            addEdge(source, target, edge);
+                        }
+                    }
+                }
+            } else if (event.is(GraphEvent.EventType.REMOVE_NODES_AND_EDGES)) {
+                if (data.removedEdges() != null) {
+                    for (Edge edge : data.removedEdges()) {
+                        Integer source = indices.get(edge.getSource());
+                        Integer target = indices.get(edge.getTarget());
+                        if (source != null && target != null) {
+                            removeEdge(source, target, edge);
+                        }
+                    }
+                }
+                if (data.removedNodes() != null) {
+                    for (Node node : data.removedNodes()) {
+                        Integer index = indices.remove(node);
+                        if (index != null) {
+                            model.removeNode(index);
+                        }
+                    }
+                }
+            }
+            writeChanged();
+        }
+    }
+
+    @Override
+    public void attributesChanged(AttributeEvent event) {
+        if (!event.is(AttributeEvent.EventType.SET_VALUE) || event.getSource() != attributeModel.getEdgeTable()) {
+            return;
+        }
+        AttributeEventData data = event.getData();
+        Object[] objects = data.getTouchedObjects();
+        AttributeValue[] values = data.getTouchedValues();
+        if (objects == null || values == null) {
+            return;
+        }
+        synchronized (model) {
+            for (int i = 0; i < objects.length && i < values.length; i++) {
+                if (!(objects[i] instanceof EdgeData) || !"weight".equalsIgnoreCase(values[i].getColumn().getId())) {
+                    continue;
+                }
+                Edge edge = ((EdgeData) objects[i]).getEdge();
+                Integer source = indices.get(edge.getSource());
+                Integer target = indices.get(edge.getTarget());
+                if (source != null && target != null && isKept(source, target, edge)) {
+                    model.setWeight(source, target, edge.getWeight());
+                }
+            }
+            writeChanged();
+        }
+    }
+
+    private void writeChanged() {
+        for (int i : model.drainChanged()) {
+            if (i < nodes.size() && indices.containsKey(nodes.get(i))) {
+                AttributeRow row = (AttributeRow) nodes.get(i).getNodeData().getAttributes();
+                row.setValue(clusteringCol, model.getClustering(i));
+                row.setValue(strenghtCol, (double) model.getStrength(i));
+            }
+        }
+        statistic.incrementalUpdate(model);
+    }
+}
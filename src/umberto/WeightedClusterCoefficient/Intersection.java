@@ -0,0 +1,208 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+/**
+ * Intersection of two sorted ranges of neighbor indices, the inner loop of
+ * every kernel. <p> {@link #intersect(int[], int, int, int[], int, int)}
+ * leaves the positions of the common values in {@link #left} and
+ * {@link #right}, and the weights are then added up over those positions in
+ * a separate counted loop, see {@link #halfSum(float[], float, int)}. How the
+ * ranges are intersected is chosen for every pair: a linear merge when their
+ * lengths are close, a galloping search of the long range from each value of
+ * the short one when one is at least {@link #GALLOP_RATIO} times longer,
+ * which is the case of every hub against its low degree neighbors. Rows
+ * indexed by a {@link HubAdjacency} are probed or intersected through their
+ * bitmaps instead, see
+ * {@link #intersect(int[], int, int, HubAdjacency.Bitmap, int[], int, int, HubAdjacency.Bitmap)}.
+ * <p> An
+ * instance holds growing position buffers, it must be used by one thread at
+ * a time.
+ *
+ * @author Umberto Griffo
+ */
+final class Intersection {
+
+    /**
+     * Length ratio from which the long range is searched instead of merged.
+     */
+    static final int GALLOP_RATIO = 8;
+    /**
+     * Positions of the common values in the first and in the second range.
+     */
+    int[] left = new int[64];
+    int[] right = new int[64];
+    /**
+     * Entries read by the last intersection, the cost reported in the
+     * statistics of the kernels.
+     */
+    long scanned;
+
+    /**
+     * Intersects <code>a[aFrom, aTo)</code> with <code>b[bFrom, bTo)</code>,
+     * both sorted without duplicates, and returns the number of common
+     * values. Their positions are the first entries of {@link #left} and
+     * {@link #right}, in increasing order.
+     */
+    int intersect(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+        int aLength = aTo - aFrom;
+        int bLength = bTo - bFrom;
+        if (aLength <= 0 || bLength <= 0) {
+            scanned = 0;
+            return 0;
+        }
+        ensureCapacity(Math.min(aLength, bLength));
+        if ((long) aLength * GALLOP_RATIO <= bLength) {
+            return gallop(a, aFrom, aTo, b, bFrom, bTo, left, right);
+        } else if ((long) bLength * GALLOP_RATIO <= aLength) {
+            return gallop(b, bFrom, bTo, a, aFrom, aTo, right, left);
+        }
+        return merge(a, aFrom, aTo, b, bFrom, bTo);
+    }
+
+    /**
+     * Same as {@link #intersect(int[], int, int, int[], int, int)}, where
+     * <code>aHub</code> and <code>bHub</code> are the bitmaps of the rows
+     * holding the ranges, or null for rows kept as arrays. Two bitmaps are
+     * intersected container by container when that is cheaper than a merge,
+     * a bitmap is probed with every value of a range much shorter than its
+     * row.
+     */
+    int intersect(int[] a, int aFrom, int aTo, HubAdjacency.Bitmap aHub, int[] b, int bFrom, int bTo, HubAdjacency.Bitmap bHub) {
+        if (aHub == null && bHub == null) {
+            return intersect(a, aFrom, aTo, b, bFrom, bTo);
+        }
+        int aLength = aTo - aFrom;
+        int bLength = bTo - bFrom;
+        if (aLength <= 0 || bLength <= 0) {
+            scanned = 0;
+            return 0;
+        }
+        if (aHub != null && bHub != null && aHub.cost + bHub.cost < aLength + bLength) {
+            ensureCapacity(Math.min(aLength, bLength));
+            scanned = aHub.cost + bHub.cost;
+            return aHub.intersect(aFrom, aTo, bHub, bFrom, bTo, left, right);
+        } else if (bHub != null && (long) aLength * GALLOP_RATIO <= bLength) {
+            ensureCapacity(aLength);
+            return probe(a, aFrom, aTo, bHub, bFrom, bTo, left, right);
+        } else if (aHub != null && (long) bLength * GALLOP_RATIO <= aLength) {
+            ensureCapacity(bLength);
+            return probe(b, bFrom, bTo, aHub, aFrom, aTo, right, left);
+        }
+        return intersect(a, aFrom, aTo, b, bFrom, bTo);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (left.length < capacity) {
+            int size = Math.max(capacity, left.length * 2);
+            left = new int[size];
+            right = new int[size];
+        }
+    }
+
+    private int probe(int[] s, int sFrom, int sTo, HubAdjacency.Bitmap hub, int hFrom, int hTo, int[] sPositions, int[] hPositions) {
+        int count = 0;
+        for (int i = sFrom; i < sTo; i++) {
+            int position = hub.position(s[i]);
+            if (position >= hFrom && position < hTo) {
+                sPositions[count] = i;
+                hPositions[count] = position;
+                count++;
+            }
+        }
+        scanned = sTo - sFrom;
+        return count;
+    }
+
+    private int merge(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+        int[] l = left;
+        int[] r = right;
+        int count = 0;
+        int i = aFrom;
+        int j = bFrom;
+        while (i < aTo && j < bTo) {
+            int x = a[i];
+            int y = b[j];
+            if (x == y) {
+                l[count] = i;
+                r[count] = j;
+                count++;
+            }
+            //advance both on a match, otherwise the smaller
+            i += x <= y ? 1 : 0;
+            j += x >= y ? 1 : 0;
+        }
+        scanned = (i - aFrom) + (j - bFrom);
+        return count;
+    }
+
+    /**
+     * Looks up every value of the short range in the long one, with an
+     * exponential then a binary search starting after the last position
+     * found.
+     */
+    private int gallop(int[] s, int sFrom, int sTo, int[] g, int gFrom, int gTo, int[] sPositions, int[] gPositions) {
+        int count = 0;
+        long probes = 0;
+        int low = gFrom;
+        for (int i = sFrom; i < sTo && low < gTo; i++) {
+            int x = s[i];
+            //g[low - 1] < x, find the first position with g >= x
+            int step = 1;
+            int high = low;
+            while (high < gTo && g[high] < x) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+                probes++;
+            }
+            if (high > gTo) {
+                high = gTo;
+            }
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (g[mid] < x) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+                probes++;
+            }
+            probes++;
+            if (low < gTo && g[low] == x) {
+                sPositions[count] = i;
+                gPositions[count] = low;
+                count++;
+                low++;
+            }
+        }
+        scanned = probes;
+        return count;
+    }
+
+    /**
+     * Returns the sum of <code>(w + weights[left[k]]) / 2</code> over the
+     * <code>count</code> positions of the last intersection.
+     */
+    double halfSum(float[] weights, float w, int count) {
+        int[] l = left;
+        double sum = 0;
+        for (int k = 0; k < count; k++) {
+            sum += weights[l[k]];
+        }
+        return (count * (double) w + sum) / 2;
+    }
+}
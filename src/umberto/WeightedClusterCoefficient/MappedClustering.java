@@ -0,0 +1,318 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the weighted clustering coefficient of every node of a
+ * {@link MappedGraph}, writing the results to a memory-mapped file, so
+ * neither the graph nor the results need to fit in the heap. <p> The math is
+ * the one of {@link ClusteringKernel}. Nodes are taken in ranges of
+ * {@link #RANGE} consecutive nodes, handed out in increasing order to the
+ * workers, so the rows in use form a window moving along the file that the
+ * page cache can hold. Range totals are merged in range order, so the
+ * averages do not depend on the number of threads. <p> The result file is
+ * little endian: a 32 bytes header (magic "WCCR", version, node count as a
+ * long, 0), then <code>float strength[n]</code>, padded to 8 bytes, then
+ * <code>double clustering[n]</code>.
+ *
+ * @author Umberto Griffo
+ */
+public class MappedClustering {
+
+    static final int RESULT_MAGIC = 0x52434357;
+    static final int RESULT_HEADER_BYTES = 32;
+    /**
+     * Nodes per range.
+     */
+    public static final int RANGE = 1 << 12;
+    private static final long POLL_MILLIS = 100;
+    private final MappedGraph graph;
+    private final int threads;
+    private final int nodeCount;
+    private final AtomicInteger nextRange = new AtomicInteger();
+    private final AtomicInteger processed = new AtomicInteger();
+    private volatile boolean cancel;
+    private ClusteringAccumulator[] finished;
+    private int nextMerge;
+    private ClusteringAccumulator result;
+
+    public MappedClustering(MappedGraph graph, int threads) {
+        this(graph, threads, graph.getNodeCount());
+    }
+
+    /**
+     * Computes only the nodes <code>[0, nodeCount)</code>, the others only
+     * lend their rows to the triangle search, as in the shard of a
+     * {@link ShardedClustering}. The result file holds these nodes.
+     */
+    public MappedClustering(MappedGraph graph, int threads, int nodeCount) {
+        if (nodeCount < 0 || nodeCount > graph.getNodeCount()) {
+            throw new IllegalArgumentException("Node count " + nodeCount + " out of [0, " + graph.getNodeCount() + "]");
+        }
+        this.graph = graph;
+        this.threads = Math.max(1, threads);
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * Number of units reported through the listener, one per node.
+     */
+    public int getTotalWork() {
+        return nodeCount;
+    }
+
+    /**
+     * Computes every node and writes the result file.
+     *
+     * @param prototype empty accumulator whose histogram bins are used, see
+     * {@link #defaultAccumulator(MappedGraph)}
+     * @param listener called from the calling thread, may be null
+     */
+    public ClusteringAccumulator run(File output, ClusteringAccumulator prototype, ClusteringRunner.Listener listener) throws IOException {
+        final int n = nodeCount;
+        RandomAccessFile file = new RandomAccessFile(output, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedRegion header = createResults(file, n);
+            final MappedRegion strength = strengthResults(channel, n, FileChannel.MapMode.READ_WRITE);
+            final MappedRegion clustering = clusteringResults(channel, n, FileChannel.MapMode.READ_WRITE);
+            int ranges = (n + RANGE - 1) / RANGE;
+            finished = new ClusteringAccumulator[ranges];
+            nextMerge = 0;
+            result = prototype.emptyCopy();
+            nextRange.set(0);
+            processed.set(0);
+            if (threads == 1) {
+                work(prototype, strength, clustering, listener);
+            } else {
+                runParallel(prototype, strength, clustering, listener);
+            }
+            header.force();
+            strength.force();
+            clustering.force();
+            return result;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Sizes a result file for <code>n</code> nodes and writes its header,
+     * returned mapped.
+     */
+    static MappedRegion createResults(RandomAccessFile file, int n) throws IOException {
+        file.setLength(0);
+        file.setLength(RESULT_HEADER_BYTES + MappedGraph.align(4L * n) + 8L * n);
+        MappedRegion header = new MappedRegion(file.getChannel(), FileChannel.MapMode.READ_WRITE, 0, RESULT_HEADER_BYTES);
+        header.putInt(0, RESULT_MAGIC);
+        header.putInt(1, MappedGraph.VERSION);
+        header.putLong(1, n);
+        return header;
+    }
+
+    /**
+     * Maps the strengths of a result file of <code>n</code> nodes.
+     */
+    static MappedRegion strengthResults(FileChannel channel, int n, FileChannel.MapMode mode) throws IOException {
+        return new MappedRegion(channel, mode, RESULT_HEADER_BYTES, 4L * n);
+    }
+
+    /**
+     * Maps the coefficients of a result file of <code>n</code> nodes.
+     */
+    static MappedRegion clusteringResults(FileChannel channel, int n, FileChannel.MapMode mode) throws IOException {
+        return new MappedRegion(channel, mode, RESULT_HEADER_BYTES + MappedGraph.align(4L * n), 8L * n);
+    }
+
+    private void runParallel(final ClusteringAccumulator prototype, final MappedRegion strength, final MappedRegion clustering,
+            ClusteringRunner.Listener listener) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        work(prototype, strength, clustering, null);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException ex) {
+                        if (listener != null) {
+                            listener.progress(processed.get());
+                        }
+                    } catch (InterruptedException ex) {
+                        cancel = true;
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted", ex);
+                    } catch (ExecutionException ex) {
+                        throw new IOException("Clustering failed", ex.getCause());
+                    }
+                }
+            }
+            if (listener != null) {
+                listener.progress(processed.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Takes ranges until none is left.
+     */
+    private void work(ClusteringAccumulator prototype, MappedRegion strength, MappedRegion clustering, ClusteringRunner.Listener listener) {
+        int n = nodeCount;
+        Row row = new Row();
+        int range;
+        while (!cancel && (range = nextRange.getAndIncrement()) < finished.length) {
+            ClusteringAccumulator accumulator = prototype.emptyCopy();
+            int end = Math.min(n, (range + 1) * RANGE);
+            for (int i = range * RANGE; i < end && !cancel; i++) {
+                //rounded like ClusteringRunner does, so both paths give the same values
+                float cc = (float) clustering(i, row);
+                float s = graph.getStrength(i);
+                strength.putFloat(i, s);
+                clustering.putDouble(i, cc);
+                accumulator.add(s, cc);
+            }
+            int done = processed.addAndGet(end - range * RANGE);
+            finish(range, accumulator);
+            if (listener != null) {
+                listener.progress(done);
+            }
+        }
+    }
+
+    /**
+     * Merges the finished ranges in range order.
+     */
+    private synchronized void finish(int range, ClusteringAccumulator accumulator) {
+        finished[range] = accumulator;
+        while (nextMerge < finished.length && finished[nextMerge] != null) {
+            result.merge(finished[nextMerge]);
+            finished[nextMerge++] = null;
+        }
+    }
+
+    /**
+     * See {@link ClusteringKernel#clustering(int)}.
+     */
+    private double clustering(int node, Row row) {
+        int degree = graph.getDegree(node);
+        //if a node have degree < 2 means that this node can't form a triangle.
+        if (degree < 2) {
+            return 0;
+        }
+        float strength = graph.getStrength(node);
+        row.load(graph, node);
+        double sum = 0;
+        for (int p = 0; p < row.length; p++) {
+            int j = row.neighbors[p];
+            float wij = row.weights[p];
+            //undirected: only h > j so every unordered pair is seen once, directed: every edge j->h
+            int a = graph.isDirected() ? 0 : p + 1;
+            long b = graph.getOutOffset(j);
+            long bEnd = graph.getOutOffset(j + 1);
+            while (a < row.length && b < bEnd) {
+                int x = row.neighbors[a];
+                int y = graph.getOutNeighbor(b);
+                if (x < y) {
+                    a++;
+                } else if (x > y) {
+                    b++;
+                } else {
+                    sum += (wij + row.weights[a]) / 2;
+                    a++;
+                    b++;
+                }
+            }
+        }
+        if (graph.isDirected()) {
+            return (1 / (strength * (degree - 1.0))) * sum;
+        }
+        return (2 / (strength * (degree - 1.0))) * sum;
+    }
+
+    public void cancel() {
+        cancel = true;
+    }
+
+    public boolean isCancelled() {
+        return cancel;
+    }
+
+    /**
+     * Accumulator with logarithmic strength bins over the strength range of
+     * the graph and linear clustering bins over [0, 1].
+     */
+    public static ClusteringAccumulator defaultAccumulator(MappedGraph graph) {
+        float min = Float.MAX_VALUE;
+        float max = 0;
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            float s = graph.getStrength(i);
+            if (s > 0) {
+                min = Math.min(min, s);
+                max = Math.max(max, s);
+            }
+        }
+        return new ClusteringAccumulator(
+                new Histogram(Histogram.Binning.LOGARITHMIC, Histogram.DEFAULT_BINS, min == Float.MAX_VALUE ? 0 : min, max),
+                new Histogram(Histogram.Binning.LINEAR, Histogram.DEFAULT_BINS, 0, 1));
+    }
+
+    /**
+     * Union row of the node copied to the heap, it is scanned once per
+     * neighbor.
+     */
+    private static class Row {
+
+        int length;
+        int[] neighbors = new int[16];
+        float[] weights = new float[16];
+
+        void load(MappedGraph graph, int node) {
+            long start = graph.getOffset(node);
+            length = (int) (graph.getOffset(node + 1) - start);
+            if (length > neighbors.length) {
+                neighbors = new int[length];
+                weights = new float[length];
+            }
+            for (int k = 0; k < length; k++) {
+                neighbors[k] = graph.getNeighbor(start + k);
+                weights[k] = graph.getWeight(start + k);
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A graph in the binary adjacency format, memory-mapped read only, so the
+ * operating system page cache holds the parts in use instead of the heap.
+ * <p> The format is the {@link GraphSnapshot} layout on disk, little endian,
+ * every section starting at a multiple of 8 bytes:
+ * <pre>
+ * header    64 bytes: magic "WCCG", version, flags (1 = directed), 0,
+ *           node count (long), union entries (long), out entries (long)
+ * degree    int[n]
+ * strength  float[n]
+ * offsets   long[n + 1]    union rows
+ * neighbors int[m]         sorted within a row
+ * weights   float[m]
+ * directed only:
+ * out offsets   long[n + 1]
+ * out neighbors int[m out] sorted within a row
+ * </pre>
+ * Files are written by {@link MappedGraphWriter}.
+ *
+ * @author Umberto Griffo
+ */
+public class MappedGraph {
+
+    static final int MAGIC = 0x47434357;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    private final RandomAccessFile file;
+    private final boolean directed;
+    private final int nodeCount;
+    private final long entryCount;
+    private final long outEntryCount;
+    private final MappedRegion degree;
+    private final MappedRegion strength;
+    private final MappedRegion offsets;
+    private final MappedRegion neighbors;
+    private final MappedRegion weights;
+    private final MappedRegion outOffsets;
+    private final MappedRegion outNeighbors;
+
+    public MappedGraph(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a weighted clustering graph file");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(path + ": unsupported version " + header.getInt(4));
+            }
+            directed = (header.getInt(8) & 1) != 0;
+            long nodes = header.getLong(16);
+            if (nodes < 0 || nodes >= Integer.MAX_VALUE) {
+                throw new IOException(path + ": invalid node count " + nodes);
+            }
+            nodeCount = (int) nodes;
+            entryCount = header.getLong(24);
+            outEntryCount = header.getLong(32);
+            long expected = sectionsEnd(directed, nodeCount, entryCount, outEntryCount);
+            if (channel.size() < expected) {
+                throw new IOException(path + " is truncated: " + channel.size() + " bytes instead of " + expected);
+            }
+            FileChannel.MapMode mode = FileChannel.MapMode.READ_ONLY;
+            long position = HEADER_BYTES;
+            degree = new MappedRegion(channel, mode, position, 4L * nodeCount);
+            position = align(position + degree.length());
+            strength = new MappedRegion(channel, mode, position, 4L * nodeCount);
+            position = align(position + strength.length());
+            offsets = new MappedRegion(channel, mode, position, 8L * (nodeCount + 1));
+            position += offsets.length();
+            neighbors = new MappedRegion(channel, mode, position, 4 * entryCount);
+            position = align(position + neighbors.length());
+            weights = new MappedRegion(channel, mode, position, 4 * entryCount);
+            position = align(position + weights.length());
+            if (directed) {
+                outOffsets = new MappedRegion(channel, mode, position, 8L * (nodeCount + 1));
+                position += outOffsets.length();
+                outNeighbors = new MappedRegion(channel, mode, position, 4 * outEntryCount);
+            } else {
+                outOffsets = offsets;
+                outNeighbors = neighbors;
+            }
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * Size of a file with the given counts, header included.
+     */
+    static long sectionsEnd(boolean directed, int nodeCount, long entryCount, long outEntryCount) {
+        long position = HEADER_BYTES;
+        position = align(position + 4L * nodeCount);
+        position = align(position + 4L * nodeCount);
+        position += 8L * (nodeCount + 1);
+        position = align(position + 4 * entryCount);
+        position = align(position + 4 * entryCount);
+        if (directed) {
+            position += 8L * (nodeCount + 1);
+            position += 4 * outEntryCount;
+        }
+        return position;
+    }
+
+    /**
+     * Unmapping is left to the garbage collector, this only releases the
+     * file handle.
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+
+    public boolean isDirected() {
+        return directed;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Number of neighbor entries, each undirected edge counting twice.
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Degree of the node, a self loop counting twice.
+     */
+    public int getDegree(int node) {
+        return degree.getInt(node);
+    }
+
+    public float getStrength(int node) {
+        return strength.getFloat(node);
+    }
+
+    /**
+     * Start of the union row of the node, the row ends at
+     * <code>getOffset(node + 1)</code>.
+     */
+    public long getOffset(int node) {
+        return offsets.getLong(node);
+    }
+
+    public int getNeighbor(long entry) {
+        return neighbors.getInt(entry);
+    }
+
+    public float getWeight(long entry) {
+        return weights.getFloat(entry);
+    }
+
+    /**
+     * Start of the out row of the node, the union row if undirected.
+     */
+    public long getOutOffset(int node) {
+        return outOffsets.getLong(node);
+    }
+
+    public int getOutNeighbor(long entry) {
+        return outNeighbors.getInt(entry);
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Writes graphs in the {@link MappedGraph} binary format. <p>
+ * {@link #convert(File, boolean, File)} turns an edge list into a graph file
+ * without holding the edges in the heap: the rows are scattered into a
+ * memory-mapped scratch file, then sorted and deduplicated one at a time. The
+ * heap holds a few arrays of one entry per node and the largest row. The
+ * result is the same graph {@link GraphSnapshot.Builder} would build: the
+ * first weight of a duplicate edge wins and self loops only count in degree
+ * and strength.
+ *
+ * @author Umberto Griffo
+ */
+public class MappedGraphWriter {
+
+    private MappedGraphWriter() {
+    }
+
+    /**
+     * Writes a snapshot held in the heap.
+     */
+    public static void write(GraphSnapshot snapshot, File output) throws IOException {
+        int n = snapshot.getNodeCount();
+        boolean directed = snapshot.isDirected();
+        int[] offsets = snapshot.getOffsets();
+        RandomAccessFile file = new RandomAccessFile(output, "rw");
+        try {
+            file.setLength(0);
+            SectionWriter out = new SectionWriter(file.getChannel());
+            out.header(directed, n, offsets[n], directed ? snapshot.getOutOffsets()[n] : 0);
+            for (int i = 0; i < n; i++) {
+                out.putInt(snapshot.getDegree(i));
+            }
+            out.align();
+            for (int i = 0; i < n; i++) {
+                out.putFloat(snapshot.getStrength(i));
+            }
+            out.align();
+            out.putOffsets(offsets);
+            out.putInts(snapshot.getNeighbors(), offsets[n]);
+            out.align();
+            out.putFloats(snapshot.getWeights(), offsets[n]);
+            out.align();
+            if (directed) {
+                int[] outOffsets = snapshot.getOutOffsets();
+                out.putOffsets(outOffsets);
+                out.putInts(snapshot.getOutNeighbors(), outOffsets[n]);
+            }
+            out.flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Converts an edge list (see {@link EdgeListReader}) whose node ids are
+     * non negative integers; node <code>i</code> of the graph file is id
+     * <code>i</code>, ids missing from the list are isolated nodes. The
+     * file is read twice. Scratch files are created next to the output and
+     * deleted at the end.
+     *
+     * @return the number of nodes
+     */
+    public static int convert(File edgeList, final boolean directed, File output) throws IOException {
+        //Pass 1: count the entries of every row, add the self loops
+        final Counts counts = new Counts();
+        Reader reader = EdgeListReader.open(edgeList);
+        try {
+            EdgeListReader.scan(reader, new EdgeListReader.Visitor() {
+                @Override
+                public void edge(String source, String target, float weight, int lineNumber) throws IOException {
+                    int s = parseId(source, lineNumber);
+                    int t = parseId(target, lineNumber);
+                    counts.ensure(Math.max(s, t) + 1);
+                    if (s == t) {
+                        counts.degree[s] += 2;
+                        counts.strength[s] += directed ? 2 * weight : weight;
+                    } else {
+                        counts.out[s]++;
+                        if (directed) {
+                            counts.in[t]++;
+                        } else {
+                            counts.out[t]++;
+                        }
+                    }
+                }
+            });
+        } finally {
+            reader.close();
+        }
+        int n = counts.nodeCount;
+        File outScratch = new File(output.getPath() + ".out.tmp");
+        File inScratch = new File(output.getPath() + ".in.tmp");
+        File neighborsScratch = new File(output.getPath() + ".neighbors.tmp");
+        File weightsScratch = new File(output.getPath() + ".weights.tmp");
+        File outNeighborsScratch = new File(output.getPath() + ".outneighbors.tmp");
+        RandomAccessFile outRaw = null;
+        RandomAccessFile inRaw = null;
+        RandomAccessFile neighbors = null;
+        RandomAccessFile weights = null;
+        RandomAccessFile outNeighbors = null;
+        RandomAccessFile file = null;
+        try {
+            //Pass 2: scatter every entry to its row, in file order
+            final long[] outFill = prefix(counts.out, n);
+            final long[] inFill = directed ? prefix(counts.in, n) : null;
+            outRaw = scratch(outScratch, 8 * outFill[n]);
+            inRaw = directed ? scratch(inScratch, 8 * inFill[n]) : null;
+            final MappedRegion outRegion = new MappedRegion(outRaw.getChannel(), FileChannel.MapMode.READ_WRITE, 0, 8 * outFill[n]);
+            final MappedRegion inRegion = directed
+                    ? new MappedRegion(inRaw.getChannel(), FileChannel.MapMode.READ_WRITE, 0, 8 * inFill[n]) : outRegion;
+            final long[] outCursor = Arrays.copyOf(outFill, n);
+            final long[] inCursor = directed ? Arrays.copyOf(inFill, n) : outCursor;
+            reader = EdgeListReader.open(edgeList);
+            try {
+                EdgeListReader.scan(reader, new EdgeListReader.Visitor() {
+                    @Override
+                    public void edge(String source, String target, float weight, int lineNumber) throws IOException {
+                        int s = parseId(source, lineNumber);
+                        int t = parseId(target, lineNumber);
+                        if (s != t) {
+                            long p = outCursor[s]++;
+                            outRegion.putInt(2 * p, t);
+                            outRegion.putFloat(2 * p + 1, weight);
+                            p = inCursor[t]++;
+                            inRegion.putInt(2 * p, s);
+                            inRegion.putFloat(2 * p + 1, weight);
+                        }
+                    }
+                });
+            } finally {
+                reader.close();
+            }
+            //Pass 3: sort and compact row by row, union rows and out rows go to their own scratch files
+            neighbors = scratch(neighborsScratch, 0);
+            weights = scratch(weightsScratch, 0);
+            outNeighbors = directed ? scratch(outNeighborsScratch, 0) : null;
+            SectionWriter neighborsOut = new SectionWriter(neighbors.getChannel());
+            SectionWriter weightsOut = new SectionWriter(weights.getChannel());
+            SectionWriter outNeighborsOut = directed ? new SectionWriter(outNeighbors.getChannel()) : null;
+            long[] offsets = new long[n + 1];
+            long[] outOffsets = directed ? new long[n + 1] : null;
+            Row out = new Row();
+            Row in = new Row();
+            for (int i = 0; i < n; i++) {
+                out.load(outRegion, outFill[i], (int) (outFill[i + 1] - outFill[i]));
+                counts.degree[i] += out.length;
+                for (int k = 0; k < out.length; k++) {
+                    counts.strength[i] += out.weights[k];
+                }
+                if (!directed) {
+                    for (int k = 0; k < out.length; k++) {
+                        neighborsOut.putInt(out.neighbors[k]);
+                        weightsOut.putFloat(out.weights[k]);
+                    }
+                    offsets[i + 1] = offsets[i] + out.length;
+                    continue;
+                }
+                in.load(inRegion, inFill[i], (int) (inFill[i + 1] - inFill[i]));
+                counts.degree[i] += in.length;
+                for (int k = 0; k < in.length; k++) {
+                    counts.strength[i] += in.weights[k];
+                }
+                for (int k = 0; k < out.length; k++) {
+                    outNeighborsOut.putInt(out.neighbors[k]);
+                }
+                outOffsets[i + 1] = outOffsets[i] + out.length;
+                //union of the two rows, the out weight wins
+                int a = 0;
+                int b = 0;
+                long written = 0;
+                while (a < out.length || b < in.length) {
+                    if (b == in.length || (a < out.length && out.neighbors[a] <= in.neighbors[b])) {
+                        if (b < in.length && out.neighbors[a] == in.neighbors[b]) {
+                            b++;
+                        }
+                        neighborsOut.putInt(out.neighbors[a]);
+                        weightsOut.putFloat(out.weights[a++]);
+                    } else {
+                        neighborsOut.putInt(in.neighbors[b]);
+                        weightsOut.putFloat(in.weights[b++]);
+                    }
+                    written++;
+                }
+                offsets[i + 1] = offsets[i] + written;
+            }
+            neighborsOut.flush();
+            weightsOut.flush();
+            if (directed) {
+                outNeighborsOut.flush();
+            }
+            //Assemble the graph file
+            file = new RandomAccessFile(output, "rw");
+            file.setLength(0);
+            SectionWriter graph = new SectionWriter(file.getChannel());
+            graph.header(directed, n, offsets[n], directed ? outOffsets[n] : 0);
+            for (int i = 0; i < n; i++) {
+                graph.putInt(counts.degree[i]);
+            }
+            graph.align();
+            for (int i = 0; i < n; i++) {
+                graph.putFloat(counts.strength[i]);
+            }
+            graph.align();
+            graph.putOffsets(offsets);
+            graph.transfer(neighbors.getChannel());
+            graph.align();
+            graph.transfer(weights.getChannel());
+            graph.align();
+            if (directed) {
+                graph.putOffsets(outOffsets);
+                graph.transfer(outNeighbors.getChannel());
+            }
+            graph.flush();
+        } finally {
+            for (RandomAccessFile f : new RandomAccessFile[]{outRaw, inRaw, neighbors, weights, outNeighbors, file}) {
+                if (f != null) {
+                    f.close();
+                }
+            }
+            for (File f : new File[]{outScratch, inScratch, neighborsScratch, weightsScratch, outNeighborsScratch}) {
+                f.delete();
+            }
+        }
+        return n;
+    }
+
+    private static int parseId(String id, int lineNumber) throws IOException {
+        try {
+            int value = Integer.parseInt(id);
+            if (value >= 0 && value < Integer.MAX_VALUE - 1) {
+                return value;
+            }
+        } catch (NumberFormatException ex) {
+            //fall through
+        }
+        throw new IOException("Line " + lineNumber + ": node id '" + id + "' is not a non negative integer");
+    }
+
+    private static long[] prefix(int[] counts, int n) {
+        long[] prefix = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            prefix[i + 1] = prefix[i] + counts[i];
+        }
+        return prefix;
+    }
+
+    private static RandomAccessFile scratch(File path, long length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.setLength(length);
+        return file;
+    }
+
+    /**
+     * Per node counters of the first pass, grown as larger ids appear.
+     */
+    private static class Counts {
+
+        int nodeCount;
+        int[] out = new int[0];
+        int[] in = new int[0];
+        int[] degree = new int[0];
+        float[] strength = new float[0];
+
+        void ensure(int count) {
+            if (count <= nodeCount) {
+                return;
+            }
+            nodeCount = count;
+            if (count > out.length) {
+                int capacity = (int) Math.min(Integer.MAX_VALUE - 1, Math.max(count, out.length + (out.length >> 1) + 16L));
+                out = Arrays.copyOf(out, capacity);
+                in = Arrays.copyOf(in, capacity);
+                degree = Arrays.copyOf(degree, capacity);
+                strength = Arrays.copyOf(strength, capacity);
+            }
+        }
+    }
+
+    /**
+     * A row read from a scratch file, sorted by neighbor with duplicates
+     * removed, the first entry of a duplicate winning.
+     */
+    private static class Row {
+
+        int length;
+        int[] neighbors = new int[16];
+        float[] weights = new float[16];
+        long[] keys = new long[16];
+
+        void load(MappedRegion raw, long start, int count) {
+            if (count > keys.length) {
+                keys = new long[count];
+                neighbors = new int[count];
+                weights = new float[count];
+            }
+            for (int k = 0; k < count; k++) {
+                keys[k] = ((long) raw.getInt(2 * (start + k)) << 32) | k;
+            }
+            Arrays.sort(keys, 0, count);
+            length = 0;
+            int last = -1;
+            for (int k = 0; k < count; k++) {
+                int neighbor = (int) (keys[k] >>> 32);
+                if (neighbor == last) {
+                    continue;
+                }
+                last = neighbor;
+                neighbors[length] = neighbor;
+                weights[length++] = raw.getFloat(2 * (start + (int) keys[k]) + 1);
+            }
+        }
+    }
+
+    /**
+     * Buffered little endian writer appending to a channel.
+     */
+    static class SectionWriter {
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        SectionWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void header(boolean directed, int nodeCount, long entryCount, long outEntryCount) throws IOException {
+            putInt(MappedGraph.MAGIC);
+            putInt(MappedGraph.VERSION);
+            putInt(directed ? 1 : 0);
+            putInt(0);
+            putLong(nodeCount);
+            putLong(entryCount);
+            putLong(outEntryCount);
+            while (position < MappedGraph.HEADER_BYTES) {
+                putLong(0);
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            reserve(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        void putFloat(float value) throws IOException {
+            reserve(4);
+            buffer.putFloat(value);
+            position += 4;
+        }
+
+        void putLong(long value) throws IOException {
+            reserve(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        void putDouble(double value) throws IOException {
+            reserve(8);
+            buffer.putDouble(value);
+            position += 8;
+        }
+
+        /**
+         * Appends the text in UTF-8, one byte per char when it is ASCII.
+         */
+        void putText(CharSequence text) throws IOException {
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    putBytes(text.subSequence(i, length).toString().getBytes("UTF-8"));
+                    return;
+                }
+                reserve(1);
+                buffer.put((byte) c);
+                position++;
+            }
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            for (int done = 0; done < bytes.length;) {
+                reserve(1);
+                int count = Math.min(buffer.remaining(), bytes.length - done);
+                buffer.put(bytes, done, count);
+                done += count;
+                position += count;
+            }
+        }
+
+        void putInts(int[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                putInt(values[i]);
+            }
+        }
+
+        void putFloats(float[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                putFloat(values[i]);
+            }
+        }
+
+        void putOffsets(int[] offsets) throws IOException {
+            for (int offset : offsets) {
+                putLong(offset);
+            }
+        }
+
+        void putOffsets(long[] offsets) throws IOException {
+            for (long offset : offsets) {
+                putLong(offset);
+            }
+        }
+
+        /**
+         * Pads with zeros up to the next multiple of 8 bytes.
+         */
+        void align() throws IOException {
+            while ((position & 7) != 0) {
+                reserve(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        /**
+         * Appends the whole content of another channel.
+         */
+        void transfer(FileChannel from) throws IOException {
+            flush();
+            long size = from.size();
+            long done = 0;
+            while (done < size) {
+                done += from.transferTo(done, size - done, channel);
+            }
+            position += size;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
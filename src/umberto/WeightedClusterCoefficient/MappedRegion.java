@@ -0,0 +1,108 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A little endian region of a file mapped in segments of at most 1 GB, so it
+ * can be larger than the 2 GB a single <code>MappedByteBuffer</code> can
+ * address. <p> Indices are in 4 byte units for ints and floats and in 8 byte
+ * units for longs and doubles. Segments are a multiple of 8 bytes long, so an
+ * element never spans two segments. Reads are thread safe, writes to
+ * different elements too.
+ *
+ * @author Umberto Griffo
+ */
+class MappedRegion {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private final MappedByteBuffer[] segments;
+    private final long length;
+
+    /**
+     * Maps <code>length</code> bytes of the channel from
+     * <code>position</code>, which must be a multiple of 8.
+     */
+    MappedRegion(FileChannel channel, FileChannel.MapMode mode, long position, long length) throws IOException {
+        this.length = length;
+        int count = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[count];
+        for (int s = 0; s < count; s++) {
+            long start = (long) s << SEGMENT_SHIFT;
+            long size = Math.min(1L << SEGMENT_SHIFT, length - start);
+            segments[s] = channel.map(mode, position + start, size);
+            segments[s].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    int getInt(long index) {
+        long position = index << 2;
+        return segments[(int) (position >>> SEGMENT_SHIFT)].getInt((int) (position & SEGMENT_MASK));
+    }
+
+    float getFloat(long index) {
+        long position = index << 2;
+        return segments[(int) (position >>> SEGMENT_SHIFT)].getFloat((int) (position & SEGMENT_MASK));
+    }
+
+    long getLong(long index) {
+        long position = index << 3;
+        return segments[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & SEGMENT_MASK));
+    }
+
+    double getDouble(long index) {
+        long position = index << 3;
+        return segments[(int) (position >>> SEGMENT_SHIFT)].getDouble((int) (position & SEGMENT_MASK));
+    }
+
+    void putInt(long index, int value) {
+        long position = index << 2;
+        segments[(int) (position >>> SEGMENT_SHIFT)].putInt((int) (position & SEGMENT_MASK), value);
+    }
+
+    void putFloat(long index, float value) {
+        long position = index << 2;
+        segments[(int) (position >>> SEGMENT_SHIFT)].putFloat((int) (position & SEGMENT_MASK), value);
+    }
+
+    void putLong(long index, long value) {
+        long position = index << 3;
+        segments[(int) (position >>> SEGMENT_SHIFT)].putLong((int) (position & SEGMENT_MASK), value);
+    }
+
+    void putDouble(long index, double value) {
+        long position = index << 3;
+        segments[(int) (position >>> SEGMENT_SHIFT)].putDouble((int) (position & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Writes the modified pages back to the file.
+     */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.gephi.graph.api.*;
+
+/**
+ * A {@link GraphSnapshot} of the 1-hop neighborhoods of a subset of nodes:
+ * the subset, its neighbors, every edge of the subset and every edge between
+ * two neighbors. That is all the coefficient and the strength of a subset
+ * node depend on, the rest of the graph is never read. <p> The subset nodes
+ * come first, <code>[0, getSubsetSize())</code>, and are the only ones to
+ * compute, see {@link ClusteringRunner#ClusteringRunner(ClusteringKernel, int,
+ * ClusteringAccumulator, int)}; the neighbors only have the edges among the
+ * neighborhood. The edges between two neighbors are found from the side that
+ * costs less: the edges of the neighbor when its degree is small, one edge
+ * and one meta edge lookup per other neighbor when it is a hub.
+ *
+ * @author Umberto Griffo
+ */
+class NeighborhoodSnapshot {
+
+    /**
+     * Cost of an edge lookup, in edges iterated.
+     */
+    private static final int LOOKUP_COST = 8;
+    private final Node[] nodes;
+    private final int subsetSize;
+    private final Edge[] edges;
+    private final GraphSnapshot snapshot;
+
+    /**
+     * Must be called under read lock.
+     */
+    NeighborhoodSnapshot(HierarchicalGraph graph, List<Node> subset, boolean directed) {
+        Map<Node, Integer> indices = new HashMap<Node, Integer>(subset.size() * 8);
+        List<Node> local = new ArrayList<Node>(subset);
+        for (int i = 0; i < local.size(); i++) {
+            indices.put(local.get(i), i);
+        }
+        subsetSize = local.size();
+        //the same edge is met from both ends
+        Map<Edge, Boolean> found = new IdentityHashMap<Edge, Boolean>();
+        List<Edge> read = new ArrayList<Edge>();
+        for (int i = 0; i < subsetSize; i++) {
+            Node node = local.get(i);
+            for (Edge e : graph.getEdgesAndMetaEdges(node)) {
+                Node other = e.getSource() == node ? e.getTarget() : e.getSource();
+                if (!indices.containsKey(other)) {
+                    indices.put(other, local.size());
+                    local.add(other);
+                }
+                if (found.put(e, Boolean.TRUE) == null) {
+                    read.add(e);
+                }
+            }
+        }
+        int localCount = local.size();
+        for (int j = subsetSize; j < localCount; j++) {
+            Node node = local.get(j);
+            int ghosts = localCount - subsetSize;
+            if ((long) ghosts * LOOKUP_COST < graph.getDegree(node)) {
+                //a hub: look up the few pairs instead of reading its edges
+                for (int h = subsetSize; h < localCount; h++) {
+                    if (h == j || (!directed && h < j)) {
+                        continue;
+                    }
+                    //the edges of a collapsed group are meta edges, the
+                    //other path reads them with getEdgesAndMetaEdges
+                    Edge e = graph.getEdge(node, local.get(h));
+                    if (e != null && found.put(e, Boolean.TRUE) == null) {
+                        read.add(e);
+                    }
+                    Edge meta = graph.getMetaEdge(node, local.get(h));
+                    if (meta != null && found.put(meta, Boolean.TRUE) == null) {
+                        read.add(meta);
+                    }
+                }
+                continue;
+            }
+            for (Edge e : graph.getEdgesAndMetaEdges(node)) {
+                Node other = e.getSource() == node ? e.getTarget() : e.getSource();
+                Integer h = indices.get(other);
+                if (h != null && h >= subsetSize && found.put(e, Boolean.TRUE) == null) {
+                    read.add(e);
+                }
+            }
+        }
+        nodes = local.toArray(new Node[localCount]);
+        edges = read.toArray(new Edge[read.size()]);
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder(localCount, directed, edges.length);
+        for (Edge e : edges) {
+            builder.addEdge(indices.get(e.getSource()), indices.get(e.getTarget()), e.getWeight());
+        }
+        snapshot = builder.build();
+    }
+
+    GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * The subset nodes then their neighbors, in snapshot order.
+     */
+    Node[] getNodes() {
+        return nodes;
+    }
+
+    int getSubsetSize() {
+        return subsetSize;
+    }
+
+    /**
+     * The edges read, in the order their weights were added to the
+     * snapshot.
+     */
+    Edge[] getEdges() {
+        return edges;
+    }
+}
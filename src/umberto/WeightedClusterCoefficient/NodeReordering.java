@@ -0,0 +1,189 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.Arrays;
+
+/**
+ * Orders the nodes of a {@link GraphSnapshot} so that the rows merged by the
+ * triangle search lie close to each other in memory, see
+ * {@link GraphSnapshot#relabel(int[])}. Gephi hands the nodes in the order of
+ * its internal structure, where neighbors are anywhere. <p> All orders run in
+ * <code>O(n + m)</code>, plus the sort of every row for reverse
+ * Cuthill-McKee, and read the undirected adjacency (the union of in and out
+ * if directed).
+ *
+ * @author Umberto Griffo
+ */
+public final class NodeReordering {
+
+    public enum Order {
+
+        /**
+         * The order of the graph.
+         */
+        NONE,
+        /**
+         * Decreasing degree: the hubs, whose rows most triangles go through,
+         * are packed together.
+         */
+        DEGREE,
+        /**
+         * Reverse Cuthill-McKee: breadth-first from a lowest degree node of
+         * every component, neighbors by increasing degree, the whole order
+         * reversed. Keeps neighbors at small index distances.
+         */
+        RCM,
+        /**
+         * Breadth-first from the highest degree node of every component,
+         * neighbors in row order, so that a node and its neighbors get close
+         * indices.
+         */
+        BFS
+    }
+
+    private NodeReordering() {
+    }
+
+    /**
+     * Returns the new order of the nodes: <code>order[i]</code> is the node
+     * of the snapshot that becomes node <code>i</code>.
+     */
+    public static int[] order(GraphSnapshot snapshot, Order order) {
+        switch (order) {
+            case DEGREE:
+                return byDegree(snapshot, true);
+            case RCM:
+                return cuthillMcKee(snapshot);
+            case BFS:
+                return breadthFirst(snapshot);
+            default:
+                int[] identity = new int[snapshot.getNodeCount()];
+                for (int i = 0; i < identity.length; i++) {
+                    identity[i] = i;
+                }
+                return identity;
+        }
+    }
+
+    /**
+     * Average index distance between the two ends of an entry, a measure of
+     * how far apart the rows merged by the triangle search are.
+     */
+    public static double averageGap(GraphSnapshot snapshot) {
+        int n = snapshot.getNodeCount();
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        if (offsets[n] == 0) {
+            return 0;
+        }
+        double total = 0;
+        for (int u = 0; u < n; u++) {
+            for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                total += Math.abs(neighbors[p] - u);
+            }
+        }
+        return total / offsets[n];
+    }
+
+    /**
+     * Nodes by degree, ties broken by index.
+     */
+    private static int[] byDegree(GraphSnapshot snapshot, boolean decreasing) {
+        int n = snapshot.getNodeCount();
+        int[] offsets = snapshot.getOffsets();
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            long length = offsets[i + 1] - offsets[i];
+            keys[i] = ((decreasing ? Integer.MAX_VALUE - length : length) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    private static int[] cuthillMcKee(GraphSnapshot snapshot) {
+        int n = snapshot.getNodeCount();
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        int maxRow = 0;
+        for (int i = 0; i < n; i++) {
+            maxRow = Math.max(maxRow, offsets[i + 1] - offsets[i]);
+        }
+        long[] keys = new long[maxRow];
+        boolean[] visited = new boolean[n];
+        int[] order = new int[n];
+        int tail = 0;
+        for (int start : byDegree(snapshot, false)) {
+            if (visited[start]) {
+                continue;
+            }
+            visited[start] = true;
+            order[tail++] = start;
+            for (int head = tail - 1; head < tail; head++) {
+                int u = order[head];
+                int count = 0;
+                for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                    int v = neighbors[p];
+                    if (!visited[v]) {
+                        visited[v] = true;
+                        keys[count++] = ((long) (offsets[v + 1] - offsets[v]) << 32) | v;
+                    }
+                }
+                Arrays.sort(keys, 0, count);
+                for (int k = 0; k < count; k++) {
+                    order[tail++] = (int) keys[k];
+                }
+            }
+        }
+        for (int i = 0, j = n - 1; i < j; i++, j--) {
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+
+    private static int[] breadthFirst(GraphSnapshot snapshot) {
+        int n = snapshot.getNodeCount();
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        boolean[] visited = new boolean[n];
+        int[] order = new int[n];
+        int tail = 0;
+        for (int start : byDegree(snapshot, true)) {
+            if (visited[start]) {
+                continue;
+            }
+            visited[start] = true;
+            order[tail++] = start;
+            for (int head = tail - 1; head < tail; head++) {
+                int u = order[head];
+                for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                    int v = neighbors[p];
+                    if (!visited[v]) {
+                        visited[v] = true;
+                        order[tail++] = v;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.gephi.data.attributes.api.*;
+import org.gephi.graph.api.*;
+
+/**
+ * The nodes the statistic computes when it should not compute them all: a
+ * selection of nodes, a filter or a value of a node column. Only these nodes
+ * get results, computed on the snapshot of their neighborhoods, see
+ * {@link NeighborhoodSnapshot}. <p> A selection is read as is, a filter or a
+ * column value is tested on every node of the graph.
+ *
+ * @author Umberto Griffo
+ */
+public final class NodeSubset {
+
+    /**
+     * Tells whether a node belongs to the subset.
+     */
+    public interface Filter {
+
+        boolean accept(Node node);
+    }
+    private final Collection<? extends Node> nodes;
+    private final Filter filter;
+    private final String column;
+    private final String value;
+
+    private NodeSubset(Collection<? extends Node> nodes, Filter filter, String column, String value) {
+        this.nodes = nodes;
+        this.filter = filter;
+        this.column = column;
+        this.value = value;
+    }
+
+    /**
+     * The given nodes, those no longer in the graph are left out.
+     */
+    public static NodeSubset of(Collection<? extends Node> nodes) {
+        return new NodeSubset(new ArrayList<Node>(nodes), null, null, null);
+    }
+
+    /**
+     * The nodes of the graph the filter accepts.
+     */
+    public static NodeSubset matching(Filter filter) {
+        return new NodeSubset(null, filter, null, null);
+    }
+
+    /**
+     * The nodes whose value in a column reads as <code>value</code>, as in
+     * <code>flagged = true</code>.
+     */
+    public static NodeSubset where(final String column, final String value) {
+        return new NodeSubset(null, new Filter() {
+            @Override
+            public boolean accept(Node node) {
+                Object cell = ((AttributeRow) node.getNodeData().getAttributes()).getValue(column);
+                return cell != null && String.valueOf(cell).equals(value);
+            }
+        }, column, value);
+    }
+
+    /**
+     * The column of a subset made by {@link #where(String, String)}, null
+     * otherwise.
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the nodes of the subset in the graph, each once. Must be called
+     * under read lock.
+     */
+    public List<Node> select(HierarchicalGraph graph) {
+        Set<Node> selected = new LinkedHashSet<Node>();
+        if (nodes != null) {
+            for (Node node : nodes) {
+                if (graph.contains(node)) {
+                    selected.add(node);
+                }
+            }
+        } else {
+            for (Node node : graph.getNodes()) {
+                if (filter.accept(node)) {
+                    selected.add(node);
+                }
+            }
+        }
+        return new ArrayList<Node>(selected);
+    }
+
+    @Override
+    public String toString() {
+        if (column != null) {
+            return column + " = " + value;
+        }
+        return nodes != null ? nodes.size() + " selected nodes" : "filtered nodes";
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the results of a run to a directory: the per-node values, the
+ * strength and clustering distributions and the run parameters. <p> Files
+ * are streamed through a 1 MB buffer to NIO channels, gzip compressed if
+ * asked. In {@link Format#CSV} the nodes go to <code>nodes.csv</code>, one
+ * <code>Id,strenght,weightedclustering</code> line per node followed by the
+ * extra columns. In {@link Format#BINARY} they go to <code>nodes.wccr</code>,
+ * the little endian layout of the {@link MappedClustering} result file: a 32
+ * bytes header (magic "WCCR", version, node count, extra column count), then
+ * <code>float strength[n]</code> padded to 8 bytes, <code>double
+ * clustering[n]</code> and one <code>double[n]</code> per extra column; the
+ * node ids follow in <code>ids.txt</code>, a one column CSV (one id per line,
+ * quoted as in <code>nodes.csv</code> if it holds a comma, a quote or a line
+ * break), and the column names are in the parameters. The distributions
+ * (<code>strength_distribution.csv</code>,
+ * <code>clustering_distribution.csv</code>) and the parameters
+ * (<code>parameters.txt</code>) are small and always text.
+ *
+ * @author Umberto Griffo
+ */
+public class ResultExporter {
+
+    public enum Format {
+
+        CSV, BINARY
+    }
+    public static final String GZIP_SUFFIX = ".gz";
+    private final File directory;
+    private final Format format;
+    private final boolean gzip;
+    private final List<String> columnNames = new ArrayList<String>();
+    private final List<double[]> columns = new ArrayList<double[]>();
+    private final Map<String, String> parameters = new LinkedHashMap<String, String>();
+
+    public ResultExporter(File directory, Format format, boolean gzip) {
+        this.directory = directory;
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    /**
+     * The <code>savedata</code> directory of the working directory, where
+     * the distributions have always been saved.
+     */
+    public static File defaultDirectory() {
+        return new File(System.getProperty("user.dir"), "savedata");
+    }
+
+    /**
+     * Adds a per-node column written after the clustering coefficient.
+     */
+    public void addColumn(String name, double[] values) {
+        columnNames.add(name);
+        columns.add(values);
+    }
+
+    /**
+     * Adds a run parameter, written in <code>parameters.txt</code>.
+     */
+    public void setParameter(String name, Object value) {
+        parameters.put(name, String.valueOf(value));
+    }
+
+    /**
+     * Writes the first <code>ids.size()</code> nodes, the distributions of
+     * <code>result</code> and the parameters. Returns the files written.
+     */
+    public List<File> export(List<String> ids, float[] strength, double[] clustering, ClusteringAccumulator result) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        List<File> files = new ArrayList<File>();
+        if (format == Format.BINARY) {
+            files.add(writeBinaryNodes(ids.size(), strength, clustering));
+            files.add(writeIds(ids));
+        } else {
+            files.add(writeCsvNodes(ids, strength, clustering));
+        }
+        files.add(writeDistribution("strength_distribution.csv", "strength,F(strength)", result.getStrengthDistribution().cumulativeDistribution()));
+        files.add(writeDistribution("clustering_distribution.csv", "clustering,nodes", result.getClusteringDistribution().distribution()));
+        files.add(writeParameters());
+        return files;
+    }
+
+    private File writeCsvNodes(List<String> ids, float[] strength, double[] clustering) throws IOException {
+        File file = file("nodes.csv");
+        WritableByteChannel channel = open(file);
+        try {
+            MappedGraphWriter.SectionWriter out = new MappedGraphWriter.SectionWriter(channel);
+            out.putText("Id,strenght,weightedclustering");
+            for (String name : columnNames) {
+                out.putText(",");
+                out.putText(quote(name));
+            }
+            out.putText("\n");
+            StringBuilder line = new StringBuilder(64);
+            for (int i = 0; i < ids.size(); i++) {
+                line.setLength(0);
+                line.append(quote(ids.get(i))).append(',').append(strength[i]).append(',');
+                appendNumber(line, clustering[i]);
+                for (double[] column : columns) {
+                    line.append(',');
+                    appendNumber(line, column[i]);
+                }
+                line.append('\n');
+                out.putText(line);
+            }
+            out.flush();
+        } finally {
+            channel.close();
+        }
+        return file;
+    }
+
+    private File writeBinaryNodes(int n, float[] strength, double[] clustering) throws IOException {
+        File file = file("nodes.wccr");
+        WritableByteChannel channel = open(file);
+        try {
+            MappedGraphWriter.SectionWriter out = new MappedGraphWriter.SectionWriter(channel);
+            out.putInt(MappedClustering.RESULT_MAGIC);
+            out.putInt(MappedGraph.VERSION);
+            out.putLong(n);
+            out.putLong(columns.size());
+            out.putLong(0);
+            out.putFloats(strength, n);
+            out.align();
+            for (int i = 0; i < n; i++) {
+                out.putDouble(clustering[i]);
+            }
+            for (double[] column : columns) {
+                for (int i = 0; i < n; i++) {
+                    out.putDouble(column[i]);
+                }
+            }
+            out.flush();
+        } finally {
+            channel.close();
+        }
+        return file;
+    }
+
+    private File writeDistribution(String name, String header, Map<Double, ? extends Number> distribution) throws IOException {
+        File file = file(name);
+        WritableByteChannel channel = open(file);
+        try {
+            MappedGraphWriter.SectionWriter out = new MappedGraphWriter.SectionWriter(channel);
+            out.putText(header);
+            out.putText("\n");
+            for (Map.Entry<Double, ? extends Number> e : distribution.entrySet()) {
+                out.putText(e.getKey() + "," + e.getValue() + "\n");
+            }
+            out.flush();
+        } finally {
+            channel.close();
+        }
+        return file;
+    }
+
+    private File writeIds(List<String> ids) throws IOException {
+        File file = file("ids.txt");
+        WritableByteChannel channel = open(file);
+        try {
+            MappedGraphWriter.SectionWriter out = new MappedGraphWriter.SectionWriter(channel);
+            for (String id : ids) {
+                //quoted as in nodes.csv, a line break must not shift the ids
+                out.putText(quote(id));
+                out.putText("\n");
+            }
+            out.flush();
+        } finally {
+            channel.close();
+        }
+        return file;
+    }
+
+    private File writeParameters() throws IOException {
+        File file = file("parameters.txt");
+        WritableByteChannel channel = open(file);
+        try {
+            MappedGraphWriter.SectionWriter out = new MappedGraphWriter.SectionWriter(channel);
+            out.putText("format=" + format.toString().toLowerCase() + "\n");
+            for (Map.Entry<String, String> e : parameters.entrySet()) {
+                out.putText(e.getKey() + "=" + e.getValue() + "\n");
+            }
+            if (format == Format.BINARY) {
+                out.putText("columns=strenght,weightedclustering");
+                for (String name : columnNames) {
+                    out.putText("," + name);
+                }
+                out.putText("\n");
+            }
+            out.flush();
+        } finally {
+            channel.close();
+        }
+        return file;
+    }
+
+    private File file(String name) {
+        return new File(directory, gzip ? name + GZIP_SUFFIX : name);
+    }
+
+    private WritableByteChannel open(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        if (!gzip) {
+            return out.getChannel();
+        }
+        //favour speed, the node values compress poorly anyway
+        return Channels.newChannel(new GZIPOutputStream(out, 1 << 16) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        });
+    }
+
+    /**
+     * Values stored as floats are written with the shortest float form.
+     */
+    private static void appendNumber(StringBuilder line, double value) {
+        if ((float) value == value) {
+            line.append((float) value);
+        } else {
+            line.append(value);
+        }
+    }
+
+    private static String quote(String text) {
+        if (text == null) {
+            return "";
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + text.replace("\"", "\"\"") + '"';
+            }
+        }
+        return text;
+    }
+}
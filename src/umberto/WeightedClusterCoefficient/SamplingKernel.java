@@ -0,0 +1,291 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.util.SplittableRandom;
+
+/**
+ * {@link ClusteringKernel} that estimates the weighted clustering coefficient
+ * by weight-aware wedge sampling instead of searching all the triangles. <p>
+ * For a node <code>i</code> with union degree <code>u</code> and union
+ * strength <code>S</code>, the sum over ordered neighbor pairs of
+ * <code>(w(i,j) + w(i,h)) / 2</code> is <code>(u - 1) S</code>, so
+ * <code>C(i) = f(i) P(a(j,h) = 1)</code> where the pair is drawn with
+ * probability proportional to <code>w(i,j) + w(i,h)</code> and
+ * <code>f(i) = (u - 1) S / (s(i) (k(i) - 1))</code> (1 without self loops or
+ * reciprocated edges). A pair is drawn by picking one end proportionally to
+ * its weight and the other uniformly, each way with probability 1/2. <p> The
+ * random generator of a node is seeded from the node index, so the estimates
+ * do not depend on the number of threads. <p> A run costs the
+ * <code>O(m)</code> snapshot and weight prefixes, the node estimates,
+ * {@link #samplesPerNode(long, int, int)} wedges each, and the average, at most
+ * its budget. Only the average is bounded by the budget alone: every node gets
+ * at least one wedge, an <code>O(n)</code> term whatever the budget.
+ *
+ * @author Umberto Griffo
+ */
+public class SamplingKernel extends ClusteringKernel {
+
+    /**
+     * Normal quantile of the 95% confidence intervals.
+     */
+    public static final double Z95 = 1.959963984540054;
+    /**
+     * Seed used by the statistic and the batch runner, so that runs repeat.
+     */
+    public static final long DEFAULT_SEED = 0x5DEECE66DL;
+    /**
+     * Samples drawn between two checks of the target error.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+    private final int samplesPerNode;
+    private final long seed;
+    /**
+     * Running weight sums of every union row, for weighted neighbor picks.
+     */
+    private final double[] prefix;
+
+    /**
+     * @param samplesPerNode wedges drawn for every node coefficient
+     */
+    public SamplingKernel(GraphSnapshot snapshot, int samplesPerNode, long seed) {
+        super(snapshot);
+        this.samplesPerNode = Math.max(1, samplesPerNode);
+        this.seed = seed;
+        int[] offsets = snapshot.getOffsets();
+        float[] weights = snapshot.getWeights();
+        prefix = new double[weights.length];
+        for (int i = 0; i < snapshot.getNodeCount(); i++) {
+            double sum = 0;
+            for (int p = offsets[i]; p < offsets[i + 1]; p++) {
+                sum += weights[p];
+                prefix[p] = sum;
+            }
+        }
+    }
+
+    /**
+     * Wedges per node estimate so that the node estimates draw about
+     * <code>budget</code> wedges in all: the budget over the node count, at
+     * least 1 and at most <code>maxPerNode</code>.
+     */
+    public static int samplesPerNode(long budget, int nodeCount, int maxPerNode) {
+        long perNode = budget / Math.max(1, nodeCount);
+        return (int) Math.max(1, Math.min(maxPerNode, perNode));
+    }
+
+    /**
+     * Estimated coefficient of the node from {@link #getSamplesPerNode()}
+     * wedges.
+     */
+    @Override
+    public double clustering(int node) {
+        double scale = scale(node);
+        if (scale == 0) {
+            return 0;
+        }
+        SplittableRandom random = new SplittableRandom(seed ^ (node * 0x9E3779B97F4A7C15L));
+        int closed = 0;
+        for (int k = 0; k < samplesPerNode; k++) {
+            if (sampleWedge(node, random)) {
+                closed++;
+            }
+        }
+        record(node, samplesPerNode, closed);
+        return scale * closed / samplesPerNode;
+    }
+
+    /**
+     * Estimated triangle weight sum, consistent with {@link #clustering(int)}.
+     */
+    @Override
+    public double triangleWeight(int node) {
+        GraphSnapshot snapshot = getSnapshot();
+        int degree = snapshot.getDegree(node);
+        if (degree < 2) {
+            return 0;
+        }
+        double norm = snapshot.isDirected() ? 1 : 2;
+        return clustering(node) * snapshot.getStrength(node) * (degree - 1.0) / norm;
+    }
+
+    /**
+     * A node costs {@link #getSamplesPerNode()} wedges whatever its degree, it
+     * is never split.
+     */
+    @Override
+    public boolean isSplittable(boolean prepare) {
+        return false;
+    }
+
+    @Override
+    public int getRowLength(int node, boolean prepare) {
+        return 0;
+    }
+
+    @Override
+    public long getCost(int node, boolean prepare) {
+        return prepare ? 0 : samplesPerNode;
+    }
+
+    /**
+     * Triangles are not searched, only sampled.
+     */
+    @Override
+    public long getTriangleCount() {
+        return -1;
+    }
+
+    public int getSamplesPerNode() {
+        return samplesPerNode;
+    }
+
+    /**
+     * Estimates the average coefficient over all the nodes: each sample picks
+     * a node uniformly and a wedge around it. Stops when the 95% confidence
+     * half width falls below the target error, or when the budget is spent.
+     *
+     * @param budget maximum number of samples
+     * @param targetError wanted half width of the 95% interval, 0 to use the
+     * whole budget
+     */
+    public Estimate estimateAverage(long budget, double targetError) {
+        int n = getSnapshot().getNodeCount();
+        if (n == 0 || budget <= 0) {
+            return new Estimate(0, 0, 0);
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        double sum = 0;
+        double sumSquares = 0;
+        long samples = 0;
+        while (samples < budget) {
+            int node = random.nextInt(n);
+            double scale = scale(node);
+            double x = scale > 0 && sampleWedge(node, random) ? scale : 0;
+            sum += x;
+            sumSquares += x * x;
+            samples++;
+            if (targetError > 0 && samples % CHECK_INTERVAL == 0 && halfWidth(sum, sumSquares, samples) <= targetError) {
+                break;
+            }
+        }
+        return new Estimate(sum / samples, halfWidth(sum, sumSquares, samples), samples);
+    }
+
+    private static double halfWidth(double sum, double sumSquares, long samples) {
+        if (samples < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mean = sum / samples;
+        double variance = Math.max(0, (sumSquares - samples * mean * mean) / (samples - 1));
+        return Z95 * Math.sqrt(variance / samples);
+    }
+
+    /**
+     * Returns f(i), 0 if the node cannot be in a triangle.
+     */
+    private double scale(int node) {
+        GraphSnapshot snapshot = getSnapshot();
+        int degree = snapshot.getDegree(node);
+        int[] offsets = snapshot.getOffsets();
+        int union = offsets[node + 1] - offsets[node];
+        //if a node have degree < 2 means that this node can't form a triangle.
+        if (degree < 2 || union < 2) {
+            return 0;
+        }
+        double rowStrength = prefix[offsets[node + 1] - 1];
+        return (union - 1) * rowStrength / (snapshot.getStrength(node) * (degree - 1.0));
+    }
+
+    /**
+     * Draws an ordered neighbor pair (j,h) of the node and returns true if
+     * j is linked to h (j->h when directed).
+     */
+    private boolean sampleWedge(int node, SplittableRandom random) {
+        GraphSnapshot snapshot = getSnapshot();
+        int[] offsets = snapshot.getOffsets();
+        int[] neighbors = snapshot.getNeighbors();
+        int start = offsets[node];
+        int union = offsets[node + 1] - start;
+        int weighted = pickWeighted(node, random);
+        int uniform = start + random.nextInt(union - 1);
+        if (uniform >= weighted) {
+            uniform++;
+        }
+        int j = neighbors[weighted];
+        int h = neighbors[uniform];
+        if (random.nextBoolean()) {
+            int t = j;
+            j = h;
+            h = t;
+        }
+        return isLinked(j, h);
+    }
+
+    /**
+     * Returns the position of a neighbor picked with probability proportional
+     * to its weight, uniformly if the weights sum to 0.
+     */
+    private int pickWeighted(int node, SplittableRandom random) {
+        int[] offsets = getSnapshot().getOffsets();
+        int start = offsets[node];
+        int end = offsets[node + 1];
+        double total = prefix[end - 1];
+        if (!(total > 0)) {
+            return start + random.nextInt(end - start);
+        }
+        double target = random.nextDouble() * total;
+        int lo = start;
+        int hi = end - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prefix[mid] > target) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * An estimated value with the half width of its 95% confidence interval.
+     */
+    public static class Estimate {
+
+        private final double value;
+        private final double halfWidth;
+        private final long samples;
+
+        public Estimate(double value, double halfWidth, long samples) {
+            this.value = value;
+            this.halfWidth = halfWidth;
+            this.samples = samples;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public double getHalfWidth() {
+            return halfWidth;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+    }
+}
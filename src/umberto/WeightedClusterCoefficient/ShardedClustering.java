@@ -0,0 +1,507 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes a {@link MappedGraph} in several worker processes on the same
+ * machine, each with its own heap, and merges their results. <p> The nodes
+ * are cut in contiguous shards of about the same number of neighbor entries.
+ * The coordinator writes every shard to its own graph file: the shard nodes
+ * with their rows, then their ghost neighbors, the nodes of other shards
+ * they are linked to, with the part of their rows inside the shard file,
+ * which is all the triangle search of a shard node reads. A worker, started
+ * with the same Java and the jar of this class, computes the shard nodes with
+ * {@link MappedClustering#MappedClustering(MappedGraph, int, int)} into a
+ * result file, and the coordinator copies the result files into one, in shard
+ * order. The files are exchanged through a work directory, no other service
+ * is involved. <p> Shard files are written one after the other while the
+ * workers already started compute, and deleted once merged. A worker that
+ * fails stops the run, its log is kept next to its files.
+ *
+ * @author Umberto Griffo
+ */
+public class ShardedClustering {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final long POLL_MILLIS = 100;
+    private final MappedGraph graph;
+    private final int threads;
+    /**
+     * First node of every shard, then the node count.
+     */
+    private final int[] bounds;
+    private final int[] ghosts;
+    private File workDirectory;
+    private final List<String> jvmOptions = new ArrayList<String>();
+    private boolean keepFiles;
+    private final Process[] processes;
+    private volatile boolean cancel;
+
+    /**
+     * @param shards number of worker processes, fewer if the graph has fewer
+     * nodes
+     * @param threads threads of every worker
+     */
+    public ShardedClustering(MappedGraph graph, int shards, int threads) {
+        this.graph = graph;
+        this.threads = Math.max(1, threads);
+        bounds = bounds(graph, Math.max(1, shards));
+        ghosts = new int[bounds.length - 1];
+        processes = new Process[bounds.length - 1];
+    }
+
+    /**
+     * Cuts the nodes in contiguous shards of about the same number of
+     * entries, none empty.
+     */
+    private static int[] bounds(MappedGraph graph, int shards) {
+        int n = graph.getNodeCount();
+        long entries = graph.getOffset(n);
+        int[] bounds = new int[shards + 1];
+        int count = 0;
+        for (int k = 1; k < shards; k++) {
+            long target = entries * k / shards;
+            //first node whose row starts at or after the target
+            int low = bounds[count];
+            int high = n;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (graph.getOffset(mid) < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low > bounds[count] && low < n) {
+                bounds[++count] = low;
+            }
+        }
+        bounds[++count] = n;
+        return Arrays.copyOf(bounds, count + 1);
+    }
+
+    /**
+     * Directory of the shard, result and log files, the directory of the
+     * output if null.
+     */
+    public void setWorkDirectory(File workDirectory) {
+        this.workDirectory = workDirectory;
+    }
+
+    public File getWorkDirectory() {
+        return workDirectory;
+    }
+
+    /**
+     * Options of the worker Java processes, as <code>-Xmx2g</code>.
+     */
+    public void setJvmOptions(List<String> options) {
+        jvmOptions.clear();
+        jvmOptions.addAll(options);
+    }
+
+    public List<String> getJvmOptions() {
+        return jvmOptions;
+    }
+
+    /**
+     * Indicates should leave the shard, result and log files in the work
+     * directory.
+     */
+    public void setKeepFiles(boolean keepFiles) {
+        this.keepFiles = keepFiles;
+    }
+
+    public boolean isKeepFiles() {
+        return keepFiles;
+    }
+
+    public int getShardCount() {
+        return bounds.length - 1;
+    }
+
+    /**
+     * First node of a shard, the shard ends at the first node of the next.
+     */
+    public int getShardStart(int shard) {
+        return bounds[shard];
+    }
+
+    /**
+     * Ghost neighbors written to the file of a shard, known once it is
+     * written.
+     */
+    public int getGhostCount(int shard) {
+        return ghosts[shard];
+    }
+
+    /**
+     * Number of units reported through the listener, one per node.
+     */
+    public int getTotalWork() {
+        return graph.getNodeCount();
+    }
+
+    /**
+     * Computes every node in the workers and writes the merged result file,
+     * in the {@link MappedClustering} format.
+     *
+     * @param prototype empty accumulator whose histogram bins are used, see
+     * {@link MappedClustering#defaultAccumulator(MappedGraph)}
+     * @param listener called from the calling thread as shards are merged,
+     * may be null
+     * @throws IOException if a file cannot be written or a worker fails
+     */
+    public ClusteringAccumulator run(File output, ClusteringAccumulator prototype, ClusteringRunner.Listener listener) throws IOException {
+        File directory = workDirectory != null ? workDirectory : output.getAbsoluteFile().getParentFile();
+        int shards = getShardCount();
+        File[] shardFiles = new File[shards];
+        File[] resultFiles = new File[shards];
+        File[] logs = new File[shards];
+        for (int k = 0; k < shards; k++) {
+            String name = output.getName() + ".shard" + k;
+            shardFiles[k] = new File(directory, name + BatchClustering.BINARY_SUFFIX);
+            resultFiles[k] = new File(directory, name + ".wcc.bin");
+            logs[k] = new File(directory, name + ".log");
+        }
+        boolean done = false;
+        try {
+            for (int k = 0; k < shards && !cancel; k++) {
+                ghosts[k] = writeShard(bounds[k], bounds[k + 1], shardFiles[k]);
+                processes[k] = start(shardFiles[k], bounds[k + 1] - bounds[k], resultFiles[k], logs[k]);
+            }
+            ClusteringAccumulator result = prototype.emptyCopy();
+            RandomAccessFile file = new RandomAccessFile(output, "rw");
+            try {
+                int n = graph.getNodeCount();
+                FileChannel channel = file.getChannel();
+                MappedRegion header = MappedClustering.createResults(file, n);
+                MappedRegion strength = MappedClustering.strengthResults(channel, n, FileChannel.MapMode.READ_WRITE);
+                MappedRegion clustering = MappedClustering.clusteringResults(channel, n, FileChannel.MapMode.READ_WRITE);
+                for (int k = 0; k < shards; k++) {
+                    waitFor(k, logs[k]);
+                    merge(resultFiles[k], bounds[k], bounds[k + 1] - bounds[k], strength, clustering, result);
+                    if (listener != null) {
+                        listener.progress(bounds[k + 1]);
+                    }
+                }
+                header.force();
+                strength.force();
+                clustering.force();
+            } finally {
+                file.close();
+            }
+            done = true;
+            return result;
+        } finally {
+            for (int k = 0; k < shards; k++) {
+                if (processes[k] != null) {
+                    processes[k].destroy();
+                    processes[k] = null;
+                }
+                if (!keepFiles) {
+                    shardFiles[k].delete();
+                    resultFiles[k].delete();
+                    if (done) {
+                        logs[k].delete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the graph file of the nodes <code>[from, to)</code>, numbered
+     * from 0, followed by their ghost neighbors in increasing order. Returns
+     * the number of ghosts.
+     */
+    private int writeShard(int from, int to, File file) throws IOException {
+        BitSet outside = new BitSet(graph.getNodeCount());
+        for (int i = from; i < to; i++) {
+            for (long e = graph.getOffset(i); e < graph.getOffset(i + 1); e++) {
+                int g = graph.getNeighbor(e);
+                if (g < from || g >= to) {
+                    outside.set(g);
+                }
+            }
+        }
+        Shard shard = new Shard(from, to, outside);
+        int local = shard.nodes.length;
+        boolean directed = graph.isDirected();
+        long[] offsets = new long[local + 1];
+        long[] outOffsets = directed ? new long[local + 1] : null;
+        for (int v = 0; v < local; v++) {
+            offsets[v + 1] = offsets[v] + shard.load(v, false);
+            if (directed) {
+                outOffsets[v + 1] = outOffsets[v] + shard.load(v, true);
+            }
+        }
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            MappedGraphWriter.SectionWriter writer = new MappedGraphWriter.SectionWriter(out.getChannel());
+            writer.header(directed, local, offsets[local], directed ? outOffsets[local] : 0);
+            for (int v = 0; v < local; v++) {
+                writer.putInt(graph.getDegree(shard.nodes[v]));
+            }
+            writer.align();
+            for (int v = 0; v < local; v++) {
+                writer.putFloat(graph.getStrength(shard.nodes[v]));
+            }
+            writer.align();
+            writer.putOffsets(offsets);
+            for (int v = 0; v < local; v++) {
+                writer.putInts(shard.neighbors, shard.load(v, false));
+            }
+            writer.align();
+            for (int v = 0; v < local; v++) {
+                writer.putFloats(shard.weights, shard.load(v, false));
+            }
+            writer.align();
+            if (directed) {
+                writer.putOffsets(outOffsets);
+                for (int v = 0; v < local; v++) {
+                    writer.putInts(shard.neighbors, shard.load(v, true));
+                }
+            }
+            writer.flush();
+        } finally {
+            out.close();
+        }
+        return local - (to - from);
+    }
+
+    private Process start(File shardFile, int nodes, File resultFile, File log) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(classPath());
+        command.add(ShardedClustering.class.getName());
+        command.add(shardFile.getPath());
+        command.add(Integer.toString(nodes));
+        command.add(Integer.toString(threads));
+        command.add(resultFile.getPath());
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(log);
+        return builder.start();
+    }
+
+    /**
+     * The jar or the directory this class was loaded from, the workers need
+     * nothing else.
+     */
+    private static String classPath() {
+        try {
+            return new File(ShardedClustering.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        } catch (URISyntaxException ex) {
+            return System.getProperty("java.class.path");
+        }
+    }
+
+    private void waitFor(int shard, File log) throws IOException {
+        Process process = processes[shard];
+        if (process == null) {
+            throw new IOException("Cancelled");
+        }
+        try {
+            while (!process.waitFor(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancel) {
+                    throw new IOException("Cancelled");
+                }
+            }
+        } catch (InterruptedException ex) {
+            cancel = true;
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ex);
+        }
+        processes[shard] = null;
+        if (process.exitValue() != 0) {
+            throw new IOException("Shard " + shard + " failed with exit code " + process.exitValue() + ": " + lastLine(log)
+                    + ", see " + log);
+        }
+    }
+
+    private static String lastLine(File log) {
+        String last = "";
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(log), UTF8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        last = line.trim();
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            //the exit code is reported anyway
+        }
+        return last;
+    }
+
+    /**
+     * Copies the result file of a shard to its nodes in the merged one and
+     * adds its nodes to the distributions.
+     */
+    private static void merge(File resultFile, int start, int nodes, MappedRegion strength, MappedRegion clustering,
+            ClusteringAccumulator result) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(resultFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedRegion shardStrength = MappedClustering.strengthResults(channel, nodes, FileChannel.MapMode.READ_ONLY);
+            MappedRegion shardClustering = MappedClustering.clusteringResults(channel, nodes, FileChannel.MapMode.READ_ONLY);
+            for (int i = 0; i < nodes; i++) {
+                float s = shardStrength.getFloat(i);
+                double cc = shardClustering.getDouble(i);
+                strength.putFloat(start + i, s);
+                clustering.putDouble(start + i, cc);
+                result.add(s, (float) cc);
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Stops the run, the workers are killed.
+     */
+    public void cancel() {
+        cancel = true;
+    }
+
+    public boolean isCancelled() {
+        return cancel;
+    }
+
+    /**
+     * The nodes of a shard file and the rows read from the graph, renumbered.
+     */
+    private class Shard {
+
+        private final int from;
+        private final int to;
+        /**
+         * Graph node of every shard file node: the shard nodes, then the
+         * ghosts in increasing order.
+         */
+        final int[] nodes;
+        private final int[] ghostNodes;
+        int[] neighbors = new int[16];
+        float[] weights = new float[16];
+        private int[] ghostNeighbors = new int[16];
+        private float[] ghostWeights = new float[16];
+
+        Shard(int from, int to, BitSet outside) {
+            this.from = from;
+            this.to = to;
+            ghostNodes = new int[outside.cardinality()];
+            nodes = new int[to - from + ghostNodes.length];
+            for (int i = from; i < to; i++) {
+                nodes[i - from] = i;
+            }
+            int g = 0;
+            for (int x = outside.nextSetBit(0); x >= 0; x = outside.nextSetBit(x + 1)) {
+                ghostNodes[g] = x;
+                nodes[to - from + g] = x;
+                g++;
+            }
+        }
+
+        /**
+         * Loads the row of a shard file node, restricted to the shard file
+         * nodes and renumbered, into {@link #neighbors} and {@link #weights}.
+         * Returns its length.
+         */
+        int load(int v, boolean out) {
+            int node = nodes[v];
+            long start = out ? graph.getOutOffset(node) : graph.getOffset(node);
+            long end = out ? graph.getOutOffset(node + 1) : graph.getOffset(node + 1);
+            int length = (int) (end - start);
+            if (length > neighbors.length) {
+                neighbors = new int[length];
+                weights = new float[length];
+                ghostNeighbors = new int[length];
+                ghostWeights = new float[length];
+            }
+            //the shard nodes come first, then the ghosts, both in graph order
+            int count = 0;
+            int ghostCount = 0;
+            for (long e = start; e < end; e++) {
+                int g = out ? graph.getOutNeighbor(e) : graph.getNeighbor(e);
+                if (g >= from && g < to) {
+                    neighbors[count] = g - from;
+                    weights[count] = out ? 0 : graph.getWeight(e);
+                    count++;
+                } else {
+                    int k = Arrays.binarySearch(ghostNodes, g);
+                    if (k >= 0) {
+                        ghostNeighbors[ghostCount] = to - from + k;
+                        ghostWeights[ghostCount] = out ? 0 : graph.getWeight(e);
+                        ghostCount++;
+                    }
+                }
+            }
+            System.arraycopy(ghostNeighbors, 0, neighbors, count, ghostCount);
+            System.arraycopy(ghostWeights, 0, weights, count, ghostCount);
+            return count + ghostCount;
+        }
+    }
+
+    /**
+     * Worker entry point: computes the first nodes of a shard file.
+     * Arguments: the shard file, the number of nodes to compute, the threads
+     * and the result file.
+     */
+    public static void main(String[] args) {
+        if (args.length != 4) {
+            System.err.println("Usage: java -cp WeightedClusterCoefficient.jar " + ShardedClustering.class.getName()
+                    + " <shard graph> <nodes> <threads> <result>");
+            System.exit(2);
+            return;
+        }
+        try {
+            MappedGraph graph = new MappedGraph(new File(args[0]));
+            try {
+                MappedClustering clustering = new MappedClustering(graph, Integer.parseInt(args[2]), Integer.parseInt(args[1]));
+                clustering.run(new File(args[3]), MappedClustering.defaultAccumulator(graph), null);
+            } finally {
+                graph.close();
+            }
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -15,12 +15,17 @@
  */
 package umberto.WeightedClusterCoefficient;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.gephi.data.attributes.api.*;
@@ -54,12 +59,149 @@ public class WeightedClusterCoefficient implements Statistics, LongTask {
     /**
      * Remembers if the Cancel function has been called.
      */
-    private boolean cancel;
+    private volatile boolean cancel;
+    private volatile ClusteringRunner runner;
     private ProgressTicket progressTicket;
     /**
      * Indicates should treat graph as undirected.
      */
     private boolean isDirected;
+    /**
+     * Number of threads the node loop runs on, 1 means the calling thread.
+     */
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    /**
+     * Indicates should list each triangle once, from its lowest degree corner.
+     */
+    private boolean degreeOrdered = true;
+    /**
+     * Indicates should also compute the Fagiolo cycle, middleman, in and out
+     * coefficients, only in directed mode.
+     */
+    private boolean directedPatterns;
+    /**
+     * The other definitions to compute, in {@link WeightedDefinitions#NAMES}
+     * order, only in undirected exact mode.
+     */
+    private final boolean[] definitions = new boolean[WeightedDefinitions.NAMES.length];
+    /**
+     * Indicates should also write the triangle count and the triangle
+     * intensity of every edge, only in undirected exact mode.
+     */
+    private boolean edgeTriangles;
+    /**
+     * Edges written by the last run, -1 if it wrote none.
+     */
+    private int triangleEdges = -1;
+    /**
+     * Indicates should keep the columns up to date when edges or weights
+     * change after the run.
+     */
+    private boolean incremental;
+    private volatile IncrementalUpdater updater;
+    /**
+     * Indicates should estimate the coefficients by wedge sampling.
+     */
+    private boolean approximate;
+    private int samplesPerNode = 64;
+    private long sampleBudget = 1000000;
+    private double targetError = 0.001;
+    private SamplingKernel.Estimate averageEstimate;
+    /**
+     * Indicates should count the work of every node and time the phases.
+     */
+    private boolean instrumented = true;
+    private ClusteringMetrics metrics;
+    /**
+     * Indicates should return the last result at once when the graph, its
+     * weights and the settings have not changed since.
+     */
+    private boolean cached = true;
+    private boolean reused;
+    /**
+     * Set when the graph changed while the last run computed on its
+     * snapshot, the results were not written.
+     */
+    private boolean stale;
+    /**
+     * Indicates should leave alone the cells that already hold their value,
+     * so that they raise no attribute event.
+     */
+    private boolean quietWrite = true;
+    /**
+     * Degree from which a neighbor list is indexed with a compressed bitmap,
+     * 0 for none, and the memory allowed to the bitmaps in megabytes.
+     */
+    private int hubDegree = HubAdjacency.DEFAULT_MIN_DEGREE;
+    /**
+     * The only nodes to compute, null for all. Their results come from a
+     * snapshot of their neighborhoods, see {@link NeighborhoodSnapshot}.
+     */
+    private NodeSubset subset;
+    /**
+     * Nodes computed by the last run and nodes of its neighborhood snapshot,
+     * -1 when it computed the whole graph.
+     */
+    private int subsetSize = -1;
+    private int neighborhoodSize;
+    private int neighborhoodEdges;
+    private int hubMemory = (int) (HubAdjacency.DEFAULT_MAX_BYTES >> 20);
+    /**
+     * Order the nodes of the snapshot are relabeled in before the
+     * computation, see {@link NodeReordering}. The values are written back to
+     * their nodes whatever the order.
+     */
+    private NodeReordering.Order nodeOrder = NodeReordering.Order.NONE;
+    /**
+     * Time the last run spent reordering, -1 if it did not, and the average
+     * neighbor gap before and after.
+     */
+    private long reorderNanos = -1;
+    private double gapBefore;
+    private double gapAfter;
+    /**
+     * Time of the triangle passes of the last run, and of the last complete
+     * run in graph order with the same graph size and settings, -1 if
+     * unknown. The latter is kept for the session, a run may get a new
+     * statistic.
+     */
+    private long passNanos;
+    private long baselineNanos = -1;
+    private static long graphOrderNanos;
+    private static String graphOrderSettings;
+    /**
+     * Indicates should write the node values, the distributions and the
+     * parameters of every complete run that is not reused, off by default,
+     * see {@link ResultExporter}.
+     */
+    private boolean exported;
+    private File exportDirectory = ResultExporter.defaultDirectory();
+    private ResultExporter.Format exportFormat = ResultExporter.Format.CSV;
+    private boolean exportGzip;
+    /**
+     * Indicates should save the finished nodes to a checkpoint file and
+     * resume from it, see {@link ClusteringCheckpoint}.
+     */
+    private boolean checkpointed;
+    private File checkpointDirectory = ResultExporter.defaultDirectory();
+    private int checkpointInterval = 60;
+    /**
+     * Checkpoint of the last run, null if it kept none, the nodes it resumed
+     * from it and the nodes it left in it, -1 if it completed.
+     */
+    private File checkpointFile;
+    private int resumedNodes;
+    private int savedNodes = -1;
+    /**
+     * Nodes processed by the last run if it was cancelled, -1 otherwise.
+     */
+    private int processedNodes = -1;
+    /**
+     * Bins of the strength and clustering distributions.
+     */
+    private Histogram.Binning strenghtBinning = Histogram.Binning.LOGARITHMIC;
+    private Histogram.Binning ccBinning = Histogram.Binning.LINEAR;
+    private int binCount = Histogram.DEFAULT_BINS;
     /**
      * Keep track of the work done.
      */
@@ -67,9 +209,18 @@ public class WeightedClusterCoefficient implements Statistics, LongTask {
     private double[] nodeClustering;
     private double avgClusteringCoeff;
     private double avgStrenght;
-    private SortedMap<Float, Integer> strenght_distribution = new TreeMap<Float, Integer>();
-    private SortedMap<Float, Float> cumulated_strenght_distribution = new TreeMap<Float, Float>();// to plot cumulate distribution
-    private SortedMap<Float, Integer> cc_distribution = new TreeMap<Float, Integer>();
+    private double[] avgPatterns;
+    private double[][] nodePatterns;
+    private double[] avgDefinitions;
+    private double[][] nodeDefinitions;
+    private Histogram strenght_distribution = new Histogram(Histogram.Binning.LOGARITHMIC, Histogram.DEFAULT_BINS, 0, 1);
+    private Histogram cc_distribution = new Histogram(Histogram.Binning.LINEAR, Histogram.DEFAULT_BINS, 0, 1);
+    /**
+     * Charts of the current distributions, rendering or rendered, null until
+     * the report is first asked for.
+     */
+    private Future<String> strenghtChart;
+    private Future<String> ccChart;
 
     public WeightedClusterCoefficient() {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
@@ -92,8 +243,11 @@ public class WeightedClusterCoefficient implements Statistics, LongTask {
 
     public void execute(HierarchicalGraph hgraph, AttributeModel attributeModel) {
         cancel = false;
+        stopIncremental();
         //The atrributes computed by the statistics
         AttributeTable nodeTable = attributeModel.getNodeTable();
+        AttributeTable edgeTable = attributeModel.getEdgeTable();
+        boolean columnsExist = hasResultColumns(nodeTable, edgeTable);
         AttributeColumn clusteringCol = nodeTable.getColumn("weightedclustering");
         if (clusteringCol == null) {
             clusteringCol = nodeTable.addColumn("weightedclustering", "Weighted Clustering Coefficient", AttributeType.DOUBLE, AttributeOrigin.COMPUTED, new Double(0));
@@ -102,129 +256,622 @@ public class WeightedClusterCoefficient implements Statistics, LongTask {
         if (strenghtCol == null) {
             strenghtCol = nodeTable.addColumn("strenght", "Strenght", AttributeType.DOUBLE, AttributeOrigin.COMPUTED, new Double(0));
         }
-        float totalCC = 0;
-        float totalStrenght = 0;
-
         hgraph.readLock();
 
+        metrics = instrumented ? new ClusteringMetrics() : null;
+        reused = false;
+        stale = false;
+        triangleEdges = -1;
+        subsetSize = -1;
+        neighborhoodSize = 0;
+        neighborhoodEdges = 0;
+        checkpointFile = null;
+        resumedNodes = 0;
+        savedNodes = -1;
+        processedNodes = -1;
+        reorderNanos = -1;
+        baselineNanos = -1;
+        boolean partial = subset != null;
+        ClusteringCache.Result hit = cached && !incremental && !partial && columnsExist ? reuse(hgraph) : null;
+        if (hit != null) {
+            //a reused result is not exported again
+            hgraph.readUnlockAll();
+            return;
+        }
+        ClusteringMetrics.Phase phase = instrumented ? metrics.start(ClusteringMetrics.SNAPSHOT) : null;
         N = hgraph.getNodeCount();
-        nodeClustering = new double[N];
-        Progress.start(progressTicket, N);
-
-        int node_count = 0;
-
-        for (Node node : hgraph.getNodes()) {
-            float strenght = 0;
-            float nodeCC = 0;
-            float cc = 0;
-            int degree = hgraph.getDegree(node);
-            //Calculate the node strenght
-            if (isDirected) {
-                float totalInWeight = 0;
-                float totalOutWeight = 0;
-                for (Iterator it = ((HierarchicalDirectedGraph) hgraph).getEdgesAndMetaEdges(node).iterator(); it.hasNext();) {
-                    Edge e = (Edge) it.next();
-                    if (e.getSource().equals(node)) {
-                        totalOutWeight += (float) e.getWeight();
-                    }
-                    if (e.getTarget().equals(node)) {
-                        totalInWeight += (float) e.getWeight();
-                    }
+        Node[] nodes;
+        GraphStamp stamp = new GraphStamp(hgraph);
+        GraphSnapshot snapshot;
+        NeighborhoodSnapshot neighborhood = null;
+        List<Edge> edges = computesEdgeTriangles() ? new ArrayList<Edge>() : null;
+        if (partial) {
+            neighborhood = new NeighborhoodSnapshot(hgraph, subset.select(hgraph), isDirected);
+            for (Edge e : neighborhood.getEdges()) {
+                stamp.addWeight(e.getWeight());
+            }
+            snapshot = neighborhood.getSnapshot();
+            nodes = Arrays.copyOf(neighborhood.getNodes(), neighborhood.getSubsetSize());
+            subsetSize = nodes.length;
+            neighborhoodSize = snapshot.getNodeCount();
+            neighborhoodEdges = neighborhood.getEdges().length;
+        } else {
+            nodes = hgraph.getNodes().toArray();
+            snapshot = createSnapshot(hgraph, nodes, stamp, edges);
+        }
+        //the computation runs on the snapshot, the graph stays editable
+        hgraph.readUnlockAll();
+        if (instrumented) {
+            phase.end();
+        }
+        //a subset keeps its nodes first, it stays in graph order
+        int[] order = null;
+        if (nodeOrder != NodeReordering.Order.NONE && !partial) {
+            phase = instrumented ? metrics.start(ClusteringMetrics.REORDER) : null;
+            gapBefore = NodeReordering.averageGap(snapshot);
+            long start = System.nanoTime();
+            order = NodeReordering.order(snapshot, nodeOrder);
+            snapshot = snapshot.relabel(order);
+            nodes = relabel(nodes, order);
+            reorderNanos = System.nanoTime() - start;
+            gapAfter = NodeReordering.averageGap(snapshot);
+            if (instrumented) {
+                phase.end();
+            }
+        }
+        //a subset is computed by the node iterator, the other kernels need the whole graph;
+        //so is a checkpoint, the forward method adds every triangle to nodes of other chunks
+        ClusteringKernel kernel = BatchClustering.createKernel(snapshot, threadCount, degreeOrdered && !partial && !checkpoints(),
+                directedPatterns && !partial, approximate && !partial, SamplingKernel.samplesPerNode(sampleBudget, nodes.length, samplesPerNode));
+        if (instrumented) {
+            kernel.enableStatistics();
+        }
+        if (computesDefinitions()) {
+            kernel.enableDefinitions();
+        }
+        if (edges != null) {
+            kernel.enableEdgeTriangles(threadCount > 1);
+        }
+        if (hubDegree > 0) {
+            kernel.enableHubAdjacency(hubDegree, (long) hubMemory << 20);
+        }
+        ClusteringAccumulator distributions = new ClusteringAccumulator(
+                ClusteringRunner.strengthHistogram(snapshot, nodes.length, strenghtBinning, binCount),
+                new Histogram(ccBinning, binCount, 0, 1));
+        runner = new ClusteringRunner(kernel, threadCount, distributions, nodes.length);
+        ClusteringCheckpoint checkpoint = null;
+        if (checkpoints()) {
+            checkpoint = checkpoint(snapshot, nodes, kernel);
+            runner.setCheckpoint(checkpoint);
+            resumedNodes = checkpoint.restore();
+            checkpointFile = checkpoint.getFile();
+        }
+        if (cancel) {
+            runner.cancel();
+        }
+        Progress.start(progressTicket, runner.getTotalWork());
+        ClusteringAccumulator result = runner.run(new ClusteringRunner.Listener() {
+            @Override
+            public void progress(int processedNodes) {
+                Progress.progress(progressTicket, processedNodes);
+            }
+        });
+        nodeClustering = runner.getClustering();
+        float[] strenghts = runner.getStrength();
+        if (checkpoint != null) {
+            if (runner.isCancelled()) {
+                try {
+                    checkpoint.save();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Cannot write the checkpoint " + checkpointFile, ex);
                 }
-                strenght = totalInWeight + totalOutWeight;
-                //populate strenght distribution
-                int count = strenght_distribution.containsKey(strenght) ? strenght_distribution.get(strenght) : 0;
-                strenght_distribution.put(strenght, count + 1);
-
+                savedNodes = checkpoint.getSavedNodes();
             } else {
-                for (Iterator it = hgraph.getEdgesAndMetaEdges(node).iterator(); it.hasNext();) {
-                    Edge e = (Edge) it.next();
-                    strenght += (float) e.getWeight();
+                checkpoint.delete();
+            }
+        }
+        if (instrumented) {
+            metrics.collect(runner, kernel, threadCount);
+        }
+        passNanos = runner.getPrepareNanos() + runner.getClusteringNanos();
+        if (!partial && !runner.isCancelled() && (checkpointFile == null || resumedNodes == 0)) {
+            String settings = timingSettings(snapshot);
+            synchronized (WeightedClusterCoefficient.class) {
+                if (order == null) {
+                    graphOrderNanos = passNanos;
+                    graphOrderSettings = settings;
+                } else if (settings.equals(graphOrderSettings)) {
+                    baselineNanos = graphOrderNanos;
                 }
-                //populate strenght distribution
-                int count = strenght_distribution.containsKey(strenght) ? strenght_distribution.get(strenght) : 0;
-                strenght_distribution.put(strenght, count + 1);
             }
-            //if a node have degree < 2 means that this node can't form a triangle.
-            if (degree < 2) {
-                cc = 0;
-            } else {
-                //Search Triangle
-                NodeIterable neighbors1 = hgraph.getNeighbors(node);
-                //browse the pairs of neighbors
-                for (Node neighbor1 : neighbors1) {
-                    NodeIterable neighbors2 = hgraph.getNeighbors(node);
-                    for (Node neighbor2 : neighbors2) {
-                        if (neighbor1 == neighbor2) {
-                            continue;
-                        }
-                        if (isDirected) {
-                            float w1 = 0;
-                            float w2 = 0;
-                            //find a triangle
-                            if (((HierarchicalDirectedGraph) hgraph).getEdge(neighbor1, neighbor2) != null) {
-                                if (((HierarchicalDirectedGraph) hgraph).getEdge(node, neighbor1) != null) {
-                                    w1 = hgraph.getEdge(node, neighbor1).getWeight();
-                                } else if (((HierarchicalDirectedGraph) hgraph).getEdge(neighbor1, node) != null) {
-                                    w1 = hgraph.getEdge(neighbor1, node).getWeight();
-                                }
-                                if (((HierarchicalDirectedGraph) hgraph).getEdge(node, neighbor2) != null) {
-                                    w2 = hgraph.getEdge(node, neighbor2).getWeight();
-                                } else if (((HierarchicalDirectedGraph) hgraph).getEdge(neighbor2, node) != null) {
-                                    w2 = hgraph.getEdge(neighbor2, node).getWeight();
-                                }
-                                nodeCC += (w1 + w2) / 2;
-                            }
-                            //find a triangle
-                            if (((HierarchicalDirectedGraph) hgraph).getEdge(neighbor2, neighbor1) != null) {
-                                if (((HierarchicalDirectedGraph) hgraph).getEdge(node, neighbor1) != null) {
-                                    w1 = hgraph.getEdge(node, neighbor1).getWeight();
-                                } else if (((HierarchicalDirectedGraph) hgraph).getEdge(neighbor1, node) != null) {
-                                    w1 = hgraph.getEdge(neighbor1, node).getWeight();
-                                }
-                                if (((HierarchicalDirectedGraph) hgraph).getEdge(node, neighbor2) != null) {
-                                    w2 = hgraph.getEdge(node, neighbor2).getWeight();
-                                } else if (((HierarchicalDirectedGraph) hgraph).getEdge(neighbor2, node) != null) {
-                                    w2 = hgraph.getEdge(neighbor2, node).getWeight();
-                                }
-                                nodeCC += (w1 + w2) / 2;
-                            }
-                        } else {
-                            //find a triangle
-                            if (hgraph.isAdjacent(neighbor1, neighbor2)) {
-                                nodeCC += (hgraph.getEdge(node, neighbor1).getWeight() + hgraph.getEdge(node, neighbor2).getWeight()) / 2;
-                            }
-                        }
-                    }
+        }
+        //The node values are saved once the lock is released
+        AttributeWriteBack writeBack = new AttributeWriteBack(nodes);
+        writeBack.setQuiet(quietWrite);
+        writeBack.addColumn(clusteringCol, nodeClustering);
+        writeBack.addColumn(strenghtCol, strenghts);
+        BitSet processed = null;
+        if (runner.isCancelled()) {
+            processed = new BitSet(nodes.length);
+            for (int i = 0; i < nodes.length; i++) {
+                if (runner.isProcessed(i)) {
+                    processed.set(i);
+                }
+            }
+            processedNodes = processed.cardinality();
+        }
+        //the averages of a cancelled run are over the nodes it processed
+        int processedCount = processed != null ? processedNodes : nodes.length;
+        avgPatterns = null;
+        nodePatterns = null;
+        if (kernel instanceof DirectedClusteringKernel) {
+            addPatterns(nodeTable, (DirectedClusteringKernel) kernel, writeBack, processed, processedCount);
+        }
+        avgDefinitions = null;
+        nodeDefinitions = null;
+        if (kernel.getDefinitions() != null) {
+            addDefinitions(nodeTable, kernel.getDefinitions(), writeBack, processed, processedCount);
+        }
+        //an edge gets its triangles from the opposite corners, a cancelled run has not seen them all
+        AttributeWriteBack edgeWriteBack = null;
+        if (edges != null && !runner.isCancelled()) {
+            edgeWriteBack = edgeTriangles(edgeTable, kernel.getEdgeTriangles(), nodes, edges);
+            edgeWriteBack.setQuiet(quietWrite);
+        }
+        if (instrumented) {
+            int[] hubs = ClusteringMetrics.topHubs(kernel, ClusteringMetrics.TOP_HUBS);
+            String[] labels = new String[hubs.length];
+            for (int k = 0; k < hubs.length; k++) {
+                NodeData data = nodes[hubs[k]].getNodeData();
+                labels[k] = data.getLabel() != null ? data.getLabel() : data.getId();
+            }
+            metrics.setHubs(kernel, hubs, labels);
+        }
+        setResults(result, processedCount);
+        averageEstimate = null;
+        if (approximate && !partial && !runner.isCancelled()) {
+            averageEstimate = ((SamplingKernel) kernel).estimateAverage(sampleBudget, targetError);
+            avgClusteringCoeff = averageEstimate.getValue();
+        }
+        phase = instrumented ? metrics.start(ClusteringMetrics.CHANGE_CHECK) : null;
+        hgraph.readLock();
+        stale = partial ? !stamp.matches(hgraph, neighborhood.getEdges()) : !stamp.matches(hgraph);
+        if (stale) {
+            hgraph.readUnlockAll();
+            if (instrumented) {
+                phase.end();
+                metrics.publish();
+            }
+            LOGGER.log(Level.WARNING, "The graph changed during the computation, the columns are left as they were");
+            return;
+        }
+        if (cached && !incremental && !partial && !runner.isCancelled()) {
+            ClusteringCache.getDefault().put(hgraph, stamp, cacheSettings(),
+                    new ClusteringCache.Result(N, nodeClustering, nodePatterns, nodeDefinitions, result, avgPatterns,
+                    avgDefinitions, averageEstimate));
+        }
+        if (incremental && !approximate && !partial && !runner.isCancelled()) {
+            double[] triangles = new double[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                triangles[i] = kernel.triangleWeight(i);
+            }
+            IncrementalClustering model = new IncrementalClustering(snapshot, triangles, distributions);
+            updater = new IncrementalUpdater(this, model, hgraph, attributeModel, clusteringCol, strenghtCol, nodes);
+            updater.start();
+        }
+        hgraph.readUnlockAll();
+        if (instrumented) {
+            phase.end();
+        }
+        phase = instrumented ? metrics.start(ClusteringMetrics.WRITE) : null;
+        IncrementalUpdater current = updater;
+        if (current != null) {
+            //changes applied meanwhile are written after, over these values
+            synchronized (current.getModel()) {
+                writeBack.write(processed);
+            }
+        } else {
+            writeBack.write(processed);
+        }
+        if (edgeWriteBack != null) {
+            edgeWriteBack.write(null);
+            triangleEdges = edges.size();
+        }
+        if (instrumented) {
+            phase.end();
+            metrics.publish();
+        }
+        LOGGER.log(Level.FINE, "Wrote {0} values, {1} unchanged", new Object[]{writeBack.getWritten(), writeBack.getSkipped()});
+        if (exported && !runner.isCancelled()) {
+            export(nodeIds(nodes), strenghts, result);
+        }
+    }
+
+    /**
+     * Creates the checkpoint of a run in the checkpoint directory, with the
+     * extra columns the kernel fills.
+     */
+    private ClusteringCheckpoint checkpoint(GraphSnapshot snapshot, Node[] nodes, ClusteringKernel kernel) {
+        long fingerprint = ClusteringCheckpoint.fingerprint(snapshot, nodeIds(nodes), kernel.getClass().getSimpleName());
+        ClusteringCheckpoint checkpoint = new ClusteringCheckpoint(new File(checkpointDirectory, ClusteringCheckpoint.FILE_NAME),
+                fingerprint, checkpointInterval * 1000L);
+        if (kernel instanceof DirectedClusteringKernel) {
+            for (int p = 0; p < DirectedClusteringKernel.PATTERNS.length; p++) {
+                checkpoint.addColumn(((DirectedClusteringKernel) kernel).getPattern(p));
+            }
+        }
+        if (kernel.getDefinitions() != null) {
+            for (int d = 0; d < WeightedDefinitions.NAMES.length; d++) {
+                checkpoint.addColumn(kernel.getDefinitions().getValues(d));
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Returns the nodes in the given order, see
+     * {@link NodeReordering#order(GraphSnapshot, NodeReordering.Order)}, the
+     * same array if it is null.
+     */
+    private static Node[] relabel(Node[] nodes, int[] order) {
+        if (order == null) {
+            return nodes;
+        }
+        Node[] relabeled = new Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            relabeled[i] = nodes[order[i]];
+        }
+        return relabeled;
+    }
+
+    private static List<String> nodeIds(Node[] nodes) {
+        List<String> ids = new ArrayList<String>(nodes.length);
+        for (Node node : nodes) {
+            ids.add(node.getNodeData().getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the node values of a complete run to the export directory, after
+     * the graph lock is released. Failures are logged, the run stands.
+     */
+    private void export(List<String> ids, float[] strenghts, ClusteringAccumulator result) {
+        ClusteringMetrics.Phase phase = instrumented ? metrics.start(ClusteringMetrics.EXPORT) : null;
+        ResultExporter exporter = new ResultExporter(exportDirectory, exportFormat, exportGzip);
+        if (nodePatterns != null) {
+            for (int p = 0; p < nodePatterns.length; p++) {
+                exporter.addColumn("weightedclustering_" + DirectedClusteringKernel.PATTERNS[p], nodePatterns[p]);
+            }
+        }
+        if (nodeDefinitions != null) {
+            for (int d = 0; d < nodeDefinitions.length; d++) {
+                if (nodeDefinitions[d] != null) {
+                    exporter.addColumn("weightedclustering_" + WeightedDefinitions.NAMES[d], nodeDefinitions[d]);
+                }
+            }
+        }
+        exporter.setParameter("directed", isDirected);
+        exporter.setParameter("nodes", N);
+        if (subsetSize >= 0) {
+            exporter.setParameter("subset", subset);
+            exporter.setParameter("subsetNodes", subsetSize);
+            exporter.setParameter("neighborhoodNodes", neighborhoodSize);
+        }
+        if (checkpointFile != null) {
+            exporter.setParameter("resumedNodes", resumedNodes);
+        }
+        exporter.setParameter("threads", threadCount);
+        exporter.setParameter("degreeOrdered", degreeOrdered);
+        exporter.setParameter("nodeOrder", nodeOrder);
+        exporter.setParameter("directedPatterns", directedPatterns);
+        exporter.setParameter("approximate", approximate);
+        if (approximate) {
+            exporter.setParameter("samplesPerNode", SamplingKernel.samplesPerNode(sampleBudget, N, samplesPerNode));
+        }
+        exporter.setParameter("strengthBinning", strenghtBinning);
+        exporter.setParameter("clusteringBinning", ccBinning);
+        exporter.setParameter("bins", binCount);
+        exporter.setParameter("averageClustering", avgClusteringCoeff);
+        exporter.setParameter("averageStrength", avgStrenght);
+        try {
+            List<File> files = exporter.export(ids, strenghts, nodeClustering, result);
+            LOGGER.log(Level.FINE, "Exported {0}", files);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Cannot export the results to " + exportDirectory, ex);
+        }
+        if (instrumented) {
+            phase.end();
+            metrics.publish();
+        }
+    }
+
+    /**
+     * Takes the last result from the cache if it was computed on the same
+     * graph, weights and settings, null if there is none. The columns already
+     * hold its values.
+     */
+    private ClusteringCache.Result reuse(HierarchicalGraph hgraph) {
+        ClusteringMetrics.Phase phase = instrumented ? metrics.start(ClusteringMetrics.CACHE) : null;
+        ClusteringCache.Result hit = ClusteringCache.getDefault().get(hgraph, cacheSettings());
+        if (hit == null) {
+            if (instrumented) {
+                phase.end();
+            }
+            return null;
+        }
+        N = hit.nodeCount;
+        nodeClustering = hit.clustering;
+        nodePatterns = hit.patterns;
+        avgPatterns = hit.averagePatterns;
+        nodeDefinitions = hit.definitions;
+        avgDefinitions = hit.averageDefinitions;
+        setResults(hit.distributions, hit.nodeCount);
+        averageEstimate = hit.averageEstimate;
+        if (averageEstimate != null) {
+            avgClusteringCoeff = averageEstimate.getValue();
+        }
+        reused = true;
+        if (instrumented) {
+            phase.end();
+            metrics.publish();
+        }
+        return hit;
+    }
+
+    /**
+     * The settings a cached result must have been computed with. The thread
+     * count only changes the last bits, it is left out.
+     */
+    private String cacheSettings() {
+        return resultSettings() + " " + nodeOrder;
+    }
+
+    /**
+     * The settings the time of the triangle passes depends on, but the node
+     * order.
+     */
+    private String timingSettings(GraphSnapshot snapshot) {
+        return resultSettings() + " " + threadCount + " " + hubDegree + " " + hubMemory
+                + " " + snapshot.getNodeCount() + " " + snapshot.getEntryCount();
+    }
+
+    private String resultSettings() {
+        return isDirected + " " + degreeOrdered + " " + directedPatterns + " " + approximate + " " + samplesPerNode
+                + " " + sampleBudget + " " + targetError + " " + strenghtBinning + " " + ccBinning + " " + binCount
+                + " " + Arrays.toString(definitions) + " " + computesEdgeTriangles() + " " + checkpoints();
+    }
+
+    /**
+     * Returns true if the settings ask for another definition and allow it.
+     */
+    private boolean computesDefinitions() {
+        if (isDirected || approximate || subset != null) {
+            return false;
+        }
+        for (boolean selected : definitions) {
+            if (selected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the settings ask for the edge triangles and allow them.
+     * A resumed run would miss the triangles of the restored nodes.
+     */
+    private boolean computesEdgeTriangles() {
+        return edgeTriangles && !isDirected && !approximate && subset == null && !checkpointed;
+    }
+
+    /**
+     * Returns true if the settings ask for a checkpoint and allow it.
+     */
+    private boolean checkpoints() {
+        return checkpointed && !approximate && subset == null;
+    }
+
+    /**
+     * Returns true if every column the settings write is in the tables.
+     */
+    private boolean hasResultColumns(AttributeTable nodeTable, AttributeTable edgeTable) {
+        if (nodeTable.getColumn("weightedclustering") == null || nodeTable.getColumn("strenght") == null) {
+            return false;
+        }
+        if (isDirected && directedPatterns && !approximate) {
+            for (String name : DirectedClusteringKernel.PATTERNS) {
+                if (nodeTable.getColumn("weightedclustering_" + name) == null) {
+                    return false;
                 }
-                nodeCC /= 2.0;//because a triangle is seen 2 times
-                //Calculate local cluster coefficient
-                cc = (2 / (strenght * (degree - 1))) * nodeCC;
-                if (isDirected) {
-                    cc = (1 / (strenght * (degree - 1))) * nodeCC;
+            }
+        }
+        if (computesDefinitions()) {
+            for (int d = 0; d < definitions.length; d++) {
+                if (definitions[d] && nodeTable.getColumn("weightedclustering_" + WeightedDefinitions.NAMES[d]) == null) {
+                    return false;
                 }
             }
+        }
+        if (computesEdgeTriangles() && (edgeTable.getColumn("weightedclustering_triangles") == null
+                || edgeTable.getColumn("weightedclustering_intensity") == null)) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Takes the distributions and averages of a run over
+     * <code>nodeCount</code> nodes, they are what {@link #getReport()} shows.
+     * The averages over no node are 0.
+     */
+    synchronized void setResults(ClusteringAccumulator result, int nodeCount) {
+        strenght_distribution = result.getStrengthDistribution();
+        cc_distribution = result.getClusteringDistribution();
+        strenghtChart = null;
+        ccChart = null;
+        avgClusteringCoeff = result.getTotalClustering() / Math.max(1, nodeCount);
+        avgStrenght = result.getTotalStrength() / Math.max(1, nodeCount);
+    }
 
-            nodeClustering[node_count] = cc;
-            //populate cc distribution
-            int count = cc_distribution.containsKey(cc) ? cc_distribution.get(cc) : 0;
-            cc_distribution.put(cc, count + 1);
-            //Save the node values
-            AttributeRow row = (AttributeRow) node.getNodeData().getAttributes();
-            row.setValue(clusteringCol, cc);
-            row.setValue(strenghtCol, strenght);
+    /**
+     * Called by the incremental updater once a graph change has been applied.
+     */
+    synchronized void incrementalUpdate(IncrementalClustering model) {
+        avgClusteringCoeff = model.getAverageClustering();
+        avgStrenght = model.getAverageStrength();
+        strenght_distribution = model.getStrengthDistribution();
+        cc_distribution = model.getClusteringDistribution();
+        strenghtChart = null;
+        ccChart = null;
+    }
 
-            totalCC += cc;
-            totalStrenght += strenght;
-            if (cancel) {
-                break;
+    /**
+     * Stops listening to graph changes, the columns keep the last values.
+     */
+    public void stopIncremental() {
+        IncrementalUpdater current = updater;
+        if (current != null) {
+            current.stop();
+            updater = null;
+        }
+    }
+
+    /**
+     * Recomputes every node from scratch on the graph as it is now and returns
+     * the largest difference with the incrementally updated values, or NaN if
+     * incremental updates are not running. Nodes with several edges on a pair,
+     * such as mutual edges in undirected mode, are where the two can part.
+     */
+    public double verifyIncremental() {
+        IncrementalUpdater current = updater;
+        if (current == null) {
+            return Double.NaN;
+        }
+        synchronized (current.getModel()) {
+            return current.verify();
+        }
+    }
+
+    /**
+     * Adds the Fagiolo coefficients to the write back, each in its own
+     * column, and computes their averages over the processed nodes.
+     */
+    private void addPatterns(AttributeTable nodeTable, DirectedClusteringKernel kernel, AttributeWriteBack writeBack,
+            BitSet processed, int nodeCount) {
+        avgPatterns = new double[DirectedClusteringKernel.PATTERNS.length];
+        nodePatterns = new double[avgPatterns.length][];
+        for (int p = 0; p < avgPatterns.length; p++) {
+            String name = DirectedClusteringKernel.PATTERNS[p];
+            String id = "weightedclustering_" + name;
+            AttributeColumn col = nodeTable.getColumn(id);
+            if (col == null) {
+                col = nodeTable.addColumn(id, "Weighted Clustering (" + name + ")", AttributeType.DOUBLE, AttributeOrigin.COMPUTED, new Double(0));
+            }
+            double[] values = kernel.getPattern(p);
+            nodePatterns[p] = values;
+            writeBack.addColumn(col, values);
+            double total = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (processed == null || processed.get(i)) {
+                    total += values[i];
+                }
             }
-            node_count++;
-            Progress.progress(progressTicket, node_count);
+            avgPatterns[p] = total / Math.max(1, nodeCount);
         }
-        avgClusteringCoeff = totalCC / hgraph.getNodeCount();
-        avgStrenght = totalStrenght / hgraph.getNodeCount();
-        hgraph.readUnlockAll();
+    }
+
+    /**
+     * Adds the selected definitions to the write back, each in its own column,
+     * and computes their averages over the processed nodes.
+     */
+    private void addDefinitions(AttributeTable nodeTable, WeightedDefinitions computed, AttributeWriteBack writeBack,
+            BitSet processed, int nodeCount) {
+        avgDefinitions = new double[WeightedDefinitions.NAMES.length];
+        nodeDefinitions = new double[avgDefinitions.length][];
+        for (int d = 0; d < avgDefinitions.length; d++) {
+            if (!definitions[d]) {
+                avgDefinitions[d] = Double.NaN;
+                continue;
+            }
+            String id = "weightedclustering_" + WeightedDefinitions.NAMES[d];
+            AttributeColumn col = nodeTable.getColumn(id);
+            if (col == null) {
+                col = nodeTable.addColumn(id, "Weighted Clustering (" + WeightedDefinitions.TITLES[d] + ")", AttributeType.DOUBLE, AttributeOrigin.COMPUTED, new Double(0));
+            }
+            double[] values = computed.getValues(d);
+            nodeDefinitions[d] = values;
+            writeBack.addColumn(col, values);
+            double total = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (processed == null || processed.get(i)) {
+                    total += values[i];
+                }
+            }
+            avgDefinitions[d] = total / Math.max(1, nodeCount);
+        }
+    }
+
+    /**
+     * Puts the triangle count and the triangle intensity of every edge in a
+     * write back of the edges, each in its own column. Parallel edges share
+     * the values of their pair.
+     */
+    private AttributeWriteBack edgeTriangles(AttributeTable edgeTable, EdgeTriangles computed, Node[] nodes, List<Edge> edges) {
+        AttributeColumn trianglesCol = edgeTable.getColumn("weightedclustering_triangles");
+        if (trianglesCol == null) {
+            trianglesCol = edgeTable.addColumn("weightedclustering_triangles", "Triangles", AttributeType.INT, AttributeOrigin.COMPUTED, new Integer(0));
+        }
+        AttributeColumn intensityCol = edgeTable.getColumn("weightedclustering_intensity");
+        if (intensityCol == null) {
+            intensityCol = edgeTable.addColumn("weightedclustering_intensity", "Triangle Intensity", AttributeType.DOUBLE, AttributeOrigin.COMPUTED, new Double(0));
+        }
+        Map<Node, Integer> indices = indices(nodes);
+        int[] triangles = new int[edges.size()];
+        double[] intensities = new double[edges.size()];
+        for (int k = 0; k < triangles.length; k++) {
+            Edge e = edges.get(k);
+            int slot = computed.find(indices.get(e.getSource()), indices.get(e.getTarget()));
+            if (slot >= 0) {
+                triangles[k] = computed.getTriangles(slot);
+                intensities[k] = computed.getIntensity(slot);
+            }
+        }
+        AttributeWriteBack writeBack = new AttributeWriteBack(edges.toArray(new Edge[edges.size()]));
+        writeBack.addColumn(trianglesCol, triangles);
+        writeBack.addColumn(intensityCol, intensities);
+        return writeBack;
+    }
+
+    private static Map<Node, Integer> indices(Node[] nodes) {
+        Map<Node, Integer> indices = new HashMap<Node, Integer>(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) {
+            indices.put(nodes[i], i);
+        }
+        return indices;
+    }
+
+    /**
+     * Copies the visible graph into a {@link GraphSnapshot}, where node
+     * <code>i</code> is <code>nodes[i]</code>, adding the weights to the
+     * stamp and the edges read to <code>edges</code> unless it is null. Must
+     * be called under read lock.
+     */
+    private GraphSnapshot createSnapshot(HierarchicalGraph hgraph, Node[] nodes, GraphStamp stamp, List<Edge> edges) {
+        Map<Node, Integer> indices = indices(nodes);
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder(nodes.length, isDirected, hgraph.getEdgeCount());
+        for (Edge e : hgraph.getEdgesAndMetaEdges()) {
+            stamp.addWeight(e.getWeight());
+            Integer source = indices.get(e.getSource());
+            Integer target = indices.get(e.getTarget());
+            if (source != null && target != null) {
+                builder.addEdge(source, target, e.getWeight());
+                if (edges != null) {
+                    edges.add(e);
+                }
+            }
+        }
+        return builder.build();
     }
 
     public double getAverageWeightedClusteringCoefficient() {
@@ -235,112 +882,130 @@ public class WeightedClusterCoefficient implements Statistics, LongTask {
         return avgStrenght;
     }
 
+    /**
+     * Returns the average Fagiolo coefficients in
+     * {@link DirectedClusteringKernel#PATTERNS} order, or null if they have not
+     * been computed.
+     */
+    public double[] getAverageDirectedPatterns() {
+        return avgPatterns;
+    }
+
+    /**
+     * Returns the averages of the other definitions in
+     * {@link WeightedDefinitions#NAMES} order, NaN for those not selected, or
+     * null if none has been computed.
+     */
+    public double[] getAverageDefinitions() {
+        return avgDefinitions;
+    }
+
     @Override
     public String getReport() {
-        /*
-         * SAVE IN FILE FOR MULTIPLE PLOT
-         */
-        //current directory
-        boolean success;
-        String currentDir = System.getProperty("user.dir");
-        String saveDir = currentDir + "\\savedata";
-        boolean exist = (new File(saveDir)).exists();
-        if (!exist) {
-            success = (new File(saveDir)).mkdir();
-        } else {
-            success = true;
-        }
-        Set<SortedMap.Entry<Float, Integer>> set_strenght2 = strenght_distribution.entrySet();
-        for (SortedMap.Entry<Float, Integer> element : set_strenght2) {
-            float cumulated = 0;
-            for (SortedMap.Entry<Float, Integer> element2 : set_strenght2) {
-                //F(s) = nodes fraction with (strenght/strenght max) >= s
-                if (element2.getKey() >= element.getKey()) {
-                    cumulated += element2.getValue();
-                }
+        ClusteringMetrics.Phase phase = metrics != null ? metrics.start(ClusteringMetrics.DISTRIBUTIONS) : null;
+        Future<String> strenghtRendering;
+        Future<String> ccRendering;
+        //the incremental updater replaces the distributions and drops the charts under this monitor
+        synchronized (this) {
+            if (strenghtChart == null || ccChart == null) {
+                //F(s) = nodes fraction with strenght >= s
+                SortedMap<Double, Double> strenght_distribution_map = strenght_distribution.cumulativeDistribution();
+                SortedMap<Double, Long> cc_distribution_map = cc_distribution.distribution();
+                renderCharts(strenght_distribution_map, cc_distribution_map);
             }
-            cumulated_strenght_distribution.put(element.getKey(), (cumulated / strenght_distribution.lastKey()));
+            strenghtRendering = strenghtChart;
+            ccRendering = ccChart;
         }
-        System.out.println(strenght_distribution);
-        System.out.println(cumulated_strenght_distribution);
-
-        //Transform to Map
-        Map<Float, Float> strenght_distribution_map = new HashMap<Float, Float>();
-        Set<SortedMap.Entry<Float, Float>> set_strenght = cumulated_strenght_distribution.entrySet();
-        for (SortedMap.Entry<Float, Float> element : set_strenght) {
-            Float num_occorrenze = element.getValue();
-            Float strenght = element.getKey();
-            strenght_distribution_map.put(strenght, num_occorrenze);
+        if (metrics != null) {
+            phase.end();
+            phase = metrics.start(ClusteringMetrics.CHARTS);
         }
-
-        System.out.println(cc_distribution);
-
-        Map<Float, Integer> cc_distribution_map = new HashMap<Float, Integer>();
-
-        Set<SortedMap.Entry<Float, Integer>> set_cc = cc_distribution.entrySet();
-        for (SortedMap.Entry<Float, Integer> element : set_cc) {
-            Integer num_occorrenze = element.getValue();
-            Float cc = element.getKey();
-            //double prob = (double) num_occorrenze / N;
-            cc_distribution_map.put(cc, num_occorrenze);
+        //both charts render in parallel, the report waits for their images
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(ChartUtils.RENDER_TIMEOUT_SECONDS);
+        String ccImageFile = ChartUtils.awaitChart(ccRendering, deadline);
+        String strenghtImageFile = ChartUtils.awaitChart(strenghtRendering, deadline);
+        if (metrics != null) {
+            phase.end();
         }
-        //Save file
-        if (success) {
-            String completeDirIntra = saveDir + "\\StrengthDistribution.txt";
-            String finalDir = completeDirIntra.replace("\\", "\\\\");
-            LOGGER.log(Level.INFO, "Intra path: {0}", new Object[]{finalDir});
-            generateSaveFile(finalDir, strenght_distribution_map);
-        } else {
-            LOGGER.log(Level.INFO, "Don't create a new directory");
-        }
-        System.out.println(strenght_distribution_map);
-        System.out.println(cc_distribution_map);
-        //Distribution series
-        XYSeries strenghtSeries = ChartUtils.createXYSeries(strenght_distribution_map, "Strength Distribution");
-        XYSeries ccSeries = ChartUtils.createXYSeries(cc_distribution_map, "Weighted cluster coefficient Distribution");
-
-        XYSeriesCollection dataset1 = new XYSeriesCollection();
-        dataset1.addSeries(strenghtSeries);
-
-        XYSeriesCollection dataset2 = new XYSeriesCollection();
-        dataset2.addSeries(ccSeries);
-
-        JFreeChart chart1 = ChartFactory.createXYLineChart(
-                "Strenght Distribution",
-                "Strength",
-                "F(Strength)",
-                dataset1,
-                PlotOrientation.VERTICAL,
-                true,
-                false,
-                false);
-        ChartUtils.decorateChart(chart1);
-        ChartUtils.scaleLogChart(chart1, strenghtSeries, false);
-        String strenghtImageFile = ChartUtils.renderChart(chart1, "Strength-distribution.png");
-
-        JFreeChart chart2 = ChartFactory.createXYLineChart(
-                "Weighted Cluster Coefficient Distribution",
-                "Weighted Cluster Coefficient",
-                "# Nodes",
-                dataset2,
-                PlotOrientation.VERTICAL,
-                true,
-                false,
-                false);
-
-
-        ChartUtils.decorateChart(chart2);
-        ChartUtils.scaleChart(chart2, ccSeries, false);
-        String ccImageFile = ChartUtils.renderChart(chart2, "ccdistribution.png");
 
         NumberFormat f = new DecimalFormat("#0.000");
 
+        String algorithmReport = degreeOrdered && subsetSize < 0 && checkpointFile == null
+                ? "Each triangle is listed once from its lowest degree corner (forward method) and added to its three corners.<br />"
+                : "Triangles are found by intersecting sorted neighbor lists of a CSR snapshot of the graph.<br />";
+        if (averageEstimate != null) {
+            algorithmReport = "Weight-aware wedge sampling: a neighbor pair (j,h) of a node is drawn with probability proportional to w(i,j) + w(i,h), "
+                    + "the coefficient is the fraction of closed pairs. Node strengths are exact.<br />";
+        }
+        String orderReport = reused && nodeOrder != NodeReordering.Order.NONE ? nodeOrder.toString().toLowerCase() : "graph order";
+        if (reorderNanos >= 0) {
+            NumberFormat ms = new DecimalFormat("#0.0");
+            long pass = Math.max(1, passNanos);
+            orderReport = nodeOrder.toString().toLowerCase() + ", reordered in " + ms.format(reorderNanos / 1e6) + " ms; average index gap between neighbors "
+                    + ms.format(gapBefore) + " before, " + ms.format(gapAfter) + " after; triangle search " + ms.format(pass / 1e6) + " ms";
+            if (baselineNanos > 0) {
+                orderReport += ", " + f.format((double) baselineNanos / pass) + "x as fast as the last run in graph order (" + ms.format(baselineNanos / 1e6)
+                        + " ms), " + f.format((double) baselineNanos / (pass + reorderNanos)) + "x counting the reordering";
+            } else {
+                orderReport += ", run once in graph order with the same settings to compare";
+            }
+        }
+        String patternsReport = "";
+        if (avgPatterns != null) {
+            patternsReport = "<h2> Directed Patterns (Fagiolo): </h2>";
+            for (int p = 0; p < avgPatterns.length; p++) {
+                patternsReport += "Average " + DirectedClusteringKernel.PATTERNS[p] + " Clustering Coefficient: " + f.format(avgPatterns[p]) + "<br />";
+            }
+            patternsReport += "Computed in the same triangle pass, on weights (w / max w)^(1/3).<br />";
+        }
+        String definitionsReport = "";
+        String definitionsReferences = "";
+        if (avgDefinitions != null) {
+            definitionsReport = "<h2> Other Definitions: </h2>";
+            for (int d = 0; d < avgDefinitions.length; d++) {
+                if (!Double.isNaN(avgDefinitions[d])) {
+                    definitionsReport += "Average " + WeightedDefinitions.TITLES[d] + " Clustering Coefficient: " + f.format(avgDefinitions[d]) + "<br />";
+                }
+            }
+            definitionsReport += "Computed in the same triangle pass as Barrat's. Onnela: geometric mean of the weights (w / max w) of the triangles over k(k-1)/2. "
+                    + "Zhang-Horvath: weight products of the triangles over the weight products of the neighbor pairs, "
+                    + "the same as Holme's on undirected graphs. Self loops are left out.<br />"
+                    + (updater != null ? "These columns are not updated incrementally.<br />" : "");
+            definitionsReferences = "<br />Reference: J.-P. Onnela, J. Saramäki, J. Kertész and K. Kaski (2005). \"Intensity and coherence of motifs in weighted complex networks\". Physical Review E 71, 065103."
+                    + "<br />Reference: B. Zhang and S. Horvath (2005). \"A general framework for weighted gene co-expression network analysis\". Statistical Applications in Genetics and Molecular Biology 4, 17."
+                    + "<br />Reference: P. Holme, S. M. Park, B. J. Kim and C. R. Edling (2007). \"Korean university life in a network perspective: Dynamics of a large affiliation network\". Physica A 373, 821–830.";
+        }
+
         return "<HTML> <BODY> <h1> Weighted Clustering Coefficient Metric Report </h1> "
                 + "<hr>"
                 + "<br />" + "<h2> Parameters: </h2>"
                 + "Network Interpretation:  " + (isDirected ? "directed" : "undirected") + "<br />"
+                + "Threads:  " + threadCount + "<br />"
+                + "Triangle Search:  " + (degreeOrdered && subsetSize < 0 && checkpointFile == null ? "degree-ordered enumeration" : "node iterator") + "<br />"
+                + "Node Order:  " + orderReport + "<br />"
+                + "Nodes:  " + (subsetSize < 0 ? "all" : subsetSize + " of " + N + " (" + subset + "), on a snapshot of their neighborhoods, "
+                + neighborhoodSize + " nodes and " + neighborhoodEdges + " edges; the other nodes are left as they were") + "<br />"
+                + "Incremental Updates:  " + (updater != null ? "on" : "off") + "<br />"
+                + (checkpointFile != null ? "Checkpoint:  " + checkpointFile + ", every " + checkpointInterval + " s"
+                + (resumedNodes > 0 ? ", resumed with " + resumedNodes + " of " + N + " nodes" : "")
+                + (savedNodes >= 0 ? ", holds " + savedNodes + " nodes, run again to resume" : ", deleted once complete") + "<br />" : "")
+                + (triangleEdges >= 0 ? "Edge Triangles:  " + triangleEdges + " edges, triangle count and intensity, the sum over the triangles of the edge of "
+                + "the geometric mean of their weights (w / max w)" + (updater != null ? ", not updated incrementally" : "") + "<br />"
+                : reused && computesEdgeTriangles() ? "Edge Triangles:  unchanged<br />" : "")
+                + "Result:  " + (reused ? "reused, the graph has not changed since the last run"
+                : stale ? "not written, the graph changed during the computation, run again"
+                : processedNodes >= 0 ? "cancelled, the averages are over the " + processedNodes + " nodes processed" : "computed") + "<br />"
+                + "Export:  " + (exported && reused ? "skipped, the result is reused" : exported ? exportDirectory + ", " + exportFormat.toString().toLowerCase() + (exportGzip ? ", gzip" : "") : "off") + "<br />"
+                + "Mode:  " + (averageEstimate != null ? "approximate, " + SamplingKernel.samplesPerNode(sampleBudget, N, samplesPerNode)
+                + " wedges per node (budget " + sampleBudget + " over " + N + " nodes, at most " + samplesPerNode
+                + ", at least 1: the node values cost O(nodes) whatever the budget), " + averageEstimate.getSamples() + " for the average"
+                : "exact") + "<br />"
                 + "<br>" + "<h2> Results: </h2>"
-                + "Average Clustering Coefficient: " + f.format(avgClusteringCoeff) + "<br />"
+                + "Average Clustering Coefficient: " + f.format(avgClusteringCoeff)
+                + (averageEstimate != null
+                ? " &plusmn; " + new DecimalFormat("#0.00000").format(averageEstimate.getHalfWidth())
+                + " (95% confidence, " + averageEstimate.getSamples() + " sampled wedges)"
+                : "") + "<br />"
                 + "The Average Clustering Coefficient is the mean value of individual coefficients.<br /><br />"
                 + ccImageFile
                 + "<br /><br />"
@@ -348,17 +1013,73 @@ public class WeightedClusterCoefficient implements Statistics, LongTask {
                 + "The Average Node Strength is the mean value of individual node Strength.<br /><br />"
                 + strenghtImageFile
                 + "<br /><br />"
-                + "Where F(Strength) = fraction of nodes with (Strength/Max Strength)>= Strength"
+                + "Where F(Strength) = fraction of nodes with Strength >= s, over " + binCount + " " + strenghtBinning.toString().toLowerCase() + " bins"
                 + "<br />"
+                + patternsReport
+                + definitionsReport
+                + (metrics != null ? metrics.toHtml() : "")
                 + "<h2> Algorithm: </h2>"
-                + "Simple and slow brute force.<br />"
+                + algorithmReport
                 + "Reference: \"A. Barrat and M. Barthelemy and R. Pastor-Satorras and A. Vespignani (2004). \"The architecture of complex weighted networks\". Proceedings of the National Academy of Sciences 101 (11): 3747–3752."
+                + (avgPatterns != null ? "<br />Reference: G. Fagiolo (2007). \"Clustering in complex directed networks\". Physical Review E 76, 026107." : "")
+                + definitionsReferences
                 + "</BODY> </HTML>";
     }
 
+    /**
+     * Starts rendering the two charts of the report in parallel, with at most
+     * {@link ChartUtils#MAX_POINTS} points each.
+     */
+    private void renderCharts(final SortedMap<Double, Double> strenght_distribution_map, final SortedMap<Double, Long> cc_distribution_map) {
+        strenghtChart = ChartUtils.renderChartLater(new Callable<JFreeChart>() {
+            @Override
+            public JFreeChart call() {
+                XYSeries strenghtSeries = ChartUtils.createXYSeries(strenght_distribution_map, "Strength Distribution", ChartUtils.MAX_POINTS);
+                XYSeriesCollection dataset1 = new XYSeriesCollection();
+                dataset1.addSeries(strenghtSeries);
+                JFreeChart chart1 = ChartFactory.createXYLineChart(
+                        "Strenght Distribution",
+                        "Strength",
+                        "F(Strength)",
+                        dataset1,
+                        PlotOrientation.VERTICAL,
+                        true,
+                        false,
+                        false);
+                ChartUtils.decorateChart(chart1);
+                ChartUtils.scaleLogChart(chart1, strenghtSeries, false);
+                return chart1;
+            }
+        }, "Strength-distribution.png");
+        ccChart = ChartUtils.renderChartLater(new Callable<JFreeChart>() {
+            @Override
+            public JFreeChart call() {
+                XYSeries ccSeries = ChartUtils.createXYSeries(cc_distribution_map, "Weighted cluster coefficient Distribution", ChartUtils.MAX_POINTS);
+                XYSeriesCollection dataset2 = new XYSeriesCollection();
+                dataset2.addSeries(ccSeries);
+                JFreeChart chart2 = ChartFactory.createXYLineChart(
+                        "Weighted Cluster Coefficient Distribution",
+                        "Weighted Cluster Coefficient",
+                        "# Nodes",
+                        dataset2,
+                        PlotOrientation.VERTICAL,
+                        true,
+                        false,
+                        false);
+                ChartUtils.decorateChart(chart2);
+                ChartUtils.scaleChart(chart2, ccSeries, false);
+                return chart2;
+            }
+        }, "ccdistribution.png");
+    }
+
     @Override
     public boolean cancel() {
         this.cancel = true;
+        ClusteringRunner current = runner;
+        if (current != null) {
+            current.cancel();
+        }
         return true;
     }
 
@@ -375,29 +1096,322 @@ public class WeightedClusterCoefficient implements Statistics, LongTask {
         return isDirected;
     }
 
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setDegreeOrdered(boolean degreeOrdered) {
+        this.degreeOrdered = degreeOrdered;
+    }
+
+    public boolean isDegreeOrdered() {
+        return degreeOrdered;
+    }
+
+    /**
+     * Relabels the nodes of the snapshot in a locality-improving order
+     * before the computation, except for a subset.
+     */
+    public void setNodeOrder(NodeReordering.Order nodeOrder) {
+        this.nodeOrder = nodeOrder;
+    }
+
+    public NodeReordering.Order getNodeOrder() {
+        return nodeOrder;
+    }
+
+    public void setStrenghtBinning(Histogram.Binning strenghtBinning) {
+        this.strenghtBinning = strenghtBinning;
+    }
+
+    public Histogram.Binning getStrenghtBinning() {
+        return strenghtBinning;
+    }
+
+    public void setClusteringBinning(Histogram.Binning ccBinning) {
+        this.ccBinning = ccBinning;
+    }
+
+    public Histogram.Binning getClusteringBinning() {
+        return ccBinning;
+    }
+
+    public void setBinCount(int binCount) {
+        this.binCount = Math.max(1, binCount);
+    }
+
+    public int getBinCount() {
+        return binCount;
+    }
+
+    public void setApproximate(boolean approximate) {
+        this.approximate = approximate;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    /**
+     * Most wedges sampled for a node coefficient in approximate mode, see
+     * {@link SamplingKernel#samplesPerNode(long, int, int)}.
+     */
+    public void setSamplesPerNode(int samplesPerNode) {
+        this.samplesPerNode = Math.max(1, samplesPerNode);
+    }
+
+    public int getSamplesPerNode() {
+        return samplesPerNode;
+    }
+
+    /**
+     * Wedges sampled for the node coefficients in all, and at most for the
+     * average, in approximate mode.
+     */
+    public void setSampleBudget(long sampleBudget) {
+        this.sampleBudget = Math.max(1, sampleBudget);
+    }
+
+    public long getSampleBudget() {
+        return sampleBudget;
+    }
+
+    /**
+     * Half width of the 95% confidence interval of the average at which the
+     * sampling stops, 0 to always use the whole budget.
+     */
+    public void setTargetError(double targetError) {
+        this.targetError = Math.max(0, targetError);
+    }
+
+    public double getTargetError() {
+        return targetError;
+    }
+
+    /**
+     * Returns the estimate of the average coefficient with its confidence
+     * interval, or null if the last run was exact.
+     */
+    public SamplingKernel.Estimate getAverageEstimate() {
+        return averageEstimate;
+    }
+
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    public boolean isInstrumented() {
+        return instrumented;
+    }
+
+    /**
+     * Returns the timings and counters of the last run, null if it was not
+     * instrumented.
+     */
+    public ClusteringMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Returns true if the last run returned the cached result of an earlier
+     * one.
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    public void setQuietWrite(boolean quietWrite) {
+        this.quietWrite = quietWrite;
+    }
+
+    public boolean isQuietWrite() {
+        return quietWrite;
+    }
+
+    /**
+     * Computes and writes only the nodes of the subset, all of them if null.
+     * Directed patterns, other definitions, sampling and incremental updates
+     * need the whole graph and are not done on a subset.
+     */
+    public void setSubset(NodeSubset subset) {
+        this.subset = subset;
+    }
+
+    public NodeSubset getSubset() {
+        return subset;
+    }
+
+    public void setHubDegree(int hubDegree) {
+        this.hubDegree = Math.max(0, hubDegree);
+    }
+
+    public int getHubDegree() {
+        return hubDegree;
+    }
+
+    public void setHubMemory(int megabytes) {
+        this.hubMemory = Math.max(0, megabytes);
+    }
+
+    public int getHubMemory() {
+        return hubMemory;
+    }
+
+    /**
+     * Returns true if the graph changed during the last run, whose results
+     * were then left out of the columns.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Selects one of the other definitions, computed in undirected exact mode.
+     *
+     * @param definition one of {@link WeightedDefinitions#ONNELA},
+     * {@link WeightedDefinitions#ZHANG}
+     */
+    public void setDefinitionSelected(int definition, boolean selected) {
+        definitions[definition] = selected;
+    }
+
+    public boolean isDefinitionSelected(int definition) {
+        return definitions[definition];
+    }
+
+    /**
+     * Also writes the triangle count and the triangle intensity of every edge
+     * to the edge table, computed in undirected exact mode.
+     */
+    public void setEdgeTriangles(boolean edgeTriangles) {
+        this.edgeTriangles = edgeTriangles;
+    }
+
+    public boolean isEdgeTriangles() {
+        return edgeTriangles;
+    }
+
+    /**
+     * Saves the finished nodes to a checkpoint file in exact mode, and
+     * resumes from the file a run on the same graph and settings left. The
+     * nodes are then computed by the node iterator, and the edge triangles
+     * are not written.
+     */
+    public void setCheckpointed(boolean checkpointed) {
+        this.checkpointed = checkpointed;
+    }
+
+    public boolean isCheckpointed() {
+        return checkpointed;
+    }
+
+    public void setCheckpointDirectory(File checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    public File getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    /**
+     * Least number of seconds between two writes of the checkpoint.
+     */
+    public void setCheckpointInterval(int seconds) {
+        this.checkpointInterval = Math.max(1, seconds);
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        if (!incremental) {
+            stopIncremental();
+        }
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setDirectedPatterns(boolean directedPatterns) {
+        this.directedPatterns = directedPatterns;
+    }
+
+    public boolean isDirectedPatterns() {
+        return directedPatterns;
+    }
+
+    public void setExported(boolean exported) {
+        this.exported = exported;
+    }
+
+    public boolean isExported() {
+        return exported;
+    }
+
+    public void setExportDirectory(File exportDirectory) {
+        this.exportDirectory = exportDirectory;
+    }
+
+    public File getExportDirectory() {
+        return exportDirectory;
+    }
+
+    public void setExportFormat(ResultExporter.Format exportFormat) {
+        this.exportFormat = exportFormat;
+    }
+
+    public ResultExporter.Format getExportFormat() {
+        return exportFormat;
+    }
+
+    public void setExportGzip(boolean exportGzip) {
+        this.exportGzip = exportGzip;
+    }
+
+    public boolean isExportGzip() {
+        return exportGzip;
+    }
+
     /**
      * Generate distribution file.
      *
      * @param sFileName file path.
+     * @deprecated the distributions are written by the export stage, see
+     * {@link ResultExporter}
      */
-    public void generateSaveFile(String sFileName, Map<Float, Float> map) {
+    @Deprecated
+    public void generateSaveFile(String sFileName, Map<? extends Number, ? extends Number> map) {
         try {
-            FileWriter writer = new FileWriter(sFileName);
-            Set<Map.Entry<Float, Float>> set = map.entrySet();
-            int k = 0;
-            for (Map.Entry<Float, Float> element : set) {
-                writer.append(element.getKey().toString());
-                writer.append(' ');
-                writer.append(element.getValue().toString());
-                k = k + 1;
-                if (k != map.size()) {
-                    writer.append('\n');
+            Writer writer = new BufferedWriter(new FileWriter(sFileName), 1 << 16);
+            try {
+                int k = 0;
+                for (Map.Entry<? extends Number, ? extends Number> element : map.entrySet()) {
+                    writer.write(element.getKey() + " " + element.getValue());
+                    k = k + 1;
+                    if (k != map.size()) {
+                        writer.write('\n');
+                    }
                 }
+            } finally {
+                writer.close();
             }
-            writer.flush();
-            writer.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.WARNING, "Cannot save " + sFileName, e);
         }
     }
 }
@@ -53,6 +53,38 @@ public class WeightedClusterCoefficientUI implements StatisticsUI {
         this.myMetric = (WeightedClusterCoefficient) stat;
         if (panel != null) {
             panel.setDirected(myMetric.isDirected());
+            panel.setThreadCount(myMetric.getThreadCount());
+            panel.setDegreeOrdered(myMetric.isDegreeOrdered());
+            panel.setDirectedPatterns(myMetric.isDirectedPatterns());
+            for (int d = 0; d < WeightedDefinitions.NAMES.length; d++) {
+                panel.setDefinitionSelected(d, myMetric.isDefinitionSelected(d));
+            }
+            panel.setEdgeTriangles(myMetric.isEdgeTriangles());
+            panel.setIncremental(myMetric.isIncremental());
+            panel.setQuietWrite(myMetric.isQuietWrite());
+            NodeSubset subset = myMetric.getSubset();
+            if (subset != null && subset.getColumn() != null) {
+                panel.setSubset(subset.getColumn(), subset.getValue());
+            } else {
+                panel.setSubset("", "");
+            }
+            panel.setNodeOrder(myMetric.getNodeOrder());
+            panel.setHubDegree(myMetric.getHubDegree());
+            panel.setHubMemory(myMetric.getHubMemory());
+            panel.setApproximate(myMetric.isApproximate());
+            panel.setSamplesPerNode(myMetric.getSamplesPerNode());
+            panel.setSampleBudget(myMetric.getSampleBudget());
+            panel.setTargetError(myMetric.getTargetError());
+            panel.setStrenghtBinning(myMetric.getStrenghtBinning());
+            panel.setClusteringBinning(myMetric.getClusteringBinning());
+            panel.setBinCount(myMetric.getBinCount());
+            panel.setExported(myMetric.isExported());
+            panel.setExportDirectory(myMetric.getExportDirectory());
+            panel.setExportFormat(myMetric.getExportFormat());
+            panel.setExportGzip(myMetric.isExportGzip());
+            panel.setCheckpointed(myMetric.isCheckpointed());
+            panel.setCheckpointDirectory(myMetric.getCheckpointDirectory());
+            panel.setCheckpointInterval(myMetric.getCheckpointInterval());
         }
     }
 
@@ -62,6 +94,34 @@ public class WeightedClusterCoefficientUI implements StatisticsUI {
     public void unsetup() {
         if (panel != null) {
             myMetric.setDirected(panel.isDirected());
+            myMetric.setThreadCount(panel.getThreadCount());
+            myMetric.setDegreeOrdered(panel.isDegreeOrdered());
+            myMetric.setDirectedPatterns(panel.isDirectedPatterns());
+            for (int d = 0; d < WeightedDefinitions.NAMES.length; d++) {
+                myMetric.setDefinitionSelected(d, panel.isDefinitionSelected(d));
+            }
+            myMetric.setEdgeTriangles(panel.isEdgeTriangles());
+            myMetric.setIncremental(panel.isIncremental());
+            myMetric.setQuietWrite(panel.isQuietWrite());
+            String column = panel.getSubsetColumn();
+            myMetric.setSubset(column.isEmpty() ? null : NodeSubset.where(column, panel.getSubsetValue()));
+            myMetric.setNodeOrder(panel.getNodeOrder());
+            myMetric.setHubDegree(panel.getHubDegree());
+            myMetric.setHubMemory(panel.getHubMemory());
+            myMetric.setApproximate(panel.isApproximate());
+            myMetric.setSamplesPerNode(panel.getSamplesPerNode());
+            myMetric.setSampleBudget(panel.getSampleBudget());
+            myMetric.setTargetError(panel.getTargetError());
+            myMetric.setStrenghtBinning(panel.getStrenghtBinning());
+            myMetric.setClusteringBinning(panel.getClusteringBinning());
+            myMetric.setBinCount(panel.getBinCount());
+            myMetric.setExported(panel.isExported());
+            myMetric.setExportDirectory(panel.getExportDirectory());
+            myMetric.setExportFormat(panel.getExportFormat());
+            myMetric.setExportGzip(panel.isExportGzip());
+            myMetric.setCheckpointed(panel.isCheckpointed());
+            myMetric.setCheckpointDirectory(panel.getCheckpointDirectory());
+            myMetric.setCheckpointInterval(panel.getCheckpointInterval());
         }
         this.panel = null;
         this.myMetric = null;
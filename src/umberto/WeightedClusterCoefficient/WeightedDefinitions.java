@@ -0,0 +1,120 @@
+/*
+ Authors : Umberto Griffo <umberto.griffo@gmail.com>
+ Linkedin : it.linkedin.com/pub/umberto-griffo/31/768/99
+ Twitter : @UmbertoGriffo
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License.
+ You can obtain a copy of the License at http://www.gnu.org/licenses/gpl-3.0.txt.
+
+ */
+package umberto.WeightedClusterCoefficient;
+
+/**
+ * The weighted clustering coefficients other than Barrat's, computed by an
+ * undirected kernel from two more sums of the same triangle pass, see
+ * {@link ClusteringKernel#enableDefinitions()}. With <code>ŵ = w / max
+ * w</code>, over the closed unordered neighbor pairs <code>(j,h)</code> of
+ * <code>i</code>: <ul> <li>Onnela et al.: <code>2 / (k (k - 1)) * sum (ŵ(i,j)
+ * ŵ(i,h) ŵ(j,h))^(1/3)</code>, the geometric mean of the triangle weights
+ * over the possible triangles.</li> <li>Zhang and Horvath: <code>2 * sum
+ * ŵ(i,j) ŵ(i,h) ŵ(j,h) / ((sum ŵ(i,j))^2 - sum ŵ(i,j)^2)</code>. On an
+ * undirected graph it is also the coefficient of Holme et al., written with
+ * raw weights, which is therefore not computed apart.</li> </ul> <p> The
+ * degree and the strength are those of the neighbor row, without self loops,
+ * which close no triangle. <p> The cube roots of the normalized weights are taken once per neighbor
+ * entry, a triangle costs two products more than Barrat's sum. <p> References:
+ * J.-P. Onnela, J. Saramäki, J. Kertész and K. Kaski (2005). "Intensity and
+ * coherence of motifs in weighted complex networks". Physical Review E 71,
+ * 065103. B. Zhang and S. Horvath (2005). "A general framework for weighted
+ * gene co-expression network analysis". Statistical Applications in Genetics
+ * and Molecular Biology 4, 17. P. Holme, S. M. Park, B. J. Kim and C. R.
+ * Edling (2007). "Korean university life in a network perspective: Dynamics
+ * of a large affiliation network". Physica A 373, 821–830.
+ *
+ * @author Umberto Griffo
+ */
+public class WeightedDefinitions {
+
+    public static final int ONNELA = 0;
+    public static final int ZHANG = 1;
+    public static final String[] NAMES = {"onnela", "zhang"};
+    public static final String[] TITLES = {"Onnela", "Zhang-Horvath"};
+    private final GraphSnapshot snapshot;
+    private final float maxWeight;
+    private final double[][] values;
+
+    WeightedDefinitions(GraphSnapshot snapshot) {
+        if (snapshot.isDirected()) {
+            throw new IllegalArgumentException("Undirected snapshot expected");
+        }
+        this.snapshot = snapshot;
+        float max = 0;
+        for (float w : snapshot.getWeights()) {
+            max = Math.max(max, w);
+        }
+        maxWeight = max > 0 ? max : 1;
+        values = new double[NAMES.length][snapshot.getNodeCount()];
+    }
+
+    float getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Cube roots of the normalized weights, one per entry of the given
+     * weights.
+     */
+    float[] roots(float[] weights) {
+        float[] roots = new float[weights.length];
+        for (int p = 0; p < weights.length; p++) {
+            roots[p] = (float) Math.cbrt(weights[p] / maxWeight);
+        }
+        return roots;
+    }
+
+    /**
+     * Returns the per-node values of a definition, filled as nodes are
+     * processed.
+     *
+     * @param definition one of {@link #ONNELA}, {@link #ZHANG}
+     */
+    public double[] getValues(int definition) {
+        return values[definition];
+    }
+
+    /**
+     * Sets the coefficients of a node from the sums over its closed unordered
+     * neighbor pairs of the geometric means of the normalized weights and of
+     * the products of the raw weights.
+     */
+    void set(int node, double rootSum, double productSum) {
+        int[] offsets = snapshot.getOffsets();
+        int degree = offsets[node + 1] - offsets[node];
+        if (degree < 2) {
+            values[ONNELA][node] = 0;
+            values[ZHANG][node] = 0;
+            return;
+        }
+        values[ONNELA][node] = 2 * rootSum / (degree * (degree - 1.0));
+        float[] weights = snapshot.getWeights();
+        double strength = 0;
+        double squares = 0;
+        for (int p = offsets[node]; p < offsets[node + 1]; p++) {
+            strength += weights[p];
+            squares += (double) weights[p] * weights[p];
+        }
+        //sum over j != h of w(i,j) w(i,h)
+        double pairs = strength * strength - squares;
+        double zhang = 0;
+        if (pairs > 0) {
+            zhang = 2 * productSum / (maxWeight * pairs);
+        }
+        values[ZHANG][node] = zhang;
+    }
+}
@@ -15,10 +15,20 @@
  */
 package umberto.WeightedClusterCoefficient;
 
+import java.awt.FlowLayout;
 import java.awt.GridLayout;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
+import java.io.File;
 import javax.swing.ButtonGroup;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
+import javax.swing.JSpinner;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 import org.gephi.graph.api.GraphController;
 import org.jdesktop.swingx.JXHeader;
 import org.openide.util.Lookup;
@@ -37,6 +47,32 @@ public class weightedClusterCoefficientPanel extends JPanel {
     private ButtonGroup directedButtonGroup;
     private JRadioButton directedRadioButton;
     private JRadioButton undirectedRadioButton;
+    private JSpinner threadsSpinner;
+    private JComboBox nodeOrderComboBox;
+    private JCheckBox degreeOrderedCheckBox;
+    private JCheckBox directedPatternsCheckBox;
+    private JCheckBox[] definitionCheckBoxes;
+    private JCheckBox edgeTrianglesCheckBox;
+    private JCheckBox incrementalCheckBox;
+    private JCheckBox quietWriteCheckBox;
+    private JCheckBox approximateCheckBox;
+    private JSpinner samplesPerNodeSpinner;
+    private JSpinner hubDegreeSpinner;
+    private JTextField subsetColumnField;
+    private JTextField subsetValueField;
+    private JSpinner hubMemorySpinner;
+    private JSpinner sampleBudgetSpinner;
+    private JSpinner targetErrorSpinner;
+    private JCheckBox logStrenghtBinsCheckBox;
+    private JCheckBox logClusteringBinsCheckBox;
+    private JSpinner binsSpinner;
+    private JCheckBox exportCheckBox;
+    private JTextField exportDirectoryField;
+    private JComboBox exportFormatComboBox;
+    private JCheckBox exportGzipCheckBox;
+    private JCheckBox checkpointCheckBox;
+    private JTextField checkpointDirectoryField;
+    private JSpinner checkpointIntervalSpinner;
 
     /**
      * Creates new form weightedClusterCoefficientPanel
@@ -61,6 +97,214 @@ public class weightedClusterCoefficientPanel extends JPanel {
         }
     }
 
+    public boolean isDirectedPatterns() {
+        return directedPatternsCheckBox.isSelected();
+    }
+
+    public void setDirectedPatterns(boolean directedPatterns) {
+        directedPatternsCheckBox.setSelected(directedPatterns);
+    }
+
+    public boolean isDefinitionSelected(int definition) {
+        return definitionCheckBoxes[definition].isSelected();
+    }
+
+    public void setDefinitionSelected(int definition, boolean selected) {
+        definitionCheckBoxes[definition].setSelected(selected);
+    }
+
+    public boolean isEdgeTriangles() {
+        return edgeTrianglesCheckBox.isSelected();
+    }
+
+    public void setEdgeTriangles(boolean edgeTriangles) {
+        edgeTrianglesCheckBox.setSelected(edgeTriangles);
+    }
+
+    public int getThreadCount() {
+        return (Integer) threadsSpinner.getValue();
+    }
+
+    public void setThreadCount(int threads) {
+        threadsSpinner.setValue(threads);
+    }
+
+    public boolean isDegreeOrdered() {
+        return degreeOrderedCheckBox.isSelected();
+    }
+
+    public void setDegreeOrdered(boolean degreeOrdered) {
+        degreeOrderedCheckBox.setSelected(degreeOrdered);
+    }
+
+    public boolean isIncremental() {
+        return incrementalCheckBox.isSelected();
+    }
+
+    public void setIncremental(boolean incremental) {
+        incrementalCheckBox.setSelected(incremental);
+    }
+
+    public boolean isQuietWrite() {
+        return quietWriteCheckBox.isSelected();
+    }
+
+    public void setQuietWrite(boolean quietWrite) {
+        quietWriteCheckBox.setSelected(quietWrite);
+    }
+
+    public boolean isApproximate() {
+        return approximateCheckBox.isSelected();
+    }
+
+    public void setApproximate(boolean approximate) {
+        approximateCheckBox.setSelected(approximate);
+    }
+
+    /**
+     * The column of the nodes to compute, empty for all the nodes.
+     */
+    public String getSubsetColumn() {
+        return subsetColumnField.getText().trim();
+    }
+
+    public String getSubsetValue() {
+        return subsetValueField.getText().trim();
+    }
+
+    public void setSubset(String column, String value) {
+        subsetColumnField.setText(column);
+        subsetValueField.setText(value);
+    }
+
+    public int getHubDegree() {
+        return (Integer) hubDegreeSpinner.getValue();
+    }
+
+    public void setHubDegree(int hubDegree) {
+        hubDegreeSpinner.setValue(hubDegree);
+    }
+
+    public NodeReordering.Order getNodeOrder() {
+        return (NodeReordering.Order) nodeOrderComboBox.getSelectedItem();
+    }
+
+    public void setNodeOrder(NodeReordering.Order order) {
+        nodeOrderComboBox.setSelectedItem(order);
+    }
+
+    public int getHubMemory() {
+        return (Integer) hubMemorySpinner.getValue();
+    }
+
+    public void setHubMemory(int megabytes) {
+        hubMemorySpinner.setValue(megabytes);
+    }
+
+    public int getSamplesPerNode() {
+        return (Integer) samplesPerNodeSpinner.getValue();
+    }
+
+    public void setSamplesPerNode(int samples) {
+        samplesPerNodeSpinner.setValue(samples);
+    }
+
+    public long getSampleBudget() {
+        return ((Number) sampleBudgetSpinner.getValue()).longValue();
+    }
+
+    public void setSampleBudget(long budget) {
+        sampleBudgetSpinner.setValue(budget);
+    }
+
+    public double getTargetError() {
+        return (Double) targetErrorSpinner.getValue();
+    }
+
+    public void setTargetError(double error) {
+        targetErrorSpinner.setValue(error);
+    }
+
+    public Histogram.Binning getStrenghtBinning() {
+        return logStrenghtBinsCheckBox.isSelected() ? Histogram.Binning.LOGARITHMIC : Histogram.Binning.LINEAR;
+    }
+
+    public void setStrenghtBinning(Histogram.Binning binning) {
+        logStrenghtBinsCheckBox.setSelected(binning == Histogram.Binning.LOGARITHMIC);
+    }
+
+    public Histogram.Binning getClusteringBinning() {
+        return logClusteringBinsCheckBox.isSelected() ? Histogram.Binning.LOGARITHMIC : Histogram.Binning.LINEAR;
+    }
+
+    public void setClusteringBinning(Histogram.Binning binning) {
+        logClusteringBinsCheckBox.setSelected(binning == Histogram.Binning.LOGARITHMIC);
+    }
+
+    public int getBinCount() {
+        return (Integer) binsSpinner.getValue();
+    }
+
+    public void setBinCount(int bins) {
+        binsSpinner.setValue(bins);
+    }
+
+    public boolean isExported() {
+        return exportCheckBox.isSelected();
+    }
+
+    public void setExported(boolean exported) {
+        exportCheckBox.setSelected(exported);
+    }
+
+    public File getExportDirectory() {
+        return new File(exportDirectoryField.getText().trim());
+    }
+
+    public void setExportDirectory(File directory) {
+        exportDirectoryField.setText(directory.getPath());
+    }
+
+    public ResultExporter.Format getExportFormat() {
+        return (ResultExporter.Format) exportFormatComboBox.getSelectedItem();
+    }
+
+    public void setExportFormat(ResultExporter.Format format) {
+        exportFormatComboBox.setSelectedItem(format);
+    }
+
+    public boolean isExportGzip() {
+        return exportGzipCheckBox.isSelected();
+    }
+
+    public void setExportGzip(boolean gzip) {
+        exportGzipCheckBox.setSelected(gzip);
+    }
+
+    public boolean isCheckpointed() {
+        return checkpointCheckBox.isSelected();
+    }
+
+    public void setCheckpointed(boolean checkpointed) {
+        checkpointCheckBox.setSelected(checkpointed);
+    }
+
+    public File getCheckpointDirectory() {
+        return new File(checkpointDirectoryField.getText().trim());
+    }
+
+    public void setCheckpointDirectory(File directory) {
+        checkpointDirectoryField.setText(directory.getPath());
+    }
+
+    public int getCheckpointInterval() {
+        return (Integer) checkpointIntervalSpinner.getValue();
+    }
+
+    public void setCheckpointInterval(int seconds) {
+        checkpointIntervalSpinner.setValue(seconds);
+    }
+
     private void initComponents() {
 
         jXHeader1 = new JXHeader();
@@ -79,6 +323,115 @@ public class weightedClusterCoefficientPanel extends JPanel {
         this.add(directedRadioButton);
         this.add(undirectedRadioButton);
 
+        int cores = Runtime.getRuntime().availableProcessors();
+        threadsSpinner = new JSpinner(new SpinnerNumberModel(cores, 1, Math.max(cores, 256), 1));
+        JPanel threadsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        threadsPanel.add(new JLabel("Threads:"));
+        threadsPanel.add(threadsSpinner);
+        nodeOrderComboBox = new JComboBox(NodeReordering.Order.values());
+        threadsPanel.add(new JLabel("Node order:"));
+        threadsPanel.add(nodeOrderComboBox);
+        this.add(threadsPanel);
+
+        degreeOrderedCheckBox = new JCheckBox("Degree-ordered triangle enumeration");
+        this.add(degreeOrderedCheckBox);
+
+        directedPatternsCheckBox = new JCheckBox("Directed patterns: cycle, middleman, in, out (Fagiolo)");
+        this.add(directedPatternsCheckBox);
+
+        definitionCheckBoxes = new JCheckBox[WeightedDefinitions.NAMES.length];
+        JPanel definitionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        definitionsPanel.add(new JLabel("Also, undirected:"));
+        for (int d = 0; d < definitionCheckBoxes.length; d++) {
+            definitionCheckBoxes[d] = new JCheckBox(WeightedDefinitions.TITLES[d]);
+            definitionsPanel.add(definitionCheckBoxes[d]);
+        }
+        edgeTrianglesCheckBox = new JCheckBox("Edge triangles");
+        definitionsPanel.add(edgeTrianglesCheckBox);
+        this.add(definitionsPanel);
+
+        incrementalCheckBox = new JCheckBox("Update incrementally when edges or weights change");
+        this.add(incrementalCheckBox);
+
+        quietWriteCheckBox = new JCheckBox("Leave unchanged values alone, without attribute events");
+        this.add(quietWriteCheckBox);
+
+        subsetColumnField = new JTextField(12);
+        subsetValueField = new JTextField(8);
+        JPanel subsetPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        subsetPanel.add(new JLabel("Only the nodes where column (empty for all):"));
+        subsetPanel.add(subsetColumnField);
+        subsetPanel.add(new JLabel("="));
+        subsetPanel.add(subsetValueField);
+        this.add(subsetPanel);
+
+        hubDegreeSpinner = new JSpinner(new SpinnerNumberModel(HubAdjacency.DEFAULT_MIN_DEGREE, 0, Integer.MAX_VALUE, 1024));
+        hubMemorySpinner = new JSpinner(new SpinnerNumberModel((int) (HubAdjacency.DEFAULT_MAX_BYTES >> 20), 0, 1048576, 16));
+        JPanel hubPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        hubPanel.add(new JLabel("Bitmaps for degrees from (0 for none):"));
+        hubPanel.add(hubDegreeSpinner);
+        hubPanel.add(new JLabel("MB at most:"));
+        hubPanel.add(hubMemorySpinner);
+        this.add(hubPanel);
+
+        approximateCheckBox = new JCheckBox("Approximate by wedge sampling");
+        this.add(approximateCheckBox);
+        samplesPerNodeSpinner = new JSpinner(new SpinnerNumberModel(64, 1, 1000000, 16));
+        sampleBudgetSpinner = new JSpinner(new SpinnerNumberModel(Long.valueOf(1000000), Long.valueOf(1), Long.valueOf(Long.MAX_VALUE), Long.valueOf(100000)));
+        targetErrorSpinner = new JSpinner(new SpinnerNumberModel(0.001, 0.0, 1.0, 0.0005));
+        JPanel samplingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        samplingPanel.add(new JLabel("Wedges per node, at most:"));
+        samplingPanel.add(samplesPerNodeSpinner);
+        samplingPanel.add(new JLabel("Budget:"));
+        samplingPanel.add(sampleBudgetSpinner);
+        samplingPanel.add(new JLabel("Target error:"));
+        samplingPanel.add(targetErrorSpinner);
+        this.add(samplingPanel);
+
+        logStrenghtBinsCheckBox = new JCheckBox("Logarithmic strength bins");
+        logClusteringBinsCheckBox = new JCheckBox("Logarithmic clustering bins");
+        this.add(logStrenghtBinsCheckBox);
+        this.add(logClusteringBinsCheckBox);
+        binsSpinner = new JSpinner(new SpinnerNumberModel(Histogram.DEFAULT_BINS, 1, 100000, 10));
+        JPanel binsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        binsPanel.add(new JLabel("Distribution bins:"));
+        binsPanel.add(binsSpinner);
+        this.add(binsPanel);
+
+        exportCheckBox = new JCheckBox("Export node values and distributions");
+        this.add(exportCheckBox);
+        exportDirectoryField = new JTextField(24);
+        exportFormatComboBox = new JComboBox(ResultExporter.Format.values());
+        exportGzipCheckBox = new JCheckBox("gzip");
+        JPanel exportPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        exportPanel.add(new JLabel("Directory:"));
+        exportPanel.add(exportDirectoryField);
+        exportPanel.add(new JLabel("Format:"));
+        exportPanel.add(exportFormatComboBox);
+        exportPanel.add(exportGzipCheckBox);
+        this.add(exportPanel);
+
+        checkpointCheckBox = new JCheckBox("Checkpoint the finished nodes, resume an interrupted run");
+        //a checkpointed run computes the nodes one at a time, the degree-ordered enumeration is not used
+        checkpointCheckBox.addItemListener(new ItemListener() {
+            @Override
+            public void itemStateChanged(ItemEvent e) {
+                boolean checkpointed = checkpointCheckBox.isSelected();
+                degreeOrderedCheckBox.setEnabled(!checkpointed);
+                degreeOrderedCheckBox.setToolTipText(checkpointed
+                        ? "Not used with checkpoints, the nodes are computed one at a time" : null);
+            }
+        });
+        this.add(checkpointCheckBox);
+        checkpointDirectoryField = new JTextField(24);
+        checkpointIntervalSpinner = new JSpinner(new SpinnerNumberModel(60, 1, 86400, 30));
+        JPanel checkpointPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        checkpointPanel.add(new JLabel("Directory:"));
+        checkpointPanel.add(checkpointDirectoryField);
+        checkpointPanel.add(new JLabel("Every (s):"));
+        checkpointPanel.add(checkpointIntervalSpinner);
+        this.add(checkpointPanel);
+
         GridLayout experimentLayout = new GridLayout(0, 1);
         this.setLayout(experimentLayout);
 